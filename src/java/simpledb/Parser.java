@@ -15,6 +15,7 @@ import simpledb.common.Type;
 import simpledb.execution.*;
 import simpledb.optimizer.LogicalPlan;
 import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
 import simpledb.storage.IntField;
 import simpledb.storage.StringField;
 import simpledb.storage.Tuple;
@@ -386,7 +387,13 @@ public class Parser {
             newTups = lp.physicalPlan(tId, TableStats.getStatsMap(), explain);
         }
         Query insertQ = new Query(tId);
-        insertQ.setPhysicalPlan(new Insert(tId, newTups, tableId));
+        if (s.getValues() == null
+                && Database.getCatalog().getDatabaseFile(tableId) instanceof HeapFile) {
+            // INSERT ... SELECT may insert many tuples, append them in bulk
+            insertQ.setPhysicalPlan(new BulkInsert(tId, newTups, tableId));
+        } else {
+            insertQ.setPhysicalPlan(new Insert(tId, newTups, tableId));
+        }
         return insertQ;
     }
 
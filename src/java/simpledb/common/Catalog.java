@@ -3,6 +3,8 @@ package simpledb.common;
 import simpledb.common.Type;
 import simpledb.storage.DbFile;
 import simpledb.storage.HeapFile;
+import simpledb.storage.MappedHeapFile;
+import simpledb.storage.SlottedHeapFile;
 import simpledb.storage.TupleDesc;
 
 import java.io.BufferedReader;
@@ -62,7 +64,19 @@ public class Catalog {
     public void addTable(DbFile file, String name, String pkeyField) {
         // some code goes here
         Table table = new Table(file.getId(),name,file,file.getTupleDesc(),pkeyField);
-        tables.put(table.tableid,table);
+        Table replaced = tables.put(table.tableid,table);
+        if (replaced != null && replaced.file != file) {
+            close(replaced.file);
+        }
+    }
+
+    // closes the files of a table that left the catalog
+    private static void close(DbFile file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     public void addTable(DbFile file, String name) {
@@ -154,11 +168,19 @@ public class Catalog {
     /** Delete all tables from the catalog */
     public void clear() {
         // some code goes here
+        Map<Integer,Table> cleared = tables;
         tables = new ConcurrentHashMap<>();
+        for (Table table : cleared.values()) {
+            close(table.file);
+        }
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line has the format <code>name (field type [pk], ...) [option]</code>,
+     * where the optional storage option <code>mapped</code> stores the table in a
+     * {@link MappedHeapFile} and <code>slotted</code> in a {@link SlottedHeapFile}
+     * instead of a plain {@link HeapFile}.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -199,7 +221,20 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                String option = line.substring(line.indexOf(")") + 1).trim();
+                File tabFile = new File(baseFolder+"/"+name + ".dat");
+                HeapFile tabHf;
+                if (option.isEmpty())
+                    tabHf = new HeapFile(tabFile, t);
+                else if (option.equalsIgnoreCase("mapped"))
+                    tabHf = new MappedHeapFile(tabFile, t);
+                else if (option.equalsIgnoreCase("slotted"))
+                    tabHf = new SlottedHeapFile(tabFile, t);
+                else {
+                    System.out.println("Unknown storage option " + option);
+                    System.exit(0);
+                    return;
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
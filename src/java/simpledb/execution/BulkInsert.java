@@ -0,0 +1,114 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.BulkLoader;
+import simpledb.storage.DbFile;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.io.IOException;
+
+/**
+ * Inserts tuples read from the child operator into the HeapFile tableId
+ * specified in the constructor, like Insert, but packs them into new pages
+ * that are appended to the file in large writes instead of inserting them
+ * one by one through the BufferPool.
+ *
+ * @see BulkLoader
+ */
+public class BulkInsert extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private TransactionId tid;
+    private OpIterator child;
+    private int tableId;
+    private boolean hasInserted = false;
+
+    /**
+     * Constructor.
+     *
+     * @param t
+     *            The transaction running the insert.
+     * @param child
+     *            The child operator from which to read tuples to be inserted.
+     * @param tableId
+     *            The table in which to insert tuples.
+     * @throws DbException
+     *             if the table is not stored in a HeapFile.
+     */
+    public BulkInsert(TransactionId t, OpIterator child, int tableId)
+            throws DbException {
+        if (!(Database.getCatalog().getDatabaseFile(tableId) instanceof HeapFile)) {
+            throw new DbException("bulk insert is only supported into heap files");
+        }
+        this.tid = t;
+        this.child = child;
+        this.tableId = tableId;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        super.open();
+        child.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    /**
+     * Loads all tuples read from child into the table. It returns a one field
+     * tuple containing the number of inserted records.
+     *
+     * @return A 1-field tuple containing the number of inserted records, or
+     *         null if called more than once.
+     * @see HeapFile#bulkLoader
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (hasInserted) {
+            return null;
+        }
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        BulkLoader loader = ((HeapFile) file).bulkLoader(tid);
+        int count;
+        try {
+            while (child.hasNext()) {
+                loader.add(child.next());
+            }
+            count = loader.finish();
+        } catch (IOException e) {
+            throw new DbException("bulk insert failed: " + e.getMessage());
+        }
+        Tuple tuple = new Tuple(new TupleDesc(new Type[]{Type.INT_TYPE}));
+        tuple.setField(0, new IntField(count));
+        hasInserted = true;
+        return tuple;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{child};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        if (children != null && children.length >= 1) {
+            child = children[0];
+        }
+    }
+}
@@ -47,6 +47,10 @@ public class Filter extends Operator {
         // some code goes here
         // todo: call father's open function
         super.open();
+        if (this.child instanceof SeqScan) {
+            // the scan can skip pages without matches
+            ((SeqScan) this.child).setPagePredicate(this.p);
+        }
         this.child.open();
     }
 
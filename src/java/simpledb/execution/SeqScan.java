@@ -89,6 +89,20 @@ public class SeqScan implements OpIterator {
         this(tid, tableId, Database.getCatalog().getTableName(tableId));
     }
 
+    /**
+     * Lets the scan skip pages without tuples satisfying p, for tables that
+     * keep a zone map (HeapFiles). The scan still returns tuples that do not
+     * satisfy p, from the pages it does read. Must be called before open.
+     *
+     * @see HeapFile#iterator(TransactionId, Predicate)
+     */
+    public void setPagePredicate(Predicate p) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (file instanceof HeapFile) {
+            this.it = ((HeapFile) file).iterator(tid, p);
+        }
+    }
+
     public void open() throws DbException, TransactionAbortedException {
         // some code goes here
         it.open();
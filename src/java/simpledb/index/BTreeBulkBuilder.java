@@ -0,0 +1,352 @@
+package simpledb.index;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * BTreeBulkBuilder builds a BTreeFile bottom-up from the tuples of a live
+ * table, instead of inserting them one by one with BTreeFile.insertTuple.
+ * <p>
+ * The build runs in two passes:
+ * <ol>
+ * <li>the source is read once, under the locks of the building transaction,
+ * and sorted on the key field with an external merge sort: runs of at most
+ * {@link #setRunSize runSize} tuples are sorted in memory and spilled to
+ * temporary files;</li>
+ * <li>the runs are merged and the tree is written front to back in a single
+ * sequential pass: first the root pointer page, then the leaf pages left to
+ * right, then each level of internal pages up to the root. Since the number
+ * of tuples is known after the first pass, the page number of every page and
+ * of its parent and siblings is known before it is written, so no page is
+ * ever read back or written twice.</li>
+ * </ol>
+ * Leaf pages are filled to {@link #setFillFactor fillFactor} of their
+ * capacity, internal pages get fillFactor of their entries, leaving room for
+ * later inserts without splits. No page except the root is filled to less
+ * than half, the minimum BTreeFile keeps up on deletes.
+ * <p>
+ * The tree file is written from scratch and must not be in use; open the
+ * returned BTreeFile and add it to the catalog afterwards.
+ *
+ * @see BTreeFileEncoder for building a tree offline from a text file
+ */
+public class BTreeBulkBuilder {
+
+	/** The default number of tuples sorted in memory at a time. */
+	public static final int DEFAULT_RUN_SIZE = 1 << 16;
+
+	/** The default fraction of a page filled by the build. */
+	public static final double DEFAULT_FILL_FACTOR = 1.0;
+
+	private static final int WRITE_BUFFER_PAGES = 64;
+
+	private final File f;
+	private final TupleDesc td;
+	private final int keyField;
+	private double fillFactor = DEFAULT_FILL_FACTOR;
+	private int runSize = DEFAULT_RUN_SIZE;
+
+	/**
+	 * @param f - the file to write the B+ tree to
+	 * @param td - the tuple descriptor of the tuples to index
+	 * @param keyField - the field the tree is keyed on
+	 */
+	public BTreeBulkBuilder(File f, TupleDesc td, int keyField) {
+		this.f = f;
+		this.td = td;
+		this.keyField = keyField;
+	}
+
+	/**
+	 * Sets the fraction of each page the build fills, between 0.5 and 1.
+	 */
+	public void setFillFactor(double fillFactor) {
+		if (fillFactor < 0.5 || fillFactor > 1.0) {
+			throw new IllegalArgumentException("fill factor must be between 0.5 and 1");
+		}
+		this.fillFactor = fillFactor;
+	}
+
+	/**
+	 * Sets the number of tuples sorted in memory at a time.
+	 */
+	public void setRunSize(int runSize) {
+		if (runSize < 1) {
+			throw new IllegalArgumentException("run size must be positive");
+		}
+		this.runSize = runSize;
+	}
+
+	/**
+	 * Builds the tree from all tuples of source, read on behalf of tid.
+	 *
+	 * @return the B+ tree file, not yet added to the catalog
+	 */
+	public BTreeFile build(TransactionId tid, DbFile source)
+			throws DbException, IOException, TransactionAbortedException {
+		DbFileIterator it = source.iterator(tid);
+		it.open();
+		try {
+			return build(it);
+		} finally {
+			it.close();
+		}
+	}
+
+	/**
+	 * Builds the tree from the tuples returned by an open iterator.
+	 *
+	 * @return the B+ tree file, not yet added to the catalog
+	 */
+	public BTreeFile build(DbFileIterator source)
+			throws DbException, IOException, TransactionAbortedException {
+		BTreeFile bf = new BTreeFile(f, keyField, td);
+		List<File> runs = new ArrayList<>();
+		try {
+			// pass 1: sort runs
+			List<Tuple> run = new ArrayList<>();
+			int numTuples = 0;
+			while (source.hasNext()) {
+				run.add(source.next());
+				numTuples++;
+				if (run.size() == runSize) {
+					runs.add(spill(run));
+					run.clear();
+				}
+			}
+			run.sort(new BTreeFileEncoder.TupleComparator(keyField));
+
+			Iterator<Tuple> sorted;
+			if (runs.isEmpty()) {
+				sorted = run.iterator();
+			} else {
+				if (!run.isEmpty()) {
+					runs.add(spill(run));
+				}
+				sorted = new RunMerger(runs);
+			}
+
+			// pass 2: write the tree
+			write(bf, sorted, numTuples);
+		} finally {
+			for (File r : runs) {
+				r.delete();
+			}
+		}
+		return bf;
+	}
+
+	private File spill(List<Tuple> run) throws IOException {
+		run.sort(new BTreeFileEncoder.TupleComparator(keyField));
+		File r = File.createTempFile("btreerun", ".dat");
+		r.deleteOnExit();
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(r)))) {
+			for (Tuple t : run) {
+				for (int j = 0; j < td.numFields(); j++) {
+					t.getField(j).serialize(dos);
+				}
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Merges sorted runs. Ties are broken by run, so equal keys come out in
+	 * the order they were read from the source.
+	 */
+	private class RunMerger implements Iterator<Tuple> {
+		private final PriorityQueue<Run> heap;
+
+		RunMerger(List<File> files) throws IOException {
+			Comparator<Tuple> byKey = new BTreeFileEncoder.TupleComparator(keyField);
+			heap = new PriorityQueue<>(files.size(), (a, b) -> {
+				int cmp = byKey.compare(a.head, b.head);
+				return cmp != 0 ? cmp : Integer.compare(a.index, b.index);
+			});
+			for (int i = 0; i < files.size(); i++) {
+				Run r = new Run(files.get(i), i);
+				if (r.advance()) {
+					heap.add(r);
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return !heap.isEmpty();
+		}
+
+		public Tuple next() {
+			Run r = heap.poll();
+			if (r == null) {
+				throw new NoSuchElementException();
+			}
+			Tuple t = r.head;
+			try {
+				if (r.advance()) {
+					heap.add(r);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return t;
+		}
+	}
+
+	private class Run {
+		final DataInputStream in;
+		final int index;
+		Tuple head;
+
+		Run(File file, int index) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			this.index = index;
+		}
+
+		boolean advance() throws IOException {
+			if (in.available() == 0) {
+				in.close();
+				head = null;
+				return false;
+			}
+			Tuple t = new Tuple(td);
+			try {
+				for (int j = 0; j < td.numFields(); j++) {
+					t.setField(j, td.getFieldType(j).parse(in));
+				}
+			} catch (ParseException e) {
+				throw new IOException("corrupt sort run", e);
+			}
+			head = t;
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the number of pages n items are spread over so that pages get
+	 * at most perPage items each, and at least min items unless there is
+	 * just one page.
+	 */
+	static int numPages(int n, int perPage, int min) {
+		int pages = (n + perPage - 1) / perPage;
+		if (min > 0) {
+			pages = Math.min(pages, n / min);
+		}
+		return Math.max(1, pages);
+	}
+
+	/** The index of the first of n items spread evenly over pages, on page p. */
+	static int firstItem(int p, int n, int pages) {
+		return p * (n / pages) + Math.min(p, n % pages);
+	}
+
+	/** The page item i of n items spread evenly over pages is on. */
+	static int pageOf(int i, int n, int pages) {
+		int base = n / pages;
+		int extra = n % pages;
+		int boundary = extra * (base + 1);
+		return i < boundary ? i / (base + 1) : extra + (i - boundary) / base;
+	}
+
+	private void write(BTreeFile bf, Iterator<Tuple> sorted, int numTuples)
+			throws IOException {
+		int pageSize = BufferPool.getPageSize();
+		int tableid = bf.getId();
+		Type[] types = new Type[td.numFields()];
+		for (int j = 0; j < types.length; j++) {
+			types[j] = td.getFieldType(j);
+		}
+		// page capacities as computed by BTreeLeafPage and BTreeInternalPage
+		int leafPointerBytes = 3 * BTreeLeafPage.INDEX_SIZE;
+		int maxTuples = (pageSize * 8 - leafPointerBytes * 8) / (td.getSize() * 8 + 1);
+		int entryBytes = types[keyField].getLen() + BTreeInternalPage.INDEX_SIZE;
+		int internalPointerBytes = 2 * BTreeLeafPage.INDEX_SIZE + 1;
+		int maxEntries = (pageSize * 8 - internalPointerBytes * 8 - 1) / (entryBytes * 8 + 1);
+
+		// the number of pages on each level, leaves first, and the page number
+		// of the first page of each level
+		List<Integer> levels = new ArrayList<>();
+		levels.add(numPages(numTuples, Math.max(1, (int) (maxTuples * fillFactor)), maxTuples / 2));
+		while (levels.get(levels.size() - 1) > 1) {
+			int children = levels.get(levels.size() - 1);
+			levels.add(numPages(children, Math.max(2, (int) (maxEntries * fillFactor) + 1),
+					maxEntries / 2 + 1));
+		}
+		int[] firstPage = new int[levels.size()];
+		firstPage[0] = 1;
+		for (int k = 1; k < levels.size(); k++) {
+			firstPage[k] = firstPage[k - 1] + levels.get(k - 1);
+		}
+		int rootLevel = levels.size() - 1;
+		BTreePageId rootId = new BTreePageId(tableid, firstPage[rootLevel],
+				rootLevel == 0 ? BTreePageId.LEAF : BTreePageId.INTERNAL);
+
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(f), WRITE_BUFFER_PAGES * pageSize)) {
+			out.write(BTreeFileEncoder.convertToRootPtrPage(rootId.getPageNumber(), rootId.pgcateg(), 0));
+
+			// the leaves, keeping the smallest key of every page for the level above
+			int numLeaves = levels.get(0);
+			List<Field> minKeys = new ArrayList<>(numLeaves);
+			for (int p = 0; p < numLeaves; p++) {
+				int size = firstItem(p + 1, numTuples, numLeaves) - firstItem(p, numTuples, numLeaves);
+				List<Tuple> tuples = new ArrayList<>(size);
+				for (int i = 0; i < size; i++) {
+					tuples.add(sorted.next());
+				}
+				// an empty input gives a single, empty leaf as root
+				minKeys.add(size == 0 ? null : tuples.get(0).getField(keyField));
+
+				// the encoder leaves the parent and sibling pointers 0 (none)
+				int pageNo = firstPage[0] + p;
+				byte[] data = BTreeFileEncoder.convertToLeafPage(tuples, pageSize, types.length, types, keyField);
+				ByteBuffer.wrap(data)
+						.putInt(0, parentOf(levels, firstPage, 0, p))
+						.putInt(4, p == 0 ? 0 : pageNo - 1)
+						.putInt(8, p == numLeaves - 1 ? 0 : pageNo + 1);
+				out.write(data);
+			}
+
+			// the internal levels, bottom-up
+			for (int k = 1; k < levels.size(); k++) {
+				int children = levels.get(k - 1);
+				int pages = levels.get(k);
+				int childCategory = k == 1 ? BTreePageId.LEAF : BTreePageId.INTERNAL;
+				List<Field> levelKeys = new ArrayList<>(pages);
+				for (int p = 0; p < pages; p++) {
+					int first = firstItem(p, children, pages);
+					int last = firstItem(p + 1, children, pages);
+					List<BTreeEntry> entries = new ArrayList<>(last - first - 1);
+					for (int c = first + 1; c < last; c++) {
+						entries.add(new BTreeEntry(minKeys.get(c),
+								new BTreePageId(tableid, firstPage[k - 1] + c - 1, childCategory),
+								new BTreePageId(tableid, firstPage[k - 1] + c, childCategory)));
+					}
+					levelKeys.add(minKeys.get(first));
+
+					byte[] data = BTreeFileEncoder.convertToInternalPage(entries, pageSize, types[keyField], childCategory);
+					ByteBuffer.wrap(data).putInt(0, parentOf(levels, firstPage, k, p));
+					out.write(data);
+				}
+				minKeys = levelKeys;
+			}
+		}
+	}
+
+	/**
+	 * The page number of the parent of page p on level k, 0 (the root
+	 * pointer) for the root.
+	 */
+	private static int parentOf(List<Integer> levels, int[] firstPage, int k, int p) {
+		if (k == levels.size() - 1) {
+			return 0;
+		}
+		return firstPage[k + 1] + pageOf(p, levels.get(k), levels.get(k + 1));
+	}
+}
@@ -1,6 +1,7 @@
 package simpledb.index;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import simpledb.common.Database;
@@ -32,6 +33,8 @@ public class BTreeFile implements DbFile {
     private final TupleDesc td;
     private final int tableid ;
     private final int keyField;
+    private final PageChannel channel;
+    private final MappedSegments segments; // null unless reads are memory mapped
 
     /**
      * Constructs a B+ tree file backed by the specified file.
@@ -42,10 +45,27 @@ public class BTreeFile implements DbFile {
      * @param td - the tuple descriptor of tuples in the file
      */
     public BTreeFile(File f, int key, TupleDesc td) {
+        this(f, key, td, false);
+    }
+
+    /**
+     * Constructs a B+ tree file backed by the specified file, optionally
+     * serving page reads from a read-only memory mapping of the file.
+     *
+     * @param f - the file that stores the on-disk backing store for this B+ tree
+     *            file.
+     * @param key - the field which index is keyed on
+     * @param td - the tuple descriptor of tuples in the file
+     * @param mapped - whether to read pages through a memory mapping
+     * @see MappedSegments
+     */
+    public BTreeFile(File f, int key, TupleDesc td, boolean mapped) {
         this.f = f;
         this.tableid = f.getAbsoluteFile().hashCode();
         this.keyField = key;
         this.td = td;
+        this.channel = new PageChannel(f);
+        this.segments = mapped ? new MappedSegments(channel, BufferPool.getPageSize()) : null;
     }
 
     /**
@@ -87,10 +107,10 @@ public class BTreeFile implements DbFile {
     public Page readPage(PageId pid) {
         BTreePageId id = (BTreePageId) pid;
 
-        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(f))) {
+        try {
             if (id.pgcateg() == BTreePageId.ROOT_PTR) {
                 byte[] pageBuf = new byte[BTreeRootPtrPage.getPageSize()];
-                int retval = bis.read(pageBuf, 0, BTreeRootPtrPage.getPageSize());
+                int retval = readPageBytes(pageBuf, 0);
                 if (retval == -1) {
                     throw new IllegalArgumentException("Read past end of table");
                 }
@@ -102,12 +122,7 @@ public class BTreeFile implements DbFile {
                 return new BTreeRootPtrPage(id, pageBuf);
             } else {
                 byte[] pageBuf = new byte[BufferPool.getPageSize()];
-                if (bis.skip(BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber() - 1) * BufferPool.getPageSize()) !=
-                        BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber() - 1) * BufferPool.getPageSize()) {
-                    throw new IllegalArgumentException(
-                            "Unable to seek to correct place in BTreeFile");
-                }
-                int retval = bis.read(pageBuf, 0, BufferPool.getPageSize());
+                int retval = readPageBytes(pageBuf, pageOffset(id));
                 if (retval == -1) {
                     throw new IllegalArgumentException("Read past end of table");
                 }
@@ -127,8 +142,6 @@ public class BTreeFile implements DbFile {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        // Close the file on success or error
-        // Ignore failures closing the file
     }
 
     /**
@@ -141,16 +154,45 @@ public class BTreeFile implements DbFile {
         BTreePageId id = (BTreePageId) page.getId();
 
         byte[] data = page.getPageData();
-        RandomAccessFile rf = new RandomAccessFile(f, "rw");
         if(id.pgcateg() == BTreePageId.ROOT_PTR) {
-            rf.write(data);
-            rf.close();
+            channel.write(data, 0);
         }
         else {
-            rf.seek(BTreeRootPtrPage.getPageSize() + (long) (page.getId().getPageNumber() - 1) * BufferPool.getPageSize());
-            rf.write(data);
-            rf.close();
+            channel.write(data, pageOffset(id));
+        }
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Fills pageBuf with the bytes at the given offset, copying them out of
+     * the mapping in mapped mode (the B+ tree pages decode from a byte array)
+     * and reading them through the channel otherwise.
+     *
+     * @return the number of bytes read, or -1 if offset is past the end of the file
+     */
+    private int readPageBytes(byte[] pageBuf, long offset) throws IOException {
+        if (segments == null) {
+            return channel.read(pageBuf, offset);
+        }
+        ByteBuffer mappedPage = segments.slice(offset, pageBuf.length);
+        if (mappedPage == null) {
+            return -1;
         }
+        mappedPage.get(pageBuf);
+        return pageBuf.length;
+    }
+
+    /**
+     * Returns the file offset of a non root pointer page. The root pointer
+     * page sits at offset 0 and is smaller than the other pages.
+     */
+    private static long pageOffset(BTreePageId id) {
+        return BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber() - 1) * BufferPool.getPageSize();
     }
 
     /**
@@ -1108,14 +1150,11 @@ public class BTreeFile implements DbFile {
             // 这个时候说明是空文件
             if(f.length() == 0) {
                 // create the root pointer page and the root page
-                BufferedOutputStream bw = new BufferedOutputStream(
-                        new FileOutputStream(f, true));
                 byte[] emptyRootPtrData = BTreeRootPtrPage.createEmptyPageData();
                 byte[] emptyLeafData = BTreeLeafPage.createEmptyPageData();
                 // 写入空的根指针和叶子节点
-                bw.write(emptyRootPtrData);
-                bw.write(emptyLeafData);
-                bw.close();
+                channel.write(emptyRootPtrData, 0);
+                channel.write(emptyLeafData, emptyRootPtrData.length);
             }
         }
 
@@ -1172,11 +1211,8 @@ public class BTreeFile implements DbFile {
         if(headerId == null) {
             synchronized(this) {
                 // create the new page
-                BufferedOutputStream bw = new BufferedOutputStream(
-                        new FileOutputStream(f, true));
                 byte[] emptyData = BTreeInternalPage.createEmptyPageData();
-                bw.write(emptyData);
-                bw.close();
+                channel.write(emptyData, f.length());
                 emptyPageNo = numPages();
             }
         }
@@ -1207,10 +1243,7 @@ public class BTreeFile implements DbFile {
         BTreePageId newPageId = new BTreePageId(tableid, emptyPageNo, pgcateg);
 
         // write empty page to disk
-        RandomAccessFile rf = new RandomAccessFile(f, "rw");
-        rf.seek(BTreeRootPtrPage.getPageSize() + (long) (emptyPageNo - 1) * BufferPool.getPageSize());
-        rf.write(BTreePage.createEmptyPageData());
-        rf.close();
+        channel.write(BTreePage.createEmptyPageData(), pageOffset(newPageId));
 
         // make sure the page is not in the buffer pool	or in the local cache
         // 为啥要确保不在
@@ -107,7 +107,12 @@ public class BTreeLeafPage extends BTreePage {
 		}
 		dis.close();
 
-		setBeforeImage();
+		// the bytes read from disk are the before image, they are not written
+		// to, so there is no need to serialize and copy the page again
+		synchronized(oldDataLock)
+		{
+			oldData = data;
+		}
 	}
 
 	/** 
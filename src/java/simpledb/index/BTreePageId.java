@@ -3,7 +3,6 @@ package simpledb.index;
 import simpledb.storage.BufferPool;
 import simpledb.storage.PageId;
 
-import java.util.Objects;
 
 /** Unique identifier for BTreeInternalPage, BTreeLeafPage, BTreeHeaderPage
  *  and BTreeRootPtrPage objects. 
@@ -68,6 +67,11 @@ public class BTreePageId implements PageId {
 		return pgcateg;
 	}
 
+	@Override
+	public int getCategory() {
+		return pgcateg;
+	}
+
 	/**
 	 * @return a hash code for this page, represented by the combination of
 	 *   the table number, page number, and pgcateg (needed if a PageId is used as a
@@ -75,7 +79,8 @@ public class BTreePageId implements PageId {
 	 * @see BufferPool
 	 */
 	public int hashCode() {
-	    return Objects.hash(tableId, pgNo, pgcateg);
+		// Objects.hash would box the fields on every lock manager lookup
+		return (31 * tableId + pgNo) * 31 + pgcateg;
 	}
 
 	/**
@@ -7,7 +7,15 @@ import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -17,6 +25,23 @@ import java.util.List;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * Pages are read into a {@link PageArena} allocated with the BufferPool,
+ * outside the Java heap, where the file supports it. getPage pins the page
+ * for the transaction, so that its memory is not reused for another page
+ * while the transaction may still read it, even if the page is evicted;
+ * pins are dropped by {@link #unpinPage} or when the transaction completes.
+ * <p>
+ * Only clean pages are evicted. A {@link PageCleaner} writes the dirty pages
+ * of completed transactions in the background, and if every page is dirty
+ * when a page has to be read, the reading thread writes one such page
+ * itself.
+ * <p>
+ * By default a commit writes the pages the transaction dirtied (FORCE). With
+ * {@link #setForceOnCommit} off, a commit only writes their update records
+ * to the log, which the commit record forces, and leaves the pages dirty for
+ * the page cleaner (NO-FORCE); {@link LogFile#recover} redoes the updates of
+ * committed transactions whose pages did not reach the disk.
  *
  * @Threadsafe, all fields are final
  */
@@ -31,27 +56,80 @@ public class BufferPool {
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
+    /** Replacement policy of a BufferPool created without one. */
+    public static final ReplacementPolicy DEFAULT_POLICY = ReplacementPolicy.CLOCK;
+
     private LockManager lockManager;
 
-    private final LRUCache<Integer,Page> pageCache;
+    private final PageArena arena;
 
-    private final Byte lock = (byte) 0;
+    private final PageTable pageTable;
 
     private static final int DEFAULT_TIME_OUT_TH = 30 * 1000;
 
+    /**
+     * Default number of pages a sequential scan reads ahead of its position:
+     * none, read-ahead is opt-in since it locks pages the scan may not reach.
+     */
+    public static final int DEFAULT_READ_AHEAD_WINDOW = 0;
+
+    private volatile int readAheadWindow = DEFAULT_READ_AHEAD_WINDOW;
+
+    private final Map<TransactionId, Set<ReadAhead>> readAheads = new ConcurrentHashMap<>();
+
+    private final AtomicLong readAheadHits = new AtomicLong();
+
+    private final AtomicLong readAheadMisses = new AtomicLong();
+
+    /** Default time in milliseconds between two runs of the page cleaner. */
+    public static final long DEFAULT_CLEANER_INTERVAL = 100;
+
+    /** Default maximum number of pages the page cleaner writes per run. */
+    public static final int DEFAULT_CLEANER_BATCH = 16;
+
+    private final PageCleaner cleaner = new PageCleaner(this);
+
+    private volatile long cleanerInterval = DEFAULT_CLEANER_INTERVAL;
+
+    private volatile int cleanerBatch = DEFAULT_CLEANER_BATCH;
+
+    private final AtomicLong cleanerWrites = new AtomicLong();
+
+    private final AtomicLong foregroundWrites = new AtomicLong();
+
+    private volatile boolean forceOnCommit = true;
+
+    // LSN of the first logged change to a page that may not be on disk
+    private final Map<PageId, Long> recLsns = new HashMap<>(); // protected by this
+
+    // the dirtier of committed changes an abort puts back; never runs
+    private static final TransactionId RESTORED = new TransactionId();
+
     /**
      * Creates a BufferPool that caches up to numPages pages.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, DEFAULT_POLICY);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, evicting pages
+     * with the given policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the replacement policy
+     */
+    public BufferPool(int numPages, ReplacementPolicy policy) {
         // some code goes here
         if (numPages <= 0){
-            pageCache = new LRUCache<>(DEFAULT_PAGES);
-            return;
+            numPages = DEFAULT_PAGES;
         }
-        pageCache = new LRUCache<>(numPages);
+        arena = new PageArena(numPages);
+        pageTable = new PageTable(numPages, policy, arena);
         lockManager = new LockManager();
+        cleaner.schedule(cleanerInterval);
     }
 
     public static int getPageSize() {
@@ -86,37 +164,347 @@ public class BufferPool {
     public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
         // some code goes her
-        while (true){
-            synchronized (lock){
-                if(!lockManager.acquireLock(tid,pid,perm)){
-                    lockManager.waitForResources(tid,pid,perm);
-                    Thread.yield();
-                    lockManager.dealWithPotentialDeadlocks(tid);
-
-                    if (isTimeOutTransaction(tid)) {
-                        throw new TransactionAbortedException();
-                    }
-                }else{
-                    break;
-                }
-            }
-        }
+        lockPage(tid, pid, perm);
 
-        Page page = pageCache.get(pid.hashCode());
+        Page page = pageTable.get(pid, tid);
         if (page == null) {
+            page = loadPage(tid, pid);
+        }
+
+        return page;
+    }
 
-            DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+    /**
+     * Reads a page into a free block of the arena, or onto the heap if there
+     * is none or the file cannot read into it, and adds it to the buffer pool.
+     *
+     * @param tid the transaction to pin the page for, or null to not pin it
+     * @return the page in the buffer pool
+     */
+    private Page loadPage(TransactionId tid, PageId pid) throws DbException {
+        DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+        try {
+            if (!pageTable.makeRoom(pid) && cleanPages(new TransactionId(), 1, false) > 0) {
+                // every page was dirty, now one of them is clean
+                pageTable.makeRoom(pid);
+            }
+        } catch (IOException e) {
+            throw new DbException("failed to write back a page: " + e.getMessage());
+        }
+        PageArena.Block block = arena.allocate();
+        Page page = null;
+        if (block != null) {
+            page = file.readPage(pid, block.buffer());
+            if (page == null) {
+                arena.release(block);
+                block = null;
+            }
+        }
+        if (page == null) {
             page = file.readPage(pid);
-            if (page == null){
-                throw new DbException("Can not get the page");
+        }
+        if (page == null){
+            throw new DbException("Can not get the page");
+        }
+        // another thread may have loaded the page meanwhile, use its copy
+        return pageTable.putIfAbsent(page, block, tid);
+    }
+
+    /**
+     * Drops a pin getPage took on a page for a transaction. The transaction
+     * must not use the page it got any more; it has to get it again. Pins
+     * left are dropped when the transaction completes, so calling this is
+     * optional, but it lets long transactions such as scans keep the memory
+     * they hold bounded.
+     *
+     * @param tid the transaction that got the page
+     * @param pid the ID of the page
+     */
+    public void unpinPage(TransactionId tid, PageId pid) {
+        arena.unpin(tid, pid);
+    }
+
+    /**
+     * Sets the number of pages a sequential scan reads ahead of the page it
+     * is processing; 0, the default, disables read-ahead.
+     * <p>
+     * A prefetched page is read locked for the scanning transaction like a
+     * page the scan reads, and the lock is held until the transaction
+     * completes, even if the scan is closed before it reaches the page. With
+     * a window of K, a scan may hold read locks on up to K pages past the
+     * last one it read, and writers of those pages wait for it.
+     */
+    public void setReadAheadWindow(int pages) {
+        readAheadWindow = Math.max(0, pages);
+    }
+
+    public int getReadAheadWindow() {
+        return readAheadWindow;
+    }
+
+    /**
+     * @return the number of prefetched pages that were still in the buffer
+     *         pool when the scan that requested them reached them
+     */
+    public long getReadAheadHits() {
+        return readAheadHits.get();
+    }
+
+    /**
+     * @return the number of prefetched pages that were not (yet, or any
+     *         more) in the buffer pool when the scan reached them
+     */
+    public long getReadAheadMisses() {
+        return readAheadMisses.get();
+    }
+
+    public void resetReadAheadStats() {
+        readAheadHits.set(0);
+        readAheadMisses.set(0);
+    }
+
+    /**
+     * Sets whether a commit writes the pages of the transaction to disk
+     * (FORCE, the default) or only their update records to the log
+     * (NO-FORCE). In NO-FORCE mode, {@link #transactionComplete} also logs
+     * the commit record, before it releases the locks. Set it while no
+     * transaction commits.
+     */
+    public void setForceOnCommit(boolean force) {
+        forceOnCommit = force;
+    }
+
+    public boolean getForceOnCommit() {
+        return forceOnCommit;
+    }
+
+    /**
+     * Sets the time between two runs of the page cleaner, which writes dirty
+     * pages of completed transactions in the background; 0 stops it.
+     */
+    public void setCleanerInterval(long millis) {
+        cleanerInterval = Math.max(0, millis);
+        cleaner.schedule(cleanerInterval);
+    }
+
+    public long getCleanerInterval() {
+        return cleanerInterval;
+    }
+
+    /**
+     * Sets the maximum number of pages the page cleaner writes per run.
+     */
+    public void setCleanerBatch(int pages) {
+        cleanerBatch = Math.max(1, pages);
+    }
+
+    public int getCleanerBatch() {
+        return cleanerBatch;
+    }
+
+    /**
+     * @return the number of pages written by the page cleaner
+     */
+    public long getCleanerWrites() {
+        return cleanerWrites.get();
+    }
+
+    /**
+     * @return the number of pages written by the threads of transactions:
+     *         when they commit or flush pages, and when they need a page
+     *         while every page in the buffer pool is dirty
+     */
+    public long getForegroundWrites() {
+        return foregroundWrites.get();
+    }
+
+    public void resetWriteStats() {
+        cleanerWrites.set(0);
+        foregroundWrites.set(0);
+    }
+
+    /**
+     * Writes up to max dirty pages of completed transactions to disk and
+     * marks them clean. A running transaction holds a write lock on every
+     * page it dirtied, so a dirty page that can be read locked right away
+     * has no uncommitted changes; the read lock is held while the page is
+     * written. The log is forced up to the LSN of each page before it is
+     * written, so no page reaches the disk before the log records of its
+     * changes; the commit of its transaction usually forced them already.
+     *
+     * @param locker the transaction to take the read locks for; must not hold
+     *        any lock
+     * @param background true for the page cleaner, false for the thread of
+     *        a transaction
+     * @return the number of pages written
+     */
+    int cleanPages(TransactionId locker, int max, boolean background) throws IOException {
+        int written = 0;
+        for (Page page : pageTable.pages()) {
+            if (written >= max) {
+                break;
             }
-            if (pageCache.isFull()){
-                evictPage();
+            if (cleanPage(locker, page, background ? cleanerWrites : foregroundWrites)) {
+                written++;
             }
-            pageCache.put(pid.hashCode(), page);
         }
+        return written;
+    }
 
-        return page;
+    /**
+     * Writes the given pages to disk as {@link #cleanPages} does, skipping
+     * those that are clean, no longer cached, or held by a running
+     * transaction. Holds the monitor of the BufferPool for one page at a
+     * time, so transactions go on meanwhile. Used by fuzzy checkpoints.
+     *
+     * @return the number of pages written
+     */
+    int writePages(TransactionId locker, Collection<PageId> pids) throws IOException {
+        int written = 0;
+        for (PageId pid : pids) {
+            Page page = pageTable.peek(pid);
+            if (page != null && cleanPage(locker, page, cleanerWrites)) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    // writes the page if it is dirty and can be read locked right away
+    private boolean cleanPage(TransactionId locker, Page page, AtomicLong writes) throws IOException {
+        PageId pid = page.getId();
+        if (page.isDirty() == null || !lockManager.acquireLock(locker, pid, Permissions.READ_ONLY)) {
+            return false;
+        }
+        try {
+            Database.getLogFile().force(page.getLsn());
+            return writeBack(pid, writes);
+        } finally {
+            lockManager.releaseLock(locker, pid);
+        }
+    }
+
+    // the page may have been written, evicted or replaced since it was seen;
+    // counted before it is marked clean, so a clean page is never uncounted
+    private synchronized boolean writeBack(PageId pid, AtomicLong writes) throws IOException {
+        Page page = pageTable.peek(pid);
+        if (page == null || page.isDirty() == null) {
+            return false;
+        }
+        Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+        writes.incrementAndGet();
+        page.markDirty(false, null);
+        recLsns.remove(pid);
+        return true;
+    }
+
+    /**
+     * Returns the dirty page table for a checkpoint: the pages with logged
+     * changes that may not be on disk, each with the LSN of the first log
+     * record of those changes. Recovery has to redo the log from there on
+     * for these pages only.
+     */
+    synchronized Map<Page, Long> dirtyPageTable() {
+        Map<Page, Long> table = new LinkedHashMap<>();
+        for (Map.Entry<PageId, Long> e : recLsns.entrySet()) {
+            Page page = pageTable.peek(e.getKey());
+            if (page != null) {
+                table.put(page, e.getValue());
+            }
+        }
+        return table;
+    }
+
+    void recordReadAhead(boolean hit) {
+        (hit ? readAheadHits : readAheadMisses).incrementAndGet();
+    }
+
+    /**
+     * Starts read-ahead for a sequential scan of a heap file on behalf of a
+     * transaction.
+     *
+     * @return the read-ahead to report page accesses to, or null if read-ahead
+     *         is disabled
+     * @see #stopReadAhead
+     */
+    ReadAhead startReadAhead(TransactionId tid, int tableId) {
+        int window = readAheadWindow;
+        if (window <= 0 || tid == null) {
+            return null;
+        }
+        ReadAhead ra = new ReadAhead(this, tid, tableId, window);
+        readAheads.compute(tid, (t, scans) -> {
+            if (scans == null) {
+                scans = ConcurrentHashMap.newKeySet();
+            }
+            scans.add(ra);
+            return scans;
+        });
+        return ra;
+    }
+
+    void stopReadAhead(ReadAhead ra) {
+        ra.cancel();
+        // no empty set is left behind for transactions that never complete
+        readAheads.computeIfPresent(ra.getTransactionId(), (t, scans) -> {
+            scans.remove(ra);
+            return scans.isEmpty() ? null : scans;
+        });
+    }
+
+    /**
+     * Acquires the lock getPage would take on the specified page, blocking
+     * like getPage, without loading the page. Used for pages a transaction
+     * writes to disk itself, e.g. pages appended by a bulk load, which do
+     * not exist yet.
+     */
+    void lockPage(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException {
+        if (lockManager.holdsLock(tid, pid, perm)) {
+            // e.g. a page the transaction read before, without taking a monitor
+            return;
+        }
+        while (!lockManager.acquireLock(tid,pid,perm)){
+            lockManager.waitForResources(tid,pid,perm);
+            Thread.yield();
+            lockManager.dealWithPotentialDeadlocks(tid);
+
+            if (isTimeOutTransaction(tid)) {
+                throw new TransactionAbortedException();
+            }
+        }
+    }
+
+    /**
+     * Loads the specified page into the buffer pool for a later getPage by
+     * the same transaction, without ever blocking: if the transaction cannot
+     * get a read lock on the page right away, or the buffer pool is full of
+     * dirty pages, nothing is loaded.
+     * <p>
+     * The read lock is what makes it safe to read the page from disk outside
+     * of getPage: while tid holds it nobody else can modify the page.
+     *
+     * @return true if the page is in the buffer pool when this returns
+     */
+    boolean prefetchPage(TransactionId tid, PageId pid) {
+        if (!lockManager.acquireLock(tid, pid, Permissions.READ_ONLY)) {
+            return false;
+        }
+        if (isCached(pid)) {
+            return true;
+        }
+
+        try {
+            loadPage(null, pid);
+        } catch (DbException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /** Return true if the specified page is in the buffer pool */
+    boolean isCached(PageId pid) {
+        return pageTable.contains(pid);
     }
 
     private boolean isTimeOutTransaction(TransactionId tid) {
@@ -163,6 +551,12 @@ public class BufferPool {
     /**
      * Commit or abort a given transaction; release all locks associated to
      * the transaction.
+     * <p>
+     * A NO-FORCE commit appends the commit record to the log before the
+     * locks are released, and returns once it is durable. Otherwise a
+     * transaction could change the pages and commit before the record is
+     * appended, and a crash in between would undo this transaction over
+     * the committed changes of the other one.
      *
      * @param tid the ID of the transaction requesting the unlock
      * @param commit a flag indicating whether we should commit or abort
@@ -170,9 +564,22 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid, boolean commit) {
         // some code goes here
         // not necessary for lab1|lab2
+        // read-ahead takes locks on behalf of tid, stop it before releasing them
+        Set<ReadAhead> scans = readAheads.remove(tid);
+        if (scans != null) {
+            for (ReadAhead ra : scans) {
+                ra.cancel();
+            }
+        }
+
+        long commitRecord = -1;
         if(commit){
             try {
-                flushPages(tid);
+                boolean force = forceOnCommit;
+                commitPages(tid, force);
+                if (!force) {
+                    commitRecord = Database.getLogFile().appendCommit(tid);
+                }
             }catch (IOException e){
                 e.printStackTrace();
             }
@@ -180,7 +587,17 @@ public class BufferPool {
             restorePages(tid);
         }
 
+        arena.unpinAll(tid);
         lockManager.removeTransactionLocks(tid);
+        if (commitRecord != -1) {
+            // later commits come after it in the log, so waiting after the
+            // locks are released cannot make them durable before it
+            try {
+                Database.getLogFile().awaitCommit(commitRecord);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     /**
@@ -205,15 +622,7 @@ public class BufferPool {
         DbFile file = Database.getCatalog().getDatabaseFile(tableId);
         List<Page> dirtyPages = file.insertTuple(tid,t);
         for (Page dirtyPage : dirtyPages) {
-            PageId pid = dirtyPage.getId();
-            if (pageCache.get(pid.hashCode()) != null){
-                pageCache.put(dirtyPage.getId().hashCode(),dirtyPage);
-            } else if (!pageCache.isFull()) {
-                pageCache.put(dirtyPage.getId().hashCode(),dirtyPage);
-            }else if(pageCache.isFull()){
-                evictPage();
-                pageCache.put(dirtyPage.getId().hashCode(),dirtyPage);
-            }
+            pageTable.put(dirtyPage);
         }
     }
 
@@ -237,7 +646,7 @@ public class BufferPool {
         DbFile file = Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId());
         List<Page> dirtyPages = file.deleteTuple(tid,t);
         for (Page dirtyPage : dirtyPages) {
-            pageCache.put(dirtyPage.hashCode(),dirtyPage);
+            pageTable.put(dirtyPage);
         }
     }
 
@@ -249,19 +658,13 @@ public class BufferPool {
     public synchronized void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for lab1
-        Node<Integer, Page> node = pageCache.getHeadNode();
-        node = node.getNext();
-
-        while (node != null && node != pageCache.getTailNode()) {
-            Page page = node.getValue();
+        for (Page page : pageTable.pages()) {
             if (page.isDirty() != null) {
                 flushPage(page.getId());
                 // todo 不能这样子写 因为这里没有写入log文件
                 // Database.getCatalog().getDatabaseFile(page.getId().getTableId()).writePage(page);
                 // page.markDirty(false, null);
             }
-
-            node = node.getNext();
         }
     }
 
@@ -276,7 +679,9 @@ public class BufferPool {
     public synchronized void discardPage(PageId pid) {
         // some code goes here
         // not necessary for lab1
-        pageCache.remove(pid.hashCode());
+        pageTable.remove(pid);
+        // the caller wrote the page, as rollback does, or no longer uses it
+        recLsns.remove(pid);
     }
 
     /**
@@ -287,19 +692,24 @@ public class BufferPool {
         // some code goes here
         // not necessary for lab1
         // 这个没有事务控制 不能在这里面调用 setBeforeImage() 函数
-        Page page = pageCache.get(pid.hashCode());
+        Page page = pageTable.get(pid);
         if (page == null){
             throw new IOException("UnCorrected page id");
         }
 
         // 如果有赃页 写入磁盘之前先把修改前和修改后的内容写到日志中去
+        // only for a running dirtier, which holds the write lock on the
+        // page; the changes of a completed one are logged already
         TransactionId dirtier = page.isDirty();
-        if (dirtier != null){
+        if (dirtier != null && holdsLock(dirtier, pid)){
             Database.getLogFile().logWrite(dirtier, page.getBeforeImage(), page);
-            Database.getLogFile().force();// 强制写入磁盘
         }
+        // 强制写入磁盘, up to the last record of a change to the page
+        Database.getLogFile().force(page.getLsn());
 
         Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+        recLsns.remove(pid);
+        foregroundWrites.incrementAndGet();
     }
 
     /** Write all pages of the specified transaction to disk.
@@ -307,11 +717,21 @@ public class BufferPool {
     public synchronized void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
-        Node<Integer,Page> node = pageCache.getHeadNode();
-        node = node.getNext();
+        commitPages(tid, true);
+    }
 
-        while(node != null && node != pageCache.getTailNode()){
-            Page page = node.getValue();
+    /**
+     * Logs the updates to the pages of the specified transaction and makes
+     * their current state the before image of the next update.
+     *
+     * @param write true to write the pages to disk as well, after forcing
+     *        the log once for all of them, false to leave them dirty for the
+     *        page cleaner
+     */
+    private synchronized void commitPages(TransactionId tid, boolean write) throws IOException {
+        List<Page> logged = new ArrayList<>();
+        long lsn = 0;
+        for (Page page : pageTable.pages()) {
             TransactionId dirtier = page.isDirty();
             // 如果是本事务占有的页面 那么需要调用setBeforeImage函数 同时刷入赃页
             if (holdsLock(tid,page.getId())){
@@ -320,53 +740,38 @@ public class BufferPool {
                 if (dirtier != null && dirtier.equals(tid)){
                     // todo:这一行代码不能放在这里
                     // page.setBeforeImage();
-                    Database.getLogFile().logWrite(dirtier, before, page);
-                    Database.getCatalog().getDatabaseFile(page.getId().getTableId()).writePage(page);
+                    lsn = Database.getLogFile().logWrite(dirtier, before, page);
+                    recLsns.putIfAbsent(page.getId(), lsn);
+                    logged.add(page);
                 }
             }
-
-
-            node = node.getNext();
         }
-    }
-
-    public synchronized void restorePages(TransactionId tid) {
-        Node<Integer,Page> node = pageCache.getHeadNode();
-        node = node.getNext();
-
-        while(node != null && node != pageCache.getTailNode()){
-            Page page = node.getValue();
-            if (tid.equals(page.isDirty())){
-                discardPage(page.getId());
-                DbFile file = Database.getCatalog().getDatabaseFile(page.getId().getTableId());
-                page = file.readPage(page.getId());
-                pageCache.put(page.getId().hashCode(),page);
+        if (write && !logged.isEmpty()) {
+            Database.getLogFile().force(lsn);
+            for (Page page : logged) {
+                Database.getCatalog().getDatabaseFile(page.getId().getTableId()).writePage(page);
+                recLsns.remove(page.getId());
+                foregroundWrites.incrementAndGet();
             }
-
-            node = node.getNext();
         }
     }
 
-    /**
-     * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
-     */
-    private synchronized  void evictPage() throws DbException {
-        // some code goes here
-        // not necessary for lab1
-        Node<Integer,Page> node = pageCache.getTailNode();
-        node = node.getPrev();
-
-        while(node != null){
-            if (node == pageCache.getHeadNode()){
-                throw new DbException("have no clean page");
-            }
-
-            if (node.getValue().isDirty() == null){
-                pageCache.remove(node.getKey());
-                return;
+    public synchronized void restorePages(TransactionId tid) {
+        for (Page page : pageTable.pages()) {
+            if (tid.equals(page.isDirty())){
+                // dirty pages are never evicted, the page is still there
+                if (forceOnCommit) {
+                    DbFile file = Database.getCatalog().getDatabaseFile(page.getId().getTableId());
+                    pageTable.replace(file.readPage(page.getId()));
+                } else {
+                    // committed changes before tid may not be on disk yet;
+                    // they are logged up to the LSN of the page already
+                    Page before = page.getBeforeImage();
+                    before.setLsn(page.getLsn());
+                    before.markDirty(true, RESTORED);
+                    pageTable.replace(before);
+                }
             }
-            node = node.getPrev();
         }
     }
 
@@ -0,0 +1,149 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BulkLoader appends tuples to a HeapFile without going through the buffer
+ * pool one tuple at a time. Tuples are packed into new pages in memory; each
+ * time a batch of pages is full the pages are appended to the end of the file
+ * with one sequential write.
+ * <p>
+ * The load is part of the transaction that created the loader:
+ * <ul>
+ * <li>the transaction takes an exclusive lock on every page it appends, so
+ * other transactions cannot see the tuples before it commits;</li>
+ * <li>every page is logged once, with an empty page as before image, and the
+ * log is forced before the pages are written, so recovery and
+ * {@link LogFile#rollback} undo the load of a transaction that aborts.</li>
+ * </ul>
+ * Since the pages are written to disk directly and never enter the buffer
+ * pool, a transaction that bulk loaded must be aborted through
+ * {@link simpledb.transaction.Transaction#transactionComplete} (which rolls
+ * back using the log), not just with {@link BufferPool#transactionComplete}.
+ * <p>
+ * Tuples are only appended, the loader never fills free space on existing
+ * pages.
+ *
+ * @see HeapFile#bulkLoader
+ */
+public class BulkLoader {
+
+    /** The default number of pages appended with one write. */
+    public static final int DEFAULT_BATCH_PAGES = 64;
+
+    private final HeapFile file;
+    private final TransactionId tid;
+    private final int batchPages;
+
+    private final List<Page> batch = new ArrayList<>();
+    private final List<Tuple> added = new ArrayList<>();
+    private Page current;
+    private int count = 0;
+    private int pagesWritten = 0;
+
+    BulkLoader(HeapFile file, TransactionId tid, int batchPages) {
+        if (batchPages < 1) {
+            throw new IllegalArgumentException("batchPages must be positive");
+        }
+        this.file = file;
+        this.tid = tid;
+        this.batchPages = batchPages;
+    }
+
+    /**
+     * Adds a tuple to the load. The tuple is written to the file when its
+     * batch of pages is full, or by {@link #finish}; its record id is only
+     * valid once it has been written.
+     *
+     * @throws DbException if the tuple does not fit on an empty page
+     */
+    public void add(Tuple t) throws DbException, IOException, TransactionAbortedException {
+        if (current == null || !file.insertIntoPage(current, t)) {
+            if (batch.size() == batchPages) {
+                flush();
+            }
+            // page numbers are assigned when the batch is written
+            current = file.createEmptyPage(new HeapPageId(file.getId(), batch.size()));
+            batch.add(current);
+            if (!file.insertIntoPage(current, t)) {
+                throw new DbException("tuple does not fit on an empty page");
+            }
+        }
+        added.add(t);
+        count++;
+    }
+
+    /**
+     * Appends the pages filled so far to the file.
+     */
+    public void flush() throws IOException, TransactionAbortedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int pageSize = BufferPool.getPageSize();
+        int[] freeSpace = new int[batch.size()];
+        ByteBuffer data = ByteBuffer.allocate(batch.size() * pageSize);
+        LogFile log = Database.getLogFile();
+
+        // reserving the page numbers and writing the pages must not interleave
+        // with other appends to the file
+        synchronized (file) {
+            int first = file.numPages();
+            List<Page> pages = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                HeapPageId pid = new HeapPageId(file.getId(), first + i);
+                Database.getBufferPool().lockPage(tid, pid, Permissions.READ_WRITE);
+                Page after = file.createPage(pid, batch.get(i).getPageData());
+                log.logWrite(tid, file.createEmptyPage(pid), after);
+                data.put(after.getPageData());
+                freeSpace[i] = file.freeSpace(after);
+                pages.add(after);
+            }
+            // write-ahead: the undo images must be on disk before the pages
+            log.force();
+            file.appendingPages(pages);
+            data.flip();
+            file.getPageChannel().write(data, (long) first * pageSize);
+            file.pagesAppended(pages, freeSpace);
+
+            for (Tuple t : added) {
+                RecordId rid = t.getRecordId();
+                t.setRecordId(new RecordId(new HeapPageId(file.getId(),
+                        first + rid.getPageId().getPageNumber()), rid.getTupleNumber()));
+            }
+        }
+        pagesWritten += batch.size();
+        batch.clear();
+        added.clear();
+        current = null;
+    }
+
+    /**
+     * Appends the remaining tuples to the file.
+     *
+     * @return the number of tuples added to this loader
+     */
+    public int finish() throws IOException, TransactionAbortedException {
+        flush();
+        return count;
+    }
+
+    /** Returns the number of tuples added to this loader so far. */
+    public int getCount() {
+        return count;
+    }
+
+    /** Returns the number of pages appended to the file so far. */
+    public int getPagesWritten() {
+        return pagesWritten;
+    }
+}
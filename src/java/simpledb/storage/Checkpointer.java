@@ -0,0 +1,88 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.transaction.TransactionId;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checkpointer takes fuzzy checkpoints of one LogFile in the background.
+ * <p>
+ * A checkpoint that writes every dirty page holding the monitors of the
+ * buffer pool and the log stops every transaction until the last page is
+ * on disk. A fuzzy checkpoint instead takes the dirty page table of the
+ * buffer pool and writes those pages one at a time with
+ * {@link BufferPool#writePages}, which holds the buffer pool monitor for
+ * one page only and skips the pages a running transaction holds. Then it
+ * appends the checkpoint record, with the transactions active and the
+ * pages still dirty at that time, and forces it. Only then does it point
+ * the log at the record and truncate the log. Until then recovery uses
+ * the previous checkpoint, and it redoes the pages listed in the record
+ * from their first record on.
+ * <p>
+ * The checkpoints of all log files run one at a time on one shared daemon
+ * thread.
+ */
+class Checkpointer {
+
+    private static final ExecutorService CHECKPOINT_THREAD = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "simpledb-checkpointer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LogFile log;
+
+    // takes the locks of the checkpointer, see BufferPool.writePages
+    private final TransactionId tid = new TransactionId();
+
+    Checkpointer(LogFile log) {
+        this.log = log;
+    }
+
+    /**
+     * Queues a checkpoint.
+     *
+     * @return a future that completes once the log points at the new
+     *         checkpoint record and has been truncated
+     */
+    Future<Void> start() {
+        return CHECKPOINT_THREAD.submit(this::checkpoint);
+    }
+
+    private Void checkpoint() throws IOException {
+        BufferPool bp = Database.getBufferPool();
+        List<PageId> dirty = new ArrayList<>();
+        for (Page page : bp.dirtyPageTable().keySet()) {
+            dirty.add(page.getId());
+        }
+        bp.writePages(tid, dirty);
+        log.writeCheckpoint();
+        log.logTruncate();
+        return null;
+    }
+
+    /**
+     * Waits for a checkpoint started with {@link #start}.
+     */
+    static void await(Future<Void> checkpoint) throws IOException {
+        try {
+            checkpoint.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for a checkpoint");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
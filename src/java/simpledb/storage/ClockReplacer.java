@@ -0,0 +1,61 @@
+package simpledb.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CLOCK replacement: the frames form a ring swept by a hand; a hit sets the
+ * reference bit of its frame without locking, and the hand evicts the first
+ * clean page whose bit is clear, clearing the bits it passes.
+ */
+class ClockReplacer extends Replacer {
+
+    private final List<PageTable.Frame> clock = new ArrayList<>();
+    private int hand = 0;
+
+    @Override
+    void hit(PageTable.Frame f) {
+        // skip the write if it is set already, it is shared by all readers
+        if (!f.referenced) {
+            f.referenced = true;
+        }
+    }
+
+    @Override
+    void added(PageTable.Frame f) {
+        f.referenced = true;
+        f.slot = clock.size();
+        clock.add(f);
+    }
+
+    @Override
+    void removed(PageTable.Frame f, boolean evicted) {
+        PageTable.Frame last = clock.remove(clock.size() - 1);
+        if (last != f) {
+            clock.set(f.slot, last);
+            last.slot = f.slot;
+        }
+    }
+
+    @Override
+    PageTable.Frame victim(boolean force) {
+        // two rounds: the first may only clear reference bits
+        for (int i = 0, n = 2 * clock.size(); i < n; i++) {
+            if (hand >= clock.size()) {
+                hand = 0;
+            }
+            PageTable.Frame f = clock.get(hand++);
+            if (f.page.isDirty() == null) {
+                if (!f.referenced) {
+                    return f;
+                }
+                f.referenced = false;
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return clock.size();
+    }
+}
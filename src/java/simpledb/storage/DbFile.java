@@ -8,6 +8,7 @@ import simpledb.transaction.TransactionId;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * The interface for database files on disk. Each table is represented by a
@@ -24,6 +25,21 @@ public interface DbFile {
      */
     Page readPage(PageId id);
 
+    /**
+     * Read the specified page from disk into the given buffer, and return a
+     * page that is a view over the buffer rather than a copy of it. The
+     * BufferPool uses this to read pages into memory it manages itself, see
+     * {@link BufferPool}; files that cannot do so return null and have their
+     * pages read with {@link #readPage(PageId)}.
+     *
+     * @param frame a buffer of {@link BufferPool#getPageSize()} bytes from
+     *        its position on, which the page may keep using
+     * @return the page, or null if it was not read into frame
+     */
+    default Page readPage(PageId id, ByteBuffer frame) {
+        return null;
+    }
+
     /**
      * Push the specified page to disk.
      *
@@ -33,6 +49,15 @@ public interface DbFile {
      */
     void writePage(Page p) throws IOException;
 
+    /**
+     * Closes the files this DbFile keeps open, e.g. when it is removed from
+     * the Catalog. A later read or write opens them again.
+     *
+     * @throws IOException if closing fails
+     */
+    default void close() throws IOException {
+    }
+
     /**
      * Inserts the specified tuple to the file on behalf of transaction.
      * This method will acquire a lock on the affected pages of the file, and
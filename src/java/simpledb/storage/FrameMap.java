@@ -0,0 +1,166 @@
+package simpledb.storage;
+
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An open addressing hash map from page keys, see {@link PageTable#key}, to
+ * the frames of one shard of a PageTable. Keys are primitive longs kept in
+ * an array next to the frames, with linear probing and deletion by shifting
+ * entries back, so lookups neither box keys nor call hashCode and equals,
+ * and entries are not objects of their own.
+ * <p>
+ * A lookup takes no lock: it probes optimistically and only retries under
+ * the read lock if a write ran meanwhile. Writes take the write lock; the
+ * PageTable makes sure only one thread writes at a time by holding the lock
+ * of the shard.
+ *
+ * @Threadsafe
+ */
+class FrameMap {
+
+    private static final int MIN_SLOTS = 8;
+
+    /** The arrays are swapped together when the map grows. */
+    private static final class Slots {
+        final long[] keys;
+        final PageTable.Frame[] frames;
+
+        Slots(int n) {
+            keys = new long[n];
+            frames = new PageTable.Frame[n];
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Slots slots;
+    private int size = 0; // guarded by the write lock
+
+    /**
+     * @param expected the number of frames the map is expected to hold
+     */
+    FrameMap(int expected) {
+        slots = new Slots(Math.max(MIN_SLOTS, Integer.highestOneBit(Math.max(1, expected)) * 4));
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) (PageTable.mix(key) >>> 32) & mask;
+    }
+
+    private static PageTable.Frame find(Slots s, long key) {
+        int mask = s.keys.length - 1;
+        // bounded, a probe racing with writes may see no empty slot
+        for (int i = slot(key, mask), n = 0; n <= mask; i = (i + 1) & mask, n++) {
+            PageTable.Frame f = s.frames[i];
+            if (f == null) {
+                return null;
+            }
+            if (s.keys[i] == key) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the frame with the given key, or null.
+     */
+    PageTable.Frame get(long key) {
+        long stamp = lock.tryOptimisticRead();
+        PageTable.Frame f = find(slots, key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                f = find(slots, key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Adds a frame whose key is not in the map.
+     */
+    void put(PageTable.Frame f) {
+        long stamp = lock.writeLock();
+        try {
+            Slots s = slots;
+            if (2 * (size + 1) > s.keys.length) {
+                s = grow(s);
+            }
+            insert(s, f);
+            size++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static void insert(Slots s, PageTable.Frame f) {
+        int mask = s.keys.length - 1;
+        int i = slot(f.key, mask);
+        while (s.frames[i] != null) {
+            i = (i + 1) & mask;
+        }
+        s.keys[i] = f.key;
+        s.frames[i] = f;
+    }
+
+    private Slots grow(Slots old) {
+        Slots s = new Slots(old.keys.length * 2);
+        for (PageTable.Frame f : old.frames) {
+            if (f != null) {
+                insert(s, f);
+            }
+        }
+        slots = s;
+        return s;
+    }
+
+    /**
+     * Removes the frame with the given key, if there is one.
+     */
+    void remove(long key) {
+        long stamp = lock.writeLock();
+        try {
+            Slots s = slots;
+            int mask = s.keys.length - 1;
+            int i = slot(key, mask);
+            while (s.frames[i] != null && s.keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (s.frames[i] == null) {
+                return;
+            }
+            // shift back the entries that probed past slot i
+            for (int j = (i + 1) & mask; s.frames[j] != null; j = (j + 1) & mask) {
+                int home = slot(s.keys[j], mask);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    s.keys[i] = s.keys[j];
+                    s.frames[i] = s.frames[j];
+                    i = j;
+                }
+            }
+            s.frames[i] = null;
+            size--;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds the pages of all frames in the map to pages.
+     */
+    void collect(List<Page> pages) {
+        long stamp = lock.readLock();
+        try {
+            for (PageTable.Frame f : slots.frames) {
+                if (f != null) {
+                    pages.add(f.page);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
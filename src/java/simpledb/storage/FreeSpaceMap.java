@@ -0,0 +1,183 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * FreeSpaceMap keeps one byte per page of a HeapFile summarizing how much
+ * room the page has left, so that inserts can go straight to a page with
+ * room instead of fetching and locking every page of the table.
+ * <p>
+ * Free space is counted in units chosen by the file (free slots for
+ * HeapFile, blocks of bytes for SlottedHeapFile). An entry is 0 if nothing
+ * is known about the page, or 1 + the free units, capped at {@value #MAX_UNITS}.
+ * Entries are hints only: an insert always checks the page itself, and a
+ * wrong entry costs at most a page fetch or an unnecessarily appended page.
+ * <p>
+ * The map is kept in memory and saved to the side file <code>&lt;table
+ * file&gt;.fsm</code>: a magic number and the number of pages of the table,
+ * followed by the entries. An entry is written whenever its page is written
+ * to the table file. A side file whose page count does not match the table
+ * is ignored, and tools that create table files remove it with
+ * {@link #discard}. The side file goes away with the table file, see
+ * {@link SideFiles}.
+ *
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+    /** The largest number of free units an entry can represent. */
+    public static final int MAX_UNITS = 254;
+
+    private static final int MAGIC = 0x46534d31; // "FSM1"
+    private static final int HEADER_SIZE = 8;
+    private static final String SUFFIX = ".fsm";
+
+    private final File tableFile;
+    private final File file;
+    private final PageChannel channel;
+
+    private byte[] entries;        // null until loaded
+    private int persistedPages = -1; // page count in the header of the side file
+    private int firstCandidate = 0;  // all pages before this one are known to be full
+
+    /**
+     * @param tableFile the table file the map describes
+     */
+    FreeSpaceMap(File tableFile) {
+        this.tableFile = tableFile;
+        this.file = SideFiles.of(tableFile, SUFFIX);
+        this.channel = new PageChannel(file);
+    }
+
+    private static File sideFile(File tableFile) {
+        return new File(tableFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Removes the free-space map of a table file, e.g. because the table file
+     * is being rewritten from scratch.
+     */
+    public static void discard(File tableFile) {
+        sideFile(tableFile).delete();
+    }
+
+    private int numPages() {
+        return (int) (tableFile.length() / BufferPool.getPageSize());
+    }
+
+    private void load() {
+        if (entries != null) {
+            return;
+        }
+        int numPages = numPages();
+        entries = new byte[Math.max(16, numPages)];
+        // checked on the file, opening the channel would create it
+        if (file.length() < HEADER_SIZE + numPages) {
+            return;
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != numPages) {
+                return;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(entries, 0, numPages);
+            channel.read(buf, HEADER_SIZE);
+            if (buf.hasRemaining()) {
+                Arrays.fill(entries, (byte) 0);
+                return;
+            }
+            persistedPages = numPages;
+        } catch (IOException e) {
+            // no usable map, start from scratch
+            Arrays.fill(entries, (byte) 0);
+        }
+    }
+
+    private static byte entry(int units) {
+        return (byte) (1 + Math.max(0, Math.min(units, MAX_UNITS)));
+    }
+
+    /**
+     * Returns the first page at or after from that may have room for the
+     * given number of units: pages with enough free units, pages with the
+     * maximum number of units and pages nothing is known about.
+     *
+     * @param needed the free units needed
+     * @param numPages the number of pages in the table
+     * @return the page number, or -1 if no page may have room
+     */
+    synchronized int find(int needed, int numPages, int from) {
+        load();
+        for (int i = Math.max(from, firstCandidate); i < numPages; i++) {
+            int e = i < entries.length ? entries[i] & 0xff : 0;
+            if (e == 0 || e - 1 >= Math.min(needed, MAX_UNITS)) {
+                return i;
+            }
+            if (i == firstCandidate && e == 1) {
+                firstCandidate++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records that page pageNo has units free units.
+     */
+    synchronized void update(int pageNo, int units) {
+        load();
+        if (pageNo >= entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(pageNo + 1, entries.length * 2));
+        }
+        entries[pageNo] = entry(units);
+        if (units > 0 && pageNo < firstCandidate) {
+            firstCandidate = pageNo;
+        }
+    }
+
+    /**
+     * Records that page pageNo has units free units and saves the entry. Called
+     * after the page has been written to the table file.
+     */
+    synchronized void write(int pageNo, int units) throws IOException {
+        write(pageNo, new int[] { units });
+    }
+
+    /**
+     * Records the free units of the pages firstPage, firstPage + 1, ... and
+     * saves the entries with a single write. Called after the pages have been
+     * written to the table file.
+     */
+    synchronized void write(int firstPage, int[] units) throws IOException {
+        for (int i = 0; i < units.length; i++) {
+            update(firstPage + i, units[i]);
+        }
+        channel.write(ByteBuffer.wrap(entries, firstPage, units.length), HEADER_SIZE + (long) firstPage);
+        int numPages = numPages();
+        if (numPages != persistedPages) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(numPages).flip();
+            if (persistedPages == -1) {
+                // the side file was not valid, bring all of it up to date
+                ByteBuffer all = ByteBuffer.allocate(HEADER_SIZE + numPages);
+                all.put(header).put(entries, 0, Math.min(numPages, entries.length)).flip();
+                channel.write(all, 0);
+            } else {
+                channel.write(header, 0);
+            }
+            persistedPages = numPages;
+        }
+    }
+
+    /**
+     * Closes the side file, and deletes it if the table file was deleted. A
+     * later write opens it again.
+     */
+    synchronized void close() throws IOException {
+        channel.close();
+        SideFiles.closed(tableFile, file);
+    }
+}
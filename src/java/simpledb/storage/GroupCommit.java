@@ -0,0 +1,150 @@
+package simpledb.storage;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GroupCommit makes the commit and abort records of concurrent transactions
+ * of one LogFile durable with a single force of the log.
+ * <p>
+ * A committer appends its record and then waits, without holding the
+ * LogFile monitor, until a flusher has forced the log past the record. The
+ * flusher waits up to {@link LogFile#getGroupCommitDelay()} microseconds, or
+ * until {@link LogFile#getGroupCommitBatch()} records are waiting, and then
+ * forces everything appended so far, so records that arrive while a force
+ * is running go out together with the next one even without a delay. The
+ * flushers of all log files share one daemon thread, which leaves a log
+ * file as soon as no record of it waits.
+ * <p>
+ * Records are identified by their LSN, which, unlike their file offset,
+ * does not change when the log is truncated.
+ */
+class GroupCommit implements Runnable {
+
+    private static final ExecutorService FLUSHER_THREAD = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "simpledb-log-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static class Waiter {
+        final long record;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Waiter(long record) {
+            this.record = record;
+        }
+    }
+
+    private final LogFile log;
+
+    // all guarded by this
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private long durable; // the log is on disk below this LSN
+    private boolean running;
+
+    GroupCommit(LogFile log) {
+        this.log = log;
+    }
+
+    /**
+     * Waits until the record with the given LSN is on disk.
+     */
+    void await(long record) throws IOException {
+        try {
+            enqueue(record).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for the log to be forced");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private synchronized CompletableFuture<Void> enqueue(long record) {
+        Waiter w = new Waiter(record);
+        if (record < durable) {
+            w.done.complete(null);
+            return w.done;
+        }
+        waiters.add(w);
+        if (!running) {
+            running = true;
+            FLUSHER_THREAD.execute(this);
+        } else {
+            notifyAll();
+        }
+        return w.done;
+    }
+
+    /**
+     * Notes that the log is on disk below the given LSN, e.g. after
+     * {@link LogFile#force()}, and releases the records it covers.
+     */
+    void forced(long lsn) {
+        List<Waiter> done = new ArrayList<>();
+        synchronized (this) {
+            durable = Math.max(durable, lsn);
+            while (!waiters.isEmpty() && waiters.peek().record < durable) {
+                done.add(waiters.poll());
+            }
+            notifyAll();
+        }
+        for (Waiter w : done) {
+            w.done.complete(null);
+        }
+    }
+
+    private void failed(IOException e) {
+        List<Waiter> failed;
+        synchronized (this) {
+            failed = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (Waiter w : failed) {
+            w.done.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                if (waiters.isEmpty()) {
+                    running = false;
+                    return;
+                }
+                long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(log.getGroupCommitDelay());
+                long left;
+                try {
+                    // until the batch is full, or another force released it
+                    while (!waiters.isEmpty() && waiters.size() < log.getGroupCommitBatch()
+                            && (left = end - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, left);
+                    }
+                } catch (InterruptedException e) {
+                    // the shared thread is never interrupted; force right away
+                }
+                if (waiters.isEmpty()) {
+                    continue;
+                }
+            }
+            try {
+                forced(log.forceAppended());
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+}
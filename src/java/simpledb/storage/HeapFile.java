@@ -3,10 +3,12 @@ package simpledb.storage;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Permissions;
+import simpledb.execution.Predicate;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -15,6 +17,11 @@ import java.util.*;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ * <p>
+ * A {@link FreeSpaceMap} remembers how much room each page has, so inserts
+ * only fetch pages that have room for the tuple, and a {@link ZoneMap} the
+ * range of the INT columns on each page, so scans with a predicate only fetch
+ * pages that may have matching tuples.
  * 
  * @see HeapPage#HeapPage
  * @author Sam Madden
@@ -24,6 +31,9 @@ public class HeapFile implements DbFile {
     private File f;
     private TupleDesc td;
     private int tableid;
+    private final PageChannel channel;
+    private final FreeSpaceMap freeSpace;
+    private final ZoneMap zoneMap;
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -37,6 +47,9 @@ public class HeapFile implements DbFile {
         this.f = f;
         this.td = td;
         this.tableid = f.getAbsoluteFile().hashCode();
+        this.channel = new PageChannel(f);
+        this.freeSpace = new FreeSpaceMap(f);
+        this.zoneMap = new ZoneMap(f, td);
     }
 
     /**
@@ -49,6 +62,13 @@ public class HeapFile implements DbFile {
         return f;
     }
 
+    /**
+     * Returns the channel used for page I/O on the backing file.
+     */
+    PageChannel getPageChannel() {
+        return channel;
+    }
+
     /**
      * Returns an ID uniquely identifying this HeapFile. Implementation note:
      * you will need to generate this tableid somewhere to ensure that each
@@ -81,17 +101,11 @@ public class HeapFile implements DbFile {
                 HeapPageId hpid = (HeapPageId) pid;
 
                 int pageNumber = hpid.getPageNumber();
-                BufferedInputStream bis = new BufferedInputStream(new FileInputStream(f));
                 byte[] data = new byte[BufferPool.getPageSize()];
 
                 // todo: it is easy to forget that pageNo == 0 ,you don not need skip any bytes
                 // todo: (pageNumber - 1) * BufferPool.getPageSize() is wrong
-                if (bis.skip((long) pageNumber * BufferPool.getPageSize()) !=
-                        (long) pageNumber * BufferPool.getPageSize()) {
-                    throw new IllegalArgumentException(
-                            "Unable to seek to correct place in HeapFile");
-                }
-                int ret = bis.read(data, 0, BufferPool.getPageSize());
+                int ret = channel.read(data, (long) pageNumber * BufferPool.getPageSize());
                 if (ret == -1) {
                     throw new IllegalArgumentException("Read past end of table");
                 }
@@ -99,8 +113,9 @@ public class HeapFile implements DbFile {
                     throw new IllegalArgumentException("Unable to read "
                             + BufferPool.getPageSize() + " bytes from HeapFile");
                 }
-                bis.close();
-                return new HeapPage(hpid,data);
+                HeapPage page = new HeapPage(hpid,data);
+                pageRead(page);
+                return page;
 
             }else {
                 throw new Exception("PageId is not the instance of HeapPageId");
@@ -114,17 +129,155 @@ public class HeapFile implements DbFile {
 
     }
 
+    // see DbFile.java for javadocs
+    @Override
+    public Page readPage(PageId pid, ByteBuffer frame) {
+        if (!(pid instanceof HeapPageId)) {
+            return null;
+        }
+        try {
+            ByteBuffer dst = frame.duplicate();
+            dst.limit(dst.position() + BufferPool.getPageSize());
+            int ret = channel.read(dst, (long) pid.getPageNumber() * BufferPool.getPageSize());
+            if (ret < BufferPool.getPageSize()) {
+                // readPage(pid) reports it
+                return null;
+            }
+            HeapPage page = new HeapPage((HeapPageId) pid, frame);
+            pageRead(page);
+            return page;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // some code goes here
         // not necessary for lab1
-        RandomAccessFile rf = new RandomAccessFile(f, "rw");
         byte[] data = page.getPageData();
-        int offset = page.getId().getPageNumber() * BufferPool.getPageSize();
-        rf.seek(offset);
-        rf.write(data);
-        rf.close();
+        int pageNo = page.getId().getPageNumber();
+        ZoneMap.Entry zone = zoneMap.summarize(pageIterator(page));
+        zoneMap.beforeWrite(pageNo, zone);
+        channel.write(data, (long) pageNo * BufferPool.getPageSize());
+        zoneMap.afterWrite(pageNo, zone);
         page.markDirty(false,null);
+        freeSpace.write(pageNo, freeSpace(page));
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        freeSpace.close();
+        zoneMap.close();
+    }
+
+    /**
+     * Called by readPage with every page read from disk, to keep the free
+     * space map and the zone map up to date.
+     */
+    void pageRead(Page page) throws IOException {
+        freeSpace.update(page.getId().getPageNumber(), freeSpace(page));
+        zoneMap.pageRead(page.getId().getPageNumber(), pageIterator(page));
+    }
+
+    /**
+     * Returns the room left on a page of this file, in the units of the free
+     * space map: free slots for HeapPages.
+     */
+    int freeSpace(Page page) {
+        return ((HeapPage) page).getNumEmptySlots();
+    }
+
+    /**
+     * Returns the room, in the units of freeSpace, that t needs on a page.
+     */
+    int spaceNeeded(Tuple t) {
+        return 1;
+    }
+
+    /**
+     * Inserts t into a page of this file.
+     *
+     * @return false if the page has no room for t
+     */
+    boolean insertIntoPage(Page page, Tuple t) throws DbException {
+        HeapPage hp = (HeapPage) page;
+        if (hp.getNumEmptySlots() == 0) {
+            return false;
+        }
+        hp.insertTuple(t);
+        return true;
+    }
+
+    /**
+     * Deletes t from a page of this file.
+     */
+    void deleteFromPage(Page page, Tuple t) throws DbException {
+        ((HeapPage) page).deleteTuple(t);
+    }
+
+    /**
+     * Returns a new empty page of this file.
+     */
+    Page createEmptyPage(HeapPageId pid) throws IOException {
+        return new HeapPage(pid, HeapPage.createEmptyPageData());
+    }
+
+    /**
+     * Returns a page of this file with the given contents.
+     */
+    Page createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
+    /**
+     * Called by BulkLoader before it appends pages to the file.
+     */
+    void appendingPages(List<Page> pages) throws IOException {
+        for (Page page : pages) {
+            zoneMap.beforeWrite(page.getId().getPageNumber(), zoneMap.summarize(pageIterator(page)));
+        }
+    }
+
+    /**
+     * Called by BulkLoader after it appended pages to the file, with the room
+     * left on each page, in the units of freeSpace.
+     */
+    void pagesAppended(List<Page> pages, int[] units) throws IOException {
+        for (Page page : pages) {
+            zoneMap.afterWrite(page.getId().getPageNumber(), zoneMap.summarize(pageIterator(page)));
+        }
+        freeSpace.write(pages.get(0).getId().getPageNumber(), units);
+    }
+
+    /**
+     * Returns a loader that appends tuples to this file in large sequential
+     * writes on behalf of tid, for loading many tuples at once.
+     *
+     * @see BulkLoader
+     */
+    public BulkLoader bulkLoader(TransactionId tid) {
+        return bulkLoader(tid, BulkLoader.DEFAULT_BATCH_PAGES);
+    }
+
+    /**
+     * Returns a loader that appends tuples to this file on behalf of tid,
+     * writing batchPages pages at a time.
+     *
+     * @see BulkLoader
+     */
+    public BulkLoader bulkLoader(TransactionId tid, int batchPages) {
+        return new BulkLoader(this, tid, batchPages);
+    }
+
+    /**
+     * Returns an iterator over the tuples on a page of this file, as returned
+     * by readPage. Subclasses with a different page format override this.
+     */
+    Iterator<Tuple> pageIterator(Page page) {
+        return ((HeapPage) page).iterator();
     }
 
     /**
@@ -139,25 +292,38 @@ public class HeapFile implements DbFile {
     public List<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         // some code goes here
-        for (int i = 0; i < numPages(); i++) {
+        // only visit pages the free space map says may have room
+        int needed = spaceNeeded(t);
+        int numPages = numPages();
+        for (int i = freeSpace.find(needed, numPages, 0); i != -1; i = freeSpace.find(needed, numPages, i + 1)) {
             PageId pid = new HeapPageId(tableid,i);
 
-            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,pid,Permissions.READ_WRITE);
-            if (page.getNumEmptySlots() > 0){
-                page.insertTuple(t);
+            Page page = Database.getBufferPool().getPage(tid,pid,Permissions.READ_WRITE);
+            if (insertIntoPage(page, t)){
                 page.markDirty(true,tid);
+                freeSpace.update(i, freeSpace(page));
+                zoneMap.inserted(i, t);
                 return new ArrayList<>(Arrays.asList(page));
-            }else{
+            }
+            // the map was out of date
+            freeSpace.update(i, freeSpace(page));
+            if (!tid.equals(page.isDirty())){
+                // keep the lock on pages this transaction changed, flushPages
+                // only writes pages the transaction still holds a lock on
                 Database.getBufferPool().unsafeReleasePage(tid,pid);
             }
         }
 
-        HeapPage currPage = new HeapPage(new HeapPageId(getId(),numPages()),HeapPage.createEmptyPageData());
-        currPage.insertTuple(t);
-        // todo 需不需要加入 我觉得需要加入
-        // currPage.markDirty(true,tid);
-        // 如果这个事务后面abort怎么办呢
-        writePage(currPage);
+        Page currPage;
+        // must not pick the same page number as a concurrent BulkLoader
+        synchronized (this) {
+            currPage = createEmptyPage(new HeapPageId(getId(),numPages()));
+            insertIntoPage(currPage, t);
+            // todo 需不需要加入 我觉得需要加入
+            // currPage.markDirty(true,tid);
+            // 如果这个事务后面abort怎么办呢
+            writePage(currPage);
+        }
 
         return new ArrayList<>(Arrays.asList(currPage));
         // not necessary for lab1
@@ -172,9 +338,10 @@ public class HeapFile implements DbFile {
             throw new DbException("UnCorrect tableId");
         }
 
-        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,pid,Permissions.READ_WRITE);
-        page.deleteTuple(t);
+        Page page = Database.getBufferPool().getPage(tid,pid,Permissions.READ_WRITE);
+        deleteFromPage(page, t);
         page.markDirty(true,tid);
+        freeSpace.update(pid.getPageNumber(), freeSpace(page));
 
         return new ArrayList<>(Arrays.asList(page));
         // not necessary for lab1
@@ -182,17 +349,37 @@ public class HeapFile implements DbFile {
 
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
+        return iterator(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that skips the pages
+     * the zone map proves to have no tuples satisfying filter. The iterator
+     * may still return tuples that do not satisfy filter; it is meant for
+     * scans below a Filter with the same predicate.
+     * <p>
+     * A skipped page is locked like a page that is read, so a page is only
+     * skipped once no other transaction is changing it.
+     *
+     * @param filter the predicate, or null to return all tuples
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate filter) {
         // some code goes here
         class innerIter implements DbFileIterator{
             private int pageNo = 0;
             private Iterator<Tuple> it;
-            private HeapPage page;
+            private Page page;
+            private ReadAhead readAhead;
 
             @Override
             public void open() throws DbException, TransactionAbortedException {
                 if (pageNo > 0){
                     throw new DbException("Can not call open function twice");
                 }
+                if (filter == null) {
+                    // reads get sparse when pages are skipped
+                    readAhead = Database.getBufferPool().startReadAhead(tid, tableid);
+                }
                 getPageByNo(pageNo);
                 pageNo++;
             }
@@ -200,7 +387,7 @@ public class HeapFile implements DbFile {
             @Override
             public boolean hasNext() throws DbException, TransactionAbortedException{
                 // todo: it is easy to forget that not open or close,hasNext() return false
-                if (page == null || it == null){
+                if (it == null){
                     return false;
                 }
 
@@ -215,7 +402,7 @@ public class HeapFile implements DbFile {
             @Override
             public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
                 // todo: it is easy to forget that not open or close,hasNext() return false
-                if (page == null || it == null){
+                if (it == null){
                     throw new NoSuchElementException("have no element");
                 }
 
@@ -233,13 +420,37 @@ public class HeapFile implements DbFile {
             public void close() {
                 pageNo = 0;
                 it = null;
-                page = null;
+                unpin();
+                if (readAhead != null) {
+                    Database.getBufferPool().stopReadAhead(readAhead);
+                    readAhead = null;
+                }
+            }
+
+            // the tuples of the page are decoded by now, its memory may be reused
+            private void unpin() {
+                if (page != null) {
+                    Database.getBufferPool().unpinPage(tid, page.getId());
+                    page = null;
+                }
             }
 
             public void getPageByNo(int pageNo) throws TransactionAbortedException, DbException {
+                unpin();
+                if (readAhead != null) {
+                    readAhead.access(pageNo, numPages());
+                }
                 HeapPageId hpid = new HeapPageId(tableid,pageNo);
-                page = (HeapPage) Database.getBufferPool().getPage(tid,hpid,Permissions.READ_ONLY);
-                it = page.iterator();
+                if (filter != null && zoneMap.canSkip(pageNo, filter)) {
+                    // check again under the lock, a writer may just have widened the entry
+                    Database.getBufferPool().lockPage(tid, hpid, Permissions.READ_ONLY);
+                    if (zoneMap.canSkip(pageNo, filter)) {
+                        it = Collections.emptyIterator();
+                        return;
+                    }
+                }
+                page = Database.getBufferPool().getPage(tid,hpid,Permissions.READ_ONLY);
+                it = pageIterator(page);
             }
         }
 
@@ -8,10 +8,22 @@ import simpledb.transaction.TransactionId;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * The page keeps the raw bytes it was read from and decodes a tuple, or a
+ * single field with {@link #getField}, only when it is accessed, by offset
+ * arithmetic on the buffer. Decoded tuples are cached per slot. The buffer
+ * passed to the constructor is never written to: the first modification of
+ * the page copies it to a private array (copy-on-write), so pages can be
+ * built directly on top of a shared or memory mapped buffer.
+ * <p>
+ * The before image is kept the same way: setBeforeImage only remembers the
+ * current buffer and marks it shared, and the copy is made by the first
+ * write after that. Pages that are only read never copy their bytes.
  *
  * @see HeapFile
  * @see BufferPool
@@ -21,14 +33,21 @@ public class HeapPage implements Page {
 
     final HeapPageId pid;   // the table, the page number
     final TupleDesc td;     // description of tuple
-    final byte[] header;    // header of page, bit map, every bit associated with a slot
-    final Tuple[] tuples;   //
+    final Tuple[] tuples;   // decoded tuples, null until a slot is read
     final int numSlots;     // slot number
+    final int headerSize;   // header of page, bit map, every bit associated with a slot
+    final int[] fieldOffsets; // offset of each field within a tuple slot
 
-    byte[] oldData;
-    private final Byte oldDataLock= (byte) 0;// lock
+    // the bytes of the page; header + tuple1 ... tupleN
+    private ByteBuffer data;
+    // true if data is a private array of this page that may be written in place
+    private boolean owned;
+
+    ByteBuffer oldData;     // never written to once it is the before image
+    private final Object oldDataLock = new Object();
 
     private TransactionId lastTid;
+    private volatile long lsn; // LSN of the last logged change
 
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
@@ -48,26 +67,42 @@ public class HeapPage implements Page {
      */
     // header + tuple1 ... tupleN
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a HeapPage from a buffer holding the page, e.g. a slice of a
+     * memory mapped table file. The remaining bytes of the buffer are used as
+     * the page without copying them; they must not change while the page is
+     * in use. The page itself never writes to the buffer.
+     *
+     * @see #HeapPage(HeapPageId, byte[])
+     * @see MappedHeapFile
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        //System.out.println(String.format("page %d have %d slot", id.getPageNumber(),numSlots));
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this.headerSize = getHeaderSize();
+        this.fieldOffsets = new int[td.numFields()];
+        for (int j = 1; j < fieldOffsets.length; j++) {
+            fieldOffsets[j] = fieldOffsets[j - 1] + td.getFieldType(j - 1).getLen();
+        }
+        this.tuples = new Tuple[numSlots];
 
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+        int len = BufferPool.getPageSize();
+        ByteBuffer buf = data.slice();
+        if (buf.remaining() >= len) {
+            buf.limit(len);
+            this.data = buf;
+            this.owned = false;
+        } else {
+            // short page, pad it with zeroes like an empty page
+            byte[] padded = createEmptyPageData();
+            buf.get(padded, 0, buf.remaining());
+            this.data = ByteBuffer.wrap(padded);
+            this.owned = true;
         }
-        dis.close();
 
         setBeforeImage();
     }
@@ -96,7 +131,7 @@ public class HeapPage implements Page {
         -- used by recovery */
     public HeapPage getBeforeImage(){
         try {
-            byte[] oldDataRef = null;
+            ByteBuffer oldDataRef = null;
             synchronized(oldDataLock)
             {
                 oldDataRef = oldData;
@@ -113,7 +148,9 @@ public class HeapPage implements Page {
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
-        oldData = getPageData().clone();
+        // no copy, the next write copies data instead of changing it
+        owned = false;
+        oldData = data;
         }
     }
 
@@ -126,39 +163,92 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * @return the byte offset of slot i within the page
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
+    private int slotOffset(int i) {
+        return headerSize + i * td.getSize();
+    }
+
+    /**
+     * Decode the tuple in slot i, or return the already decoded one.
+     * @return the tuple, or null if the slot is empty
+     */
+    private Tuple readTuple(int i) {
+        Tuple t = tuples[i];
+        if (t != null || !isSlotUsed(i)) {
+            return t;
         }
 
         // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
+        ByteBuffer buf = data;
+        int offset = slotOffset(i);
+        t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, i));
+        for (int j=0; j<td.numFields(); j++) {
+            t.setField(j, td.getFieldType(j).parse(buf, offset + fieldOffsets[j]));
         }
-
+        tuples[i] = t;
         return t;
     }
 
+    /**
+     * Returns field j of the tuple in slot i, decoding only that field unless
+     * the whole tuple has been decoded already.
+     *
+     * @return the field, or null if the slot is empty
+     * @throws NoSuchElementException if i or j is out of range
+     */
+    public Field getField(int i, int j) {
+        if (i < 0 || i >= numSlots || j < 0 || j >= fieldOffsets.length) {
+            throw new NoSuchElementException("no field " + j + " in slot " + i);
+        }
+        Tuple t = tuples[i];
+        if (t != null) {
+            return t.getField(j);
+        }
+        if (!isSlotUsed(i)) {
+            return null;
+        }
+        return td.getFieldType(j).parse(data, slotOffset(i) + fieldOffsets[j]);
+    }
+
+    private static byte[] copyOf(ByteBuffer buf) {
+        byte[] copy = new byte[BufferPool.getPageSize()];
+        ByteBuffer src = buf.duplicate();
+        src.clear();
+        src.get(copy);
+        return copy;
+    }
+
+    /**
+     * Replace data by a heap array if it is not one, e.g. a mapped page,
+     * which shows whatever is written to the file later. The before image
+     * moves along if it is the same buffer. Callers hold oldDataLock.
+     */
+    private void detach() {
+        ByteBuffer buf = data;
+        if (buf.hasArray() && buf.arrayOffset() == 0 && buf.array().length == buf.limit()) {
+            return;
+        }
+        data = ByteBuffer.wrap(copyOf(buf));
+        if (oldData == buf) {
+            oldData = data;
+        }
+        owned = false;
+    }
+
+    /**
+     * Make data a private array that may be written in place. Callers hold
+     * oldDataLock.
+     */
+    private void ensureOwned() {
+        detach();
+        if (!owned) {
+            data = ByteBuffer.wrap(copyOf(data));
+            owned = true;
+        }
+    }
+
     /**
      * Generates a byte array representing the contents of this page.
      * Used to serialize this page to disk.
@@ -166,69 +256,20 @@ public class HeapPage implements Page {
      * The invariant here is that it should be possible to pass the byte
      * array generated by getPageData to the HeapPage constructor and
      * have it produce an identical HeapPage object.
+     * <p>
+     * This returns the array backing the page without copying it; it must
+     * not be modified. Later changes to the page do not show through it.
      *
      * @see #HeapPage
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (byte b : header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+        synchronized (oldDataLock) {
+            detach();
+            // the array escapes, the next change to the page has to copy it
+            owned = false;
+            return data.array();
         }
-
-        return baos.toByteArray();
     }
 
     /**
@@ -275,8 +316,13 @@ public class HeapPage implements Page {
                 if (!isSlotUsed(tupleNumber)) {
                     throw new DbException("The tuple not exist");
                 }
+                ensureOwned();
                 tuples[tupleNumber] = null;
                 markSlotUsed(tupleNumber, false);
+                // empty slots are all zeroes on disk
+                byte[] bytes = data.array();
+                int offset = slotOffset(tupleNumber);
+                Arrays.fill(bytes, offset, offset + td.getSize(), (byte) 0);
                 //setBeforeImage();
             }
         }else{
@@ -306,6 +352,8 @@ public class HeapPage implements Page {
         for (int i = 0; i < numSlots; i++) {
             synchronized (oldDataLock) {
                 if (!isSlotUsed(i)) {
+                    ensureOwned();
+                    writeTuple(i, t);
                     RecordId rid = new RecordId(pid, i);
                     t.setRecordId(rid);
                     tuples[i] = t;
@@ -317,6 +365,25 @@ public class HeapPage implements Page {
         }
     }
 
+    /**
+     * Serialize the fields of t into slot i. Callers hold oldDataLock and
+     * own data.
+     */
+    private void writeTuple(int i, Tuple t) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(td.getSize());
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            for (int j=0; j<td.numFields(); j++) {
+                t.getField(j).serialize(dos);
+            }
+            dos.flush();
+        } catch (IOException e) {
+            // this really shouldn't happen
+            e.printStackTrace();
+        }
+        System.arraycopy(baos.toByteArray(), 0, data.array(), slotOffset(i), td.getSize());
+    }
+
     /**
      * Marks this page as dirty/not dirty and record that transaction
      * that did the dirtying
@@ -341,18 +408,30 @@ public class HeapPage implements Page {
         return lastTid;
     }
 
+    public long getLsn() {
+        return lsn;
+    }
+
+    public void setLsn(long lsn) {
+        this.lsn = lsn;
+    }
+
     /**
      * Returns the number of empty slots on this page.
      */
     public int getNumEmptySlots() {
         // some code goes here
-        int empNum = 0;
-        for (int i = 0; i < numSlots; i++) {
-            if (!isSlotUsed(i)){
-                empNum ++;
+        // count the set bits of the header a byte at a time
+        ByteBuffer buf = data;
+        int used = 0;
+        for (int i = 0; i < headerSize; i++) {
+            int b = buf.get(i) & 0xff;
+            if (i == headerSize - 1 && numSlots % 8 != 0) {
+                b &= (1 << (numSlots % 8)) - 1;
             }
+            used += Integer.bitCount(b);
         }
-        return empNum;
+        return numSlots - used;
     }
 
     /**
@@ -363,7 +442,7 @@ public class HeapPage implements Page {
         int index = i / 8;
         int remainder = i % 8;
         //System.out.println("index:"+index+","+"reminder:"+remainder);
-        byte b = header[index];
+        byte b = data.get(index);
 
         if (((b>>remainder) & 1) == 1){
             return true;
@@ -381,6 +460,7 @@ public class HeapPage implements Page {
         int index = i / 8;
         int remainder = i % 8;
 
+        byte[] header = data.array();
         if (value){
             header[index] = (byte) (header[index] | (0x01 << remainder));
         }else{
@@ -409,7 +489,10 @@ public class HeapPage implements Page {
 
             @Override
             public Tuple next() {
-                Tuple t = tuples[index];
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = readTuple(index);
                 index++;
                 return t;
             }
@@ -48,8 +48,8 @@ public class HeapPageId implements PageId {
      */
     public int hashCode() {
         // some code goes here
-        String tmpStr = tableId + "-" + paNo;
-        return tmpStr.hashCode();
+        // no string building, the lock manager hashes page ids on every getPage
+        return 31 * tableId + paNo;
     }
 
     /**
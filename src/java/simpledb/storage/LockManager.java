@@ -8,6 +8,8 @@ import simpledb.transaction.TransactionId;
 
 import java.io.IOException;
 import java.sql.SQLOutput;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
@@ -39,17 +41,70 @@ class Lock {
     }
 }
 
+/**
+ * LockManager keeps the page locks of transactions. The lock table is split
+ * into stripes by PageId, each guarded by its own monitor, so transactions
+ * locking different pages do not serialize on one monitor; the wait-for
+ * graph has a monitor of its own that only transactions that have to wait
+ * take. Each transaction's locks are also kept per transaction, so a lock a
+ * transaction already holds is found without taking any monitor, and its
+ * locks are released without scanning the whole table.
+ */
 public class LockManager {
+    private static final int STRIPES = 64;
+
     private final ConcurrentHashMap<PageId, Vector<Lock>> lockMap;
+    private final Object[] stripes;
+    // the locks each transaction holds, updated under the stripe of the page
+    private final ConcurrentHashMap<TransactionId, Map<PageId, Permissions>> held;
     private final DeadLock deadLock;
 
     public LockManager(){
         this.lockMap = new ConcurrentHashMap<>();
+        this.stripes = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        this.held = new ConcurrentHashMap<>();
         this.deadLock = new DeadLock();
     }
 
-    public synchronized Boolean acquireLock(TransactionId tid, PageId pid, Permissions permission){
-        // System.out.println(Thread.currentThread().getId()+"\t"+printLockMap());
+    // the monitor guarding the locks of a page
+    private Object stripe(PageId pid) {
+        int h = pid.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    public Boolean acquireLock(TransactionId tid, PageId pid, Permissions permission){
+        synchronized (stripe(pid)) {
+            if (!grant(tid, pid, permission)) {
+                return false;
+            }
+            held.compute(tid, (t, locks) -> {
+                if (locks == null) {
+                    locks = new ConcurrentHashMap<>();
+                }
+                // a read lock on a page already write locked leaves the write lock
+                locks.merge(pid, permission, (old, p) -> old == Permissions.READ_WRITE ? old : p);
+                return locks;
+            });
+            return true;
+        }
+    }
+
+    /**
+     * Returns whether tid holds a lock on pid at least as strong as
+     * permission, without taking a monitor. Only the transaction itself
+     * releases its locks, so the answer stays true for it.
+     */
+    public boolean holdsLock(TransactionId tid, PageId pid, Permissions permission) {
+        Map<PageId, Permissions> locks = held.get(tid);
+        Permissions p = locks == null ? null : locks.get(pid);
+        return p == Permissions.READ_WRITE || (p != null && permission == Permissions.READ_ONLY);
+    }
+
+    // the lock table part of acquireLock; callers hold the stripe of pid
+    private boolean grant(TransactionId tid, PageId pid, Permissions permission){
         Vector<Lock> lockList = lockMap.get(pid);
         // page have no lock
         if (lockList == null){
@@ -107,49 +162,82 @@ public class LockManager {
 
     }
 
-    public synchronized void releaseLock(TransactionId tid, PageId pid){
-        Vector<Lock> lockList = lockMap.get(pid);
-        if (lockList == null || lockList.size() == 0){
-            return;
-        }
+    public void releaseLock(TransactionId tid, PageId pid){
+        synchronized (stripe(pid)) {
+            Vector<Lock> lockList = lockMap.get(pid);
+            if (lockList == null || lockList.size() == 0){
+                return;
+            }
 
-        for (int i = 0; i < lockList.size(); i++) {
-            if (lockList.get(i).getTid().equals(tid)) {
-                lockList.remove(i);
-                // todo
-                if (lockList.size() == 0){
-                    lockMap.remove(pid);
+            for (int i = 0; i < lockList.size(); i++) {
+                if (lockList.get(i).getTid().equals(tid)) {
+                    lockList.remove(i);
+                    // todo
+                    if (lockList.size() == 0){
+                        lockMap.remove(pid);
+                    }
+                    held.computeIfPresent(tid, (t, locks) -> {
+                        locks.remove(pid);
+                        return locks.isEmpty() ? null : locks;
+                    });
+                    break;
                 }
-                break;
             }
         }
     }
 
-    public synchronized Boolean holdsLock(TransactionId tid, PageId pid){
-        Vector<Lock> lockList = lockMap.get(pid);
-        if (lockList == null || lockList.size() == 0){
+    public Boolean holdsLock(TransactionId tid, PageId pid){
+        synchronized (stripe(pid)) {
+            Vector<Lock> lockList = lockMap.get(pid);
+            if (lockList == null || lockList.size() == 0){
+                return false;
+            }
+
+            for (Lock lock : lockList) {
+                if (lock.getTid().equals(tid)) {
+                    return true;
+                }
+            }
+
             return false;
         }
+    }
 
-        for (Lock lock : lockList) {
-            if (lock.getTid().equals(tid)) {
-                return true;
+    public void removeTransactionLocks(TransactionId tid){
+        Map<PageId, Permissions> locks = held.remove(tid);
+        if (locks != null) {
+            for (PageId pid : locks.keySet()) {
+                synchronized (stripe(pid)) {
+                    Vector<Lock> lockList = lockMap.get(pid);
+                    if (lockList == null) {
+                        continue;
+                    }
+                    lockList.removeIf(lock -> lock.getTid().equals(tid));
+                    if (lockList.size() == 0){
+                        lockMap.remove(pid);
+                    }
+                }
             }
         }
-
-        return false;
+        synchronized (deadLock) {
+            deadLock.removeVertex(tid);
+        }
     }
 
-    public synchronized void removeTransactionLocks(TransactionId tid){
-        for (Map.Entry<PageId, Vector<Lock>> entry : lockMap.entrySet()) {
-            entry.getValue().removeIf(lock -> lock.getTid().equals(tid));
-            if(entry.getValue().size() == 0){
-                lockMap.remove(entry.getKey());
+    public void waitForResources(TransactionId tid, PageId pid,Permissions permission) {
+        List<TransactionId> holders = new ArrayList<>();
+        synchronized (stripe(pid)) {
+            waitingFor(tid, pid, permission, holders);
+        }
+        synchronized (deadLock) {
+            for (TransactionId holder : holders) {
+                deadLock.addEdge(tid, holder);
             }
         }
     }
 
-    public synchronized void waitForResources(TransactionId tid, PageId pid,Permissions permission) {
+    // adds the transactions tid waits for to holders; callers hold the stripe of pid
+    private void waitingFor(TransactionId tid, PageId pid, Permissions permission, List<TransactionId> holders) {
         Vector<Lock> lockList = lockMap.get(pid);
         // 当前页面没有事务加锁，不需要等待资源
         if (lockList == null || lockList.size() == 0){
@@ -167,7 +255,7 @@ public class LockManager {
                 }
                 // 如果是其他事务，并且这个事务加的是写锁，那么本事务需要等待这个事务的资源
                 if (lock.getPermission().equals(Permissions.READ_WRITE)){
-                    deadLock.addEdge(tid,lock.getTid());
+                    holders.add(lock.getTid());
                 }
             }
 
@@ -178,7 +266,7 @@ public class LockManager {
                 // 如果存在本事务，要么是本事务之前加了读锁 要么是本事务之前加了写锁 加了写锁只能有一个锁在队列中 直接跳过即可
                 // 如果队列中都是读锁，需要等到其他事务的读锁
                 if(lock.getTid().equals(tid)) continue;
-                deadLock.addEdge(tid,lock.getTid());
+                holders.add(lock.getTid());
             }
 
             // 执行到这里说明没有死锁，那么申请资源成功，同时返回无死锁标志
@@ -186,8 +274,11 @@ public class LockManager {
         //System.out.println(Thread.currentThread().getId()+"\t"+deadLock);
     }
 
-    public synchronized void dealWithPotentialDeadlocks(TransactionId tid) throws TransactionAbortedException {
-        if (deadLock.cycleDetection(tid)){
+    public void dealWithPotentialDeadlocks(TransactionId tid) throws TransactionAbortedException {
+        synchronized (deadLock) {
+            if (!deadLock.cycleDetection(tid)){
+                return;
+            }
             // 可以不删除其他顶点到这个顶点的边 因为遍历到了其他定点发现找不到当前删除的这个边 对结果没有任何影响
             deadLock.removeVertex(tid);
             //System.out.println(Thread.currentThread().getId()+"\t"+"dead lock");
@@ -0,0 +1,84 @@
+package simpledb.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * LogBuffer collects the records appended to a LogFile in memory, so that a
+ * record costs one copy instead of a write call per field, and writes them
+ * to the log segments in one sequential write when the log is forced, read or
+ * the buffer is full.
+ * <p>
+ * The buffer only ever holds whole records: {@link #reserve} writes the
+ * buffer out before a record that does not fit, and grows it for a record
+ * larger than the buffer. So whatever reached the file ends at a record
+ * boundary. Values are encoded as {@link java.io.DataOutput} encodes them,
+ * and read back with a {@link LogReader}.
+ * <p>
+ * Not thread safe; the LogFile monitor guards it.
+ */
+class LogBuffer {
+
+    private LogSegments segments;
+    private ByteBuffer buffer;
+    private long start; // LSN of the first buffered byte
+
+    LogBuffer(int capacity) {
+        buffer = ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Appends to the end of the given segments; anything still buffered is
+     * dropped, so write it out first.
+     */
+    void reset(LogSegments segments) {
+        this.segments = segments;
+        this.start = segments.end();
+        buffer.clear();
+    }
+
+    /**
+     * Returns the LSN the next appended byte goes to.
+     */
+    long lsn() {
+        return segments.advance(start, buffer.position());
+    }
+
+    /**
+     * Makes room for a record of the given number of bytes.
+     */
+    void reserve(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        write();
+        if (buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2));
+        }
+    }
+
+    /**
+     * Writes the buffered records to the segments, without forcing them.
+     */
+    void write() throws IOException {
+        buffer.flip();
+        start = segments.append(buffer);
+        buffer.clear();
+    }
+
+    void putByte(int v) {
+        buffer.put((byte) v);
+    }
+
+    void putInt(int v) {
+        buffer.putInt(v);
+    }
+
+    void putLong(long v) {
+        buffer.putLong(v);
+    }
+
+    void put(byte[] b) {
+        buffer.put(b);
+    }
+}
@@ -6,8 +6,15 @@ import simpledb.transaction.TransactionId;
 import simpledb.common.Debug;
 
 import java.io.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.*;
-import java.lang.reflect.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /*
 LogFile implements the recovery subsystem of SimpleDb.  This class is
@@ -43,40 +50,76 @@ must not be declared synchronized and must begin with a block like:
 
 <ul>
 
-<li> The first long integer of the file represents the offset of the
-last written checkpoint, or -1 if there are no checkpoints
+<li> The log file holds one long integer, the LSN of the last written
+checkpoint, or -1 if there are no checkpoints
 
-<li> All additional data in the log consists of log records.  Log
-records are variable length.
+<li> The log records are stored in segment files next to the log file,
+see {@link LogSegments}.  Log records are variable length, and may span
+segments.
 
-<li> Each log record begins with an integer type and a long integer
-transaction id.
+<li> Each log record begins with an integer type, a long integer
+transaction id, and the LSN of the previous record of the transaction,
+or 0 for a BEGIN record, which chains the records of a transaction
+backwards from its last one.  CHECKPOINT records have no transaction,
+and 0 there.
 
-<li> Each log record ends with a long integer file offset representing
-the position in the log file where the record began.
+<li> Each log record ends with a long integer, the LSN of the record,
+where it began.
 
-<li> There are five record types: ABORT, COMMIT, UPDATE, BEGIN, and
-CHECKPOINT
+<li> There are six record types: ABORT, COMMIT, UPDATE, DELTA, BEGIN,
+and CHECKPOINT
 
 <li> ABORT, COMMIT, and BEGIN records contain no additional data
 
 <li>UPDATE RECORDS consist of two entries, a before image and an
 after image.  These images are serialized Page objects, and can be
 accessed with the LogFile.readPageData() and LogFile.writePageData()
-methods.  See LogFile.print() for an example.
+methods.  See LogFile.print() for an example.  A serialized page is the
+one byte type code of its class (see {@link PageCodecs}), its page id,
+and its data.
+
+<li> DELTA records describe the same change as an UPDATE record by the
+byte ranges of the page that changed, with their bytes before and after;
+see {@link PageDelta}. logWrite writes whichever of the two is smaller,
+usually a DELTA record, since most updates change a few tuples.
 
 <li> CHECKPOINT records consist of active transactions at the time
 the checkpoint was taken and their first log record on disk.  The format
 of the record is an integer count of the number of transactions, as well
-as a long integer transaction id and a long integer first record offset
-for each active transaction.
+as a long integer transaction id and the LSNs of its first and its
+last record for each active transaction.  It is followed by the dirty
+page table: an integer count of pages, and for each page its type code
+and page id, as in a serialized page, and the LSN of the first record of
+its changes that may not be on disk.
 
 </ul>
+
+<p> Records are appended to an in-memory {@link LogBuffer} and written to
+the segments when the log is forced, read, or the buffer is full. Each
+record has a log sequence number (LSN): its position in the log as if the
+segments were one file. Truncating the log deletes whole segments, so a
+record keeps its LSN as long as it is in the log. A page carries the
+LSN of the last record of a change to it ({@link Page#getLsn}), and
+{@link #force(long)} forces the log only if that record is not on disk yet.
+
+<p> Commit and abort records are forced with group commit: the caller
+waits for a shared flusher to force the log, which covers the records of
+all transactions that committed in the meantime. See {@link GroupCommit},
+{@link #setGroupCommitDelay} and {@link #setGroupCommitBatch}.
+
+<p> Checkpoints are fuzzy: the dirty pages are written in the background
+while transactions go on, and the checkpoint record lists the pages still
+dirty, see {@link Checkpointer}.
+
+<p> {@link #recover} reads the log from the last checkpoint on, in the
+analysis, redo and undo passes of ARIES. The redo pass can run on several
+threads, see {@link #setRedoThreads}.
 */
 public class LogFile {
 
     final File logFile;
-    private RandomAccessFile raf;
+    private RandomAccessFile raf; // holds the LSN of the last checkpoint
+    private final LogSegments segments; //protected by this
     Boolean recoveryUndecided; // no call to recover() and no append to log
 
     static final int ABORT_RECORD = 1;
@@ -84,8 +127,23 @@ public class LogFile {
     static final int UPDATE_RECORD = 3;
     static final int BEGIN_RECORD = 4;
     static final int CHECKPOINT_RECORD = 5;
+    static final int DELTA_RECORD = 6;
     static final long NO_CHECKPOINT_ID = -1;
 
+    /** Initial size of the log buffer; a larger record grows it. */
+    static final int LOG_BUFFER_SIZE = 1 << 16;
+
+    /** Default time, in microseconds, the flusher waits for more commits before forcing the log. */
+    public static final long DEFAULT_GROUP_COMMIT_DELAY = 0;
+    /** Default number of waiting commits at which the flusher stops waiting for more. */
+    public static final int DEFAULT_GROUP_COMMIT_BATCH = 32;
+
+    /** Default number of threads that redo the log in recovery. */
+    public static final int DEFAULT_REDO_THREADS = 1;
+
+    /** Default size in bytes of a log segment file. */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+
     final static int INT_SIZE = 4;
     final static int LONG_SIZE = 8;
 
@@ -93,7 +151,19 @@ public class LogFile {
 //    int pageSize;
     int totalRecords = 0; // for PatchTest //protected by this
 
+    private final LogBuffer buffer = new LogBuffer(LOG_BUFFER_SIZE); //protected by this
+    private long flushedLsn = 0; // the log is on disk below this LSN //protected by this
+
+    private final GroupCommit groupCommit = new GroupCommit(this);
+    private final Checkpointer checkpointer = new Checkpointer(this);
+    private volatile long groupCommitDelay = DEFAULT_GROUP_COMMIT_DELAY;
+    private volatile int groupCommitBatch = DEFAULT_GROUP_COMMIT_BATCH;
+    private long forces = 0; //protected by this
+
+    private volatile int redoThreads = DEFAULT_REDO_THREADS;
+
     final Map<Long,Long> tidToFirstLogRecord = new HashMap<>();
+    final Map<Long,Long> tidToLastLogRecord = new HashMap<>(); // the prevLSN of the next record
 
     /** Constructor.
         Initialize and back the log file with the specified file.
@@ -107,8 +177,21 @@ public class LogFile {
         @param f The log file's name
     */
     public LogFile(File f) throws IOException {
+        this(f, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /** Constructor, with the size in bytes of the segment files of a new
+        log. An existing log keeps the size it was written with until it is
+        thrown out.
+
+        @param f The log file's name
+        @param segmentSize The size of a segment file
+    */
+    public LogFile(File f, int segmentSize) throws IOException {
 	this.logFile = f;
         raf = new RandomAccessFile(f, "rw");
+        segments = new LogSegments(f, segmentSize);
+        buffer.reset(segments);
         recoveryUndecided = true;
 
         // install shutdown hook to force cleanup on close
@@ -132,8 +215,11 @@ public class LogFile {
             raf.seek(0);
             raf.setLength(0);
             raf.writeLong(NO_CHECKPOINT_ID);
-            raf.seek(raf.length());
-            currentOffset = raf.getFilePointer();
+            // LSNs keep growing, and nothing of the new log is on disk
+            segments.reset(buffer.lsn());
+            buffer.reset(segments);
+            currentOffset = buffer.lsn();
+            flushedLsn = Math.min(flushedLsn, currentOffset);
         }
     }
 
@@ -141,6 +227,76 @@ public class LogFile {
         return totalRecords;
     }
 
+    /** Sets how long, in microseconds, the log flusher waits for more
+        commit and abort records before it forces the log, unless
+        {@link #getGroupCommitBatch()} records are waiting already. 0 forces
+        right away; records that arrive while a force runs are still forced
+        together by the next one.
+    */
+    public void setGroupCommitDelay(long micros) {
+        if (micros < 0) {
+            throw new IllegalArgumentException("negative group commit delay " + micros);
+        }
+        groupCommitDelay = micros;
+    }
+
+    public long getGroupCommitDelay() {
+        return groupCommitDelay;
+    }
+
+    /** Sets the number of waiting commit and abort records at which the log
+        flusher stops waiting for more. 1 turns group commit off: every
+        commit forces the log itself, holding the monitor of the log.
+    */
+    public void setGroupCommitBatch(int records) {
+        if (records < 1) {
+            throw new IllegalArgumentException("group commit batch must be positive: " + records);
+        }
+        groupCommitBatch = records;
+    }
+
+    public int getGroupCommitBatch() {
+        return groupCommitBatch;
+    }
+
+    /** Sets the number of threads recovery redoes the log with. The pages
+        are partitioned among them by page id, and each thread redoes the
+        records of its pages in log order; records of different pages are
+        independent. 1 redoes the log on the recovering thread.
+    */
+    public void setRedoThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("redo threads must be positive: " + threads);
+        }
+        redoThreads = threads;
+    }
+
+    public int getRedoThreads() {
+        return redoThreads;
+    }
+
+    /** Returns the number of times the log was forced to disk. */
+    public synchronized long getForceCount() {
+        return forces;
+    }
+
+    // the prevLSN of the next record of the transaction, which is its last
+    private long prevLsn(long tid) {
+        return tidToLastLogRecord.getOrDefault(tid, 0L);
+    }
+
+    /** Makes the log durable up to the given record, with group commit
+        unless it is turned off. Must not be called holding the monitor of
+        the log, which the flusher needs.
+    */
+    private void commitRecord(long record) throws IOException {
+        if (groupCommitBatch > 1) {
+            groupCommit.await(record);
+        } else {
+            force(record);
+        }
+    }
+
     /** Write an abort record to the log for the specified tid, force
         the log to disk, and perform a rollback
         @param tid The aborting transaction.
@@ -149,6 +305,7 @@ public class LogFile {
         // must have buffer pool lock before proceeding, since this
         // calls rollback
 
+        long record;
         synchronized (Database.getBufferPool()) {
 
             synchronized(this) {
@@ -157,18 +314,22 @@ public class LogFile {
                 //should we verify that this is a live transaction?
 
                 // must do this here, since rollback only works for
-                // live transactions (needs tidToFirstLogRecord)
+                // live transactions (needs tidToLastLogRecord)
                 rollback(tid);
 
-                raf.writeInt(ABORT_RECORD);
-                raf.writeLong(tid.getId());
-                raf.writeLong(currentOffset);
-                currentOffset = raf.getFilePointer();
-                force();
+                buffer.reserve(INT_SIZE + 3 * LONG_SIZE);
+                buffer.putInt(ABORT_RECORD);
+                buffer.putLong(tid.getId());
+                buffer.putLong(prevLsn(tid.getId()));
+                buffer.putLong(currentOffset);
+                record = currentOffset;
+                currentOffset = buffer.lsn();
                 tidToFirstLogRecord.remove(tid.getId());
+                tidToLastLogRecord.remove(tid.getId());
                 //print();
             }
         }
+        commitRecord(record);
     }
 
     /** Write a commit record to disk for the specified tid,
@@ -176,117 +337,153 @@ public class LogFile {
 
         @param tid The committing transaction.
     */
-    public synchronized void logCommit(TransactionId tid) throws IOException {
-        preAppend();
-        Debug.log("COMMIT " + tid.getId());
-        //should we verify that this is a live transaction?
+    public void logCommit(TransactionId tid) throws IOException {
+        commitRecord(appendCommit(tid));
+    }
+
+    /** Appends a commit record for the specified tid to the log without
+        waiting for it to be durable; {@link #awaitCommit} waits.
+
+        @return the LSN of the record
+    */
+    long appendCommit(TransactionId tid) throws IOException {
+        long record;
+        synchronized (this) {
+            preAppend();
+            Debug.log("COMMIT " + tid.getId());
+            //should we verify that this is a live transaction?
+
+            buffer.reserve(INT_SIZE + 3 * LONG_SIZE);
+            buffer.putInt(COMMIT_RECORD);
+            buffer.putLong(tid.getId());
+            buffer.putLong(prevLsn(tid.getId()));
+            buffer.putLong(currentOffset);
+            record = currentOffset;
+            currentOffset = buffer.lsn();
+            tidToFirstLogRecord.remove(tid.getId());
+            tidToLastLogRecord.remove(tid.getId());
+        }
+        return record;
+    }
 
-        raf.writeInt(COMMIT_RECORD);
-        raf.writeLong(tid.getId());
-        raf.writeLong(currentOffset);
-        currentOffset = raf.getFilePointer();
-        force();
-        tidToFirstLogRecord.remove(tid.getId());
+    /** Waits until the commit record appended at the given LSN is durable.
+        Must not be called holding the monitor of the log.
+    */
+    void awaitCommit(long record) throws IOException {
+        commitRecord(record);
     }
 
     /** Write an UPDATE record to disk for the specified tid and page
-        (with provided         before and after images.)
+        (with provided         before and after images.) Sets the LSN of
+        the after image to the LSN of the record.
         @param tid The transaction performing the write
         @param before The before image of the page
         @param after The after image of the page
+        @return the LSN of the record
 
         @see Page#getBeforeImage
     */
-    public  synchronized void logWrite(TransactionId tid, Page before,
+    public  synchronized long logWrite(TransactionId tid, Page before,
                                        Page after)
         throws IOException  {
-        Debug.log("WRITE, offset = " + raf.getFilePointer());
+        Debug.log("WRITE, offset = " + buffer.lsn());
         preAppend();
         /* update record conists of
 
            record type
            transaction id
+           prevLSN
            before page data (see writePageData)
            after page data
            start offset
         */
-        raf.writeInt(UPDATE_RECORD);
-        raf.writeLong(tid.getId());
-
-        writePageData(raf,before);
-        writePageData(raf,after);
-        raf.writeLong(currentOffset);
-        currentOffset = raf.getFilePointer();
+        byte[] beforeData = before.getPageData();
+        byte[] afterData = after.getPageData();
+        int fullSize = pageDataSize(before, beforeData) + pageDataSize(after, afterData);
+        PageDelta delta = PageDelta.diff(after, beforeData, afterData);
+        byte[] deltaData = delta == null ? null : delta.encode();
+        if (deltaData != null && deltaData.length < fullSize) {
+            buffer.reserve(INT_SIZE + 2 * LONG_SIZE + deltaData.length + LONG_SIZE);
+            buffer.putInt(DELTA_RECORD);
+            buffer.putLong(tid.getId());
+            buffer.putLong(prevLsn(tid.getId()));
+            buffer.put(deltaData);
+        } else {
+            buffer.reserve(INT_SIZE + 2 * LONG_SIZE + fullSize + LONG_SIZE);
+            buffer.putInt(UPDATE_RECORD);
+            buffer.putLong(tid.getId());
+            buffer.putLong(prevLsn(tid.getId()));
+            writePageData(buffer, before, beforeData);
+            writePageData(buffer, after, afterData);
+        }
+        buffer.putLong(currentOffset);
+        long lsn = currentOffset;
+        tidToLastLogRecord.put(tid.getId(), lsn);
+        currentOffset = buffer.lsn();
+        after.setLsn(lsn);
 
         Debug.log("WRITE OFFSET = " + currentOffset);
+        return lsn;
+    }
+
+    // the number of bytes writePageData writes for a page with the given data
+    private int pageDataSize(Page p, byte[] pageData) {
+        return 1 + INT_SIZE * p.getId().serialize().length + INT_SIZE + pageData.length;
+    }
+
+    // writePageData to the log buffer, in the same format
+    private void writePageData(LogBuffer out, Page p, byte[] pageData) {
+        out.putByte(PageCodecs.code(p));
+        for (int j : p.getId().serialize()) {
+            out.putInt(j);
+        }
+        out.putInt(pageData.length);
+        out.put(pageData);
     }
 
     void writePageData(RandomAccessFile raf, Page p) throws IOException{
         PageId pid = p.getId();
-        int[] pageInfo = pid.serialize();
 
         //page data is:
-        // page class name
-        // id class name
-        // id class bytes
+        // page type code
         // id class data
         // page class bytes
         // page class data
 
-        String pageClassName = p.getClass().getName();
-        String idClassName = pid.getClass().getName();
-
-        raf.writeUTF(pageClassName);
-        raf.writeUTF(idClassName);
-
-        raf.writeInt(pageInfo.length);
-        for (int j : pageInfo) {
-            raf.writeInt(j);
-        }
+        raf.writeByte(PageCodecs.code(p));
+        writePageId(raf, pid);
         byte[] pageData = p.getPageData();
         raf.writeInt(pageData.length);
         raf.write(pageData);
         //        Debug.log ("WROTE PAGE DATA, CLASS = " + pageClassName + ", table = " +  pid.getTableId() + ", page = " + pid.pageno());
     }
 
-    Page readPageData(RandomAccessFile raf) throws IOException {
-        PageId pid;
-        Page newPage = null;
-
-        String pageClassName = raf.readUTF();
-        String idClassName = raf.readUTF();
-
-        try {
-            Class<?> idClass = Class.forName(idClassName);
-            Class<?> pageClass = Class.forName(pageClassName);
-
-            Constructor<?>[] idConsts = idClass.getDeclaredConstructors();
-            int numIdArgs = raf.readInt();
-            Object[] idArgs = new Object[numIdArgs];
-            for (int i = 0; i<numIdArgs;i++) {
-                idArgs[i] = raf.readInt();
-            }
-            pid = (PageId)idConsts[0].newInstance(idArgs);
-
-            Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
-            int pageSize = raf.readInt();
-
-            byte[] pageData = new byte[pageSize];
-            raf.read(pageData); //read before image
+    Page readPageData(DataInput raf) throws IOException {
+        PageCodec codec = PageCodecs.codec(raf.readUnsignedByte());
+        PageId pid = codec.readId(raf);
+        int pageSize = raf.readInt();
 
-            Object[] pageArgs = new Object[2];
-            pageArgs[0] = pid;
-            pageArgs[1] = pageData;
+        byte[] pageData = new byte[pageSize];
+        raf.readFully(pageData); //read before image
 
-            newPage = (Page)pageConsts[0].newInstance(pageArgs);
+        return codec.decode(pid, pageData);
+    }
 
-            //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
-        } catch (ClassNotFoundException | InvocationTargetException | IllegalAccessException | InstantiationException e){
-            e.printStackTrace();
-            throw new IOException();
+    // the change an UPDATE or DELTA record of the given type describes
+    private PageDelta readUpdate(int type, DataInput in) throws IOException {
+        if (type == UPDATE_RECORD) {
+            Page before = readPageData(in);
+            Page after = readPageData(in);
+            return PageDelta.full(before, after);
         }
-        return newPage;
+        return PageDelta.read(in);
+    }
 
+    // id class data, read back by PageCodec.readId
+    static void writePageId(DataOutput out, PageId pid) throws IOException {
+        for (int j : pid.serialize()) {
+            out.writeInt(j);
+        }
     }
 
     /** Write a BEGIN record for the specified transaction
@@ -301,150 +498,146 @@ public class LogFile {
             throw new IOException("double logXactionBegin()");
         }
         preAppend();
-        raf.writeInt(BEGIN_RECORD);
-        raf.writeLong(tid.getId());
-        raf.writeLong(currentOffset);
+        buffer.reserve(INT_SIZE + 3 * LONG_SIZE);
+        buffer.putInt(BEGIN_RECORD);
+        buffer.putLong(tid.getId());
+        buffer.putLong(0);
+        buffer.putLong(currentOffset);
         tidToFirstLogRecord.put(tid.getId(), currentOffset);
-        currentOffset = raf.getFilePointer();
+        tidToLastLogRecord.put(tid.getId(), currentOffset);
+        currentOffset = buffer.lsn();
 
         Debug.log("BEGIN OFFSET = " + currentOffset);
     }
 
-    /** Checkpoint the log and write a checkpoint record. */
+    /** Checkpoint the log and write a checkpoint record. Waits for a
+        fuzzy checkpoint, see {@link #startCheckpoint}, so it must not be
+        called holding the monitor of the buffer pool or of the log.
+    */
     public void logCheckpoint() throws IOException {
+        Checkpointer.await(startCheckpoint());
+    }
+
+    /** Starts a fuzzy checkpoint in the background, which writes the dirty
+        pages of the buffer pool without stopping the transactions, and
+        only then points the log at its checkpoint record and truncates
+        the log. See {@link Checkpointer}.
+
+        @return a future that completes when the checkpoint is done
+    */
+    public Future<Void> startCheckpoint() {
+        return checkpointer.start();
+    }
+
+    /** Appends a checkpoint record with the active transactions and the
+        dirty page table, forces it, and points the log at it. Holds the
+        monitors of the buffer pool and the log, so that no update record
+        comes between the dirty page table and the record.
+    */
+    void writeCheckpoint() throws IOException {
         //make sure we have buffer pool lock before proceeding
         synchronized (Database.getBufferPool()) {
             synchronized (this) {
                 //Debug.log("CHECKPOINT, offset = " + raf.getFilePointer());
                 preAppend();
-                long startCpOffset, endCpOffset;
+                long startCpOffset;
                 Set<Long> keys = tidToFirstLogRecord.keySet();
                 Iterator<Long> els = keys.iterator();
-                force();
-                Database.getBufferPool().flushAllPages();
-                startCpOffset = raf.getFilePointer();
-                raf.writeInt(CHECKPOINT_RECORD);
-                raf.writeLong(-1); //no tid , but leave space for convenience
+                Map<Page, Long> dirtyPages = Database.getBufferPool().dirtyPageTable();
+                int dirtyPagesSize = 0;
+                for (Page page : dirtyPages.keySet()) {
+                    dirtyPagesSize += 1 + INT_SIZE * page.getId().serialize().length + LONG_SIZE;
+                }
+                startCpOffset = currentOffset;
+                buffer.reserve(3 * INT_SIZE + 2 * LONG_SIZE + keys.size() * 3 * LONG_SIZE + dirtyPagesSize + LONG_SIZE);
+                buffer.putInt(CHECKPOINT_RECORD);
+                buffer.putLong(-1); //no tid , but leave space for convenience
+                buffer.putLong(0);
 
                 //write list of outstanding transactions
-                raf.writeInt(keys.size());
+                buffer.putInt(keys.size());
                 while (els.hasNext()) {
                     Long key = els.next();
                     Debug.log("WRITING CHECKPOINT TRANSACTION ID: " + key);
-                    raf.writeLong(key);
+                    buffer.putLong(key);
                     //Debug.log("WRITING CHECKPOINT TRANSACTION OFFSET: " + tidToFirstLogRecord.get(key));
-                    raf.writeLong(tidToFirstLogRecord.get(key));
+                    buffer.putLong(tidToFirstLogRecord.get(key));
+                    buffer.putLong(prevLsn(key));
+                }
+
+                //write the dirty page table
+                buffer.putInt(dirtyPages.size());
+                for (Map.Entry<Page, Long> e : dirtyPages.entrySet()) {
+                    buffer.putByte(PageCodecs.code(e.getKey()));
+                    for (int j : e.getKey().getId().serialize()) {
+                        buffer.putInt(j);
+                    }
+                    // records of a log discarded by preAppend are gone
+                    buffer.putLong(Math.max(segments.start(), e.getValue()));
                 }
+                buffer.putLong(currentOffset);
+                currentOffset = buffer.lsn();
 
-                //once the CP is written, make sure the CP location at the
-                // beginning of the log file is updated
-                endCpOffset = raf.getFilePointer();
+                //once the CP is on disk, make sure the CP location in the
+                // log file is updated, and on disk before truncation
+                force();
                 raf.seek(0);
                 raf.writeLong(startCpOffset);
-                raf.seek(endCpOffset);
-                raf.writeLong(currentOffset);
-                currentOffset = raf.getFilePointer();
+                raf.getChannel().force(true);
                 //Debug.log("CP OFFSET = " + currentOffset);
             }
         }
-
-        logTruncate();
     }
 
     /** Truncate any unneeded portion of the log to reduce its space
-        consumption */
+        consumption: deletes the segments that hold only records older
+        than the last checkpoint, the first records of the transactions
+        active at it, and the first records of the pages dirty at it.
+    */
     public synchronized void logTruncate() throws IOException {
         preAppend();
-        raf.seek(0);
-        long cpLoc = raf.readLong();
+        long cpLoc = checkpointLsn();
+        if (cpLoc == NO_CHECKPOINT_ID) {
+            return;
+        }
 
         long minLogRecord = cpLoc;
-
-        if (cpLoc != -1L) {
-            raf.seek(cpLoc);
-            int cpType = raf.readInt();
-            @SuppressWarnings("unused")
-            long cpTid = raf.readLong();
-
-            if (cpType != CHECKPOINT_RECORD) {
-                throw new RuntimeException("Checkpoint pointer does not point to checkpoint record");
-            }
-
-            int numOutstanding = raf.readInt();
-
-            for (int i = 0; i < numOutstanding; i++) {
-                @SuppressWarnings("unused")
-                long tid = raf.readLong();
-                long firstLogRecord = raf.readLong();
-                if (firstLogRecord < minLogRecord) {
-                    minLogRecord = firstLogRecord;
-                }
-            }
+        Map<Long, Long> firstRecords = new HashMap<>();
+        Map<PageId, Long> dirtyPages = new HashMap<>();
+        readCheckpointRecord(cpLoc, firstRecords, new HashMap<>(), dirtyPages);
+        // rollback walks a transaction back to its first record
+        for (long firstLogRecord : firstRecords.values()) {
+            minLogRecord = Math.min(minLogRecord, firstLogRecord);
+        }
+        // recovery redoes the dirty pages from their first record on
+        for (long recLsn : dirtyPages.values()) {
+            minLogRecord = Math.min(minLogRecord, recLsn);
         }
 
-        // we can truncate everything before minLogRecord
-        File newFile = new File("logtmp" + System.currentTimeMillis());
-        RandomAccessFile logNew = new RandomAccessFile(newFile, "rw");
-        logNew.seek(0);
-        logNew.writeLong((cpLoc - minLogRecord) + LONG_SIZE);
-
-        raf.seek(minLogRecord);
-
-        //have to rewrite log records since offsets are different after truncation
-        while (true) {
-            try {
-                int type = raf.readInt();
-                long record_tid = raf.readLong();
-                long newStart = logNew.getFilePointer();
-
-                Debug.log("NEW START = " + newStart);
-
-                logNew.writeInt(type);
-                logNew.writeLong(record_tid);
-
-                switch (type) {
-                case UPDATE_RECORD:
-                    Page before = readPageData(raf);
-                    Page after = readPageData(raf);
-
-                    writePageData(logNew, before);
-                    writePageData(logNew, after);
-                    break;
-                case CHECKPOINT_RECORD:
-                    int numXactions = raf.readInt();
-                    logNew.writeInt(numXactions);
-                    while (numXactions-- > 0) {
-                        long xid = raf.readLong();
-                        long xoffset = raf.readLong();
-                        logNew.writeLong(xid);
-                        logNew.writeLong((xoffset - minLogRecord) + LONG_SIZE);
-                    }
-                    break;
-                case BEGIN_RECORD:
-                    tidToFirstLogRecord.put(record_tid,newStart);
-                    break;
-                }
+        Debug.log("TRUNCATING LOG BEFORE " + minLogRecord);
+        segments.deleteBefore(minLogRecord);
+    }
 
-                //all xactions finish with a pointer
-                logNew.writeLong(newStart);
-                raf.readLong();
+    // the LSN of the last checkpoint record, from the log file
+    private long checkpointLsn() throws IOException {
+        if (raf.length() < LONG_SIZE) {
+            return NO_CHECKPOINT_ID;
+        }
+        raf.seek(0);
+        return raf.readLong();
+    }
 
-            } catch (EOFException e) {
-                break;
+    // reads the checkpoint record with the given LSN into the given maps
+    private void readCheckpointRecord(long lsn, Map<Long, Long> firstRecords, Map<Long, Long> lastRecords,
+                                      Map<PageId, Long> dirtyPages) throws IOException {
+        try (LogReader in = new LogReader(segments, lsn)) {
+            if (in.readInt() != CHECKPOINT_RECORD) {
+                throw new IOException("Checkpoint pointer does not point to checkpoint record");
             }
+            in.readLong();
+            in.readLong();
+            readCheckpoint(in, firstRecords, lastRecords, dirtyPages);
         }
-
-        Debug.log("TRUNCATING LOG;  WAS " + raf.length() + " BYTES ; NEW START : " + minLogRecord + " NEW LENGTH: " + (raf.length() - minLogRecord));
-
-        raf.close();
-        logFile.delete();
-        newFile.renameTo(logFile);
-        raf = new RandomAccessFile(logFile, "rw");
-        raf.seek(raf.length());
-        newFile.delete();
-
-        currentOffset = raf.getFilePointer();
-        //print();
     }
 
     /** Rollback the specified transaction, setting the state of any
@@ -453,6 +646,10 @@ public class LogFile {
         transactions that have already committed (though this may not
         be enforced by this method.)
 
+        <p> Reads only the records of the transaction: from its last one
+        back to its BEGIN record, following their prevLSNs, so the cost
+        does not depend on the records of other transactions in between.
+
         @param tid The transaction to rollback
     */
     public void rollback(TransactionId tid)
@@ -460,40 +657,209 @@ public class LogFile {
         synchronized (Database.getBufferPool()) {
             synchronized(this) {
                 preAppend();
+                buffer.write();
                 // some code goes here
                 //print();
-                Long nowOffset = tidToFirstLogRecord.get(tid.getId());
+                Long nowOffset = tidToLastLogRecord.get(tid.getId());
                 if (nowOffset == null){
                     throw new IOException("not correct transaction id or begin record");
                 }
-                raf.seek(nowOffset);
 
-                while(true){
-                    try {
+                // the updates of the transaction, undone in reverse log order
+                PageImages images = new PageImages();
+                try (LogReader in = new LogReader(segments, nowOffset)) {
+                    for (long lsn = nowOffset; lsn != 0; ) {
+                        in.seek(lsn);
                         // 读取LOG类型 和 事务ID
-                        int type = raf.readInt();
-                        Long record_tid = raf.readLong();
-
-                        if (type == UPDATE_RECORD) {
-                            Page before = readPageData(raf);
-                            readPageData(raf);
-                            if (record_tid.equals(tid.getId())) {
-                                Database.getCatalog().getDatabaseFile(before.getId().getTableId()).writePage(before);
-                                // todo: 需要加入这一句 把在缓存中的存有事务旧数据的赃页丢弃
-                                Database.getBufferPool().discardPage(before.getId());
-                            }
+                        int type = in.readInt();
+                        in.readLong();
+                        lsn = in.readLong();
+                        if (type == UPDATE_RECORD || type == DELTA_RECORD) {
+                            PageDelta delta = readUpdate(type, in);
+                            delta.undo(images.get(delta));
+                        }
+                    }
+                }
+                for (PageId pid : images.install()) {
+                    // todo: 需要加入这一句 把在缓存中的存有事务旧数据的赃页丢弃
+                    Database.getBufferPool().discardPage(pid);
+                }
+            }
+        }
+    }
 
-                        } else if (type == CHECKPOINT_RECORD) {
-                            raf.seek(currentOffset);
-                            break;
+    /** The data of the pages that rollback and recovery apply deltas to,
+        read from disk when first needed.
+    */
+    private static class PageImages {
+        private final Map<PageId, byte[]> data = new LinkedHashMap<>();
+        private final Map<PageId, Integer> pageTypes = new HashMap<>();
+
+        byte[] get(PageDelta delta) {
+            pageTypes.put(delta.pid, delta.pageType);
+            return data.computeIfAbsent(delta.pid, pid -> {
+                Page page = null;
+                try {
+                    page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+                } catch (IllegalArgumentException e) {
+                    // past the end of the file: the page was appended, and never written
+                }
+                // an empty page is all zeros
+                return page == null ? new byte[delta.pageSize] : page.getPageData();
+            });
+        }
+
+        /** Writes the pages to disk, and returns their ids. */
+        Set<PageId> install() throws IOException {
+            for (Map.Entry<PageId, byte[]> e : data.entrySet()) {
+                PageId pid = e.getKey();
+                Page page = PageCodecs.codec(pageTypes.get(pid)).decode(pid, e.getValue());
+                Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+            }
+            return data.keySet();
+        }
+    }
+
+    /** The pages that recovery redoes and undoes, partitioned by page id
+        among the redo threads. {@link #redo} hands the records of each
+        partition to its thread in batches, in log order; with one
+        partition the recovering thread redoes them itself. After
+        {@link #finish}, which must come before {@link #install}, the
+        partitions belong to the recovering thread again.
+    */
+    private static class RedoPartitions implements Closeable {
+        private static final int BATCH = 256;
+        // ends the batches of a partition
+        private static final List<PageDelta> END = Collections.emptyList();
+
+        private final PageImages[] images;
+        private final ExecutorService workers; // null for one partition
+        private final List<BlockingQueue<List<PageDelta>>> queues = new ArrayList<>();
+        private final List<List<PageDelta>> batches = new ArrayList<>();
+        private final List<Future<?>> redone = new ArrayList<>();
+
+        RedoPartitions(int threads) {
+            images = new PageImages[threads];
+            for (int i = 0; i < threads; i++) {
+                images[i] = new PageImages();
+            }
+            if (threads == 1) {
+                workers = null;
+                return;
+            }
+            workers = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "simpledb-redo");
+                t.setDaemon(true);
+                return t;
+            });
+            for (int i = 0; i < threads; i++) {
+                BlockingQueue<List<PageDelta>> queue = new ArrayBlockingQueue<>(16);
+                PageImages partition = images[i];
+                queues.add(queue);
+                batches.add(new ArrayList<>(BATCH));
+                redone.add(workers.submit(() -> {
+                    RuntimeException error = null;
+                    List<PageDelta> batch;
+                    // take everything, so that put never blocks for good
+                    while ((batch = queue.take()) != END) {
+                        for (PageDelta delta : batch) {
+                            if (error == null) {
+                                try {
+                                    delta.redo(partition.get(delta));
+                                } catch (RuntimeException e) {
+                                    error = e;
+                                }
+                            }
                         }
-                        // 读取事务偏移
-                        raf.readLong();
-                    }catch (IOException ignore){
-                        raf.seek(currentOffset);
-                        break;
                     }
+                    if (error != null) {
+                        throw error;
+                    }
+                    return null;
+                }));
+            }
+        }
+
+        private int partition(PageId pid) {
+            return Math.floorMod(pid.hashCode(), images.length);
+        }
+
+        PageImages images(PageId pid) {
+            return images[partition(pid)];
+        }
+
+        void redo(PageDelta delta) throws IOException {
+            int i = partition(delta.pid);
+            if (workers == null) {
+                delta.redo(images[i].get(delta));
+                return;
+            }
+            List<PageDelta> batch = batches.get(i);
+            batch.add(delta);
+            if (batch.size() == BATCH) {
+                put(i, batch);
+                batches.set(i, new ArrayList<>(BATCH));
+            }
+        }
+
+        private void put(int i, List<PageDelta> batch) throws IOException {
+            try {
+                queues.get(i).put(batch);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted during redo");
+            }
+        }
+
+        /** Waits for the threads to redo the records handed to them. */
+        void finish() throws IOException {
+            if (workers == null) {
+                return;
+            }
+            for (int i = 0; i < queues.size(); i++) {
+                put(i, batches.get(i));
+                put(i, END);
+            }
+            for (Future<?> f : redone) {
+                await(f);
+            }
+        }
+
+        /** Writes the pages to disk, a partition per thread. */
+        void install() throws IOException {
+            if (workers == null) {
+                images[0].install();
+                return;
+            }
+            List<Future<?>> installed = new ArrayList<>();
+            for (PageImages partition : images) {
+                installed.add(workers.submit(partition::install));
+            }
+            for (Future<?> f : installed) {
+                await(f);
+            }
+        }
+
+        private static void await(Future<?> f) throws IOException {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted during recovery");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
                 }
+                throw new IOException(cause);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (workers != null) {
+                workers.shutdownNow();
             }
         }
     }
@@ -502,10 +868,14 @@ public class LogFile {
         is necessary so that start up can happen quickly (without
         extensive recovery.)
     */
-    public synchronized void shutdown() {
+    public void shutdown() {
         try {
             logCheckpoint();  //simple way to shutdown is to write a checkpoint record
-            raf.close();
+            synchronized (this) {
+                buffer.write();
+                segments.close();
+                raf.close();
+            }
         } catch (IOException e) {
             System.out.println("ERROR SHUTTING DOWN -- IGNORING.");
             e.printStackTrace();
@@ -515,6 +885,20 @@ public class LogFile {
     /** Recover the database system by ensuring that the updates of
         committed transactions are installed and that the
         updates of uncommitted transactions are not installed.
+
+        <p> Recovery reads the log in the three passes of ARIES. Analysis
+        starts at the last checkpoint record, which lists the active
+        transactions and the dirty page table, and reads the log after it
+        to find the transactions that committed, the losers that did not
+        finish, and every page with changes that may not be on disk, with
+        the first record of those changes. Redo reads the log from the
+        oldest such record on and reapplies the committed changes to those
+        pages only; everything older is on disk. Undo walks the records of
+        the losers back along their prevLSNs, undoing them in reverse log
+        order across all losers, and an ABORT
+        record is logged for each loser, so that a later recovery does not
+        undo it again. Memory holds the pages that are redone or undone,
+        not the log.
     */
     public void recover() throws IOException {
         synchronized (Database.getBufferPool()) {
@@ -523,153 +907,326 @@ public class LogFile {
                 // some code goes here
                 // 有可能存在事务提交的时候赃页刷入到磁盘刷到一半 这个时候崩溃了 那么启动的时候就需要恢复操作
                 // 这个时候提交也是被当做提交失败来看 所以需要恢复到事务提交之前的状态
-                raf = new RandomAccessFile(logFile, "rw");
-                //已提交的事务id集合
-                Set<Long> committedId = new HashSet<>();
-
-                Map<Long, List<Page>> beforePages = new HashMap<>();
-                Map<Long, List<Page>> afterPages = new HashMap<>();
-                // 读取checkpoint
-                raf.readLong();
-
-                while (true) {
-                    try {
-                        int type = raf.readInt();
-                        long txid = raf.readLong();
-                        switch (type) {
-                            case UPDATE_RECORD:
-                                Page beforeImage = readPageData(raf);
-                                Page afterImage = readPageData(raf);
-                                List<Page> l1 = beforePages.getOrDefault(txid, new ArrayList<>());
-                                l1.add(beforeImage);
-                                beforePages.put(txid, l1);
-                                List<Page> l2 = afterPages.getOrDefault(txid, new ArrayList<>());
-                                l2.add(afterImage);
-                                afterPages.put(txid, l2);
-                                break;
-                            case COMMIT_RECORD:
-                                committedId.add(txid);
-                                break;
-                            case CHECKPOINT_RECORD:
-                                int numTxs = raf.readInt();
-                                while (numTxs -- > 0) {
-                                    raf.readLong();
-                                    raf.readLong();
-                                }
-                                break;
-                            default:
-                                break;
-                        }
-                        //读取 offset
-                        raf.readLong();
 
-                    } catch (EOFException e) {
-                        break;
-                    }
+                Analysis analysis = analyze();
+                try (RedoPartitions pages = new RedoPartitions(redoThreads)) {
+                    redo(analysis, pages);
+                    pages.finish();
+                    undo(analysis, pages);
+                    pages.install();
                 }
 
-                //处理未提交事务，直接写before-image
-                for (long txid :beforePages.keySet()) {
-                    if (!committedId.contains(txid)) {
-                        List<Page> pages = beforePages.get(txid);
-                        for (Page p : pages) {
-                            Database.getCatalog().getDatabaseFile(p.getId().getTableId()).writePage(p);
-                        }
-                    }
+                // append after the last whole record, a torn one is dropped
+                segments.truncate(analysis.end);
+                buffer.reset(segments);
+                currentOffset = buffer.lsn();
+                flushedLsn = currentOffset;
+
+                for (Map.Entry<Long, Long> loser : analysis.losers.entrySet()) {
+                    buffer.reserve(INT_SIZE + 3 * LONG_SIZE);
+                    buffer.putInt(ABORT_RECORD);
+                    buffer.putLong(loser.getKey());
+                    buffer.putLong(loser.getValue());
+                    buffer.putLong(currentOffset);
+                    currentOffset = buffer.lsn();
                 }
-
-                //处理已提交事务，直接写after-image
-                for (long txid : committedId) {
-                    if (afterPages.containsKey(txid)) {
-                        List<Page> pages = afterPages.get(txid);
-                        for (Page page : pages) {
-                            Database.getCatalog().getDatabaseFile(page.getId().getTableId()).writePage(page);
-                        }
-                    }
+                if (!analysis.losers.isEmpty()) {
+                    force();
                 }
-
             }
          }
     }
 
-    /** Print out a human readable represenation of the log */
-    public void print() throws IOException {
-        long curOffset = raf.getFilePointer();
-
-        raf.seek(0);
+    /** What the analysis pass of recovery learns from the log; positions
+        in the log are LSNs of records.
+    */
+    private static class Analysis {
+        long checkpoint = NO_CHECKPOINT_ID;
+        long start; // where the log is read from
+        long end; // after the last whole record
+        final Set<Long> committed = new HashSet<>();
+        // transactions that did not finish, with their last record
+        final Map<Long, Long> losers = new HashMap<>();
+        // pages with changes that may not be on disk, with their first record
+        final Map<PageId, Long> dirtyPages = new HashMap<>();
+    }
 
-        System.out.println("0: checkpoint record at offset " + raf.readLong());
+    // reads the body of a checkpoint record into the given maps
+    private static void readCheckpoint(DataInput in, Map<Long, Long> firstRecords, Map<Long, Long> lastRecords,
+                                       Map<PageId, Long> dirtyPages) throws IOException {
+        int numTxs = in.readInt();
+        while (numTxs-- > 0) {
+            long tid = in.readLong();
+            firstRecords.put(tid, in.readLong());
+            lastRecords.put(tid, in.readLong());
+        }
+        int numDirty = in.readInt();
+        while (numDirty-- > 0) {
+            PageId pid = PageCodecs.codec(in.readUnsignedByte()).readId(in);
+            dirtyPages.put(pid, in.readLong());
+        }
+    }
 
-        while (true) {
-            try {
-                int cpType = raf.readInt();
-                long cpTid = raf.readLong();
+    private static void skipCheckpoint(DataInput in) throws IOException {
+        readCheckpoint(in, new HashMap<>(), new HashMap<>(), new HashMap<>());
+    }
 
-                System.out.println((raf.getFilePointer() - (INT_SIZE + LONG_SIZE)) + ": RECORD TYPE " + cpType);
-                System.out.println((raf.getFilePointer() - LONG_SIZE) + ": TID " + cpTid);
+    private Analysis analyze() throws IOException {
+        Analysis a = new Analysis();
+        a.checkpoint = checkpointLsn();
+        a.start = segments.start();
+        if (a.checkpoint != NO_CHECKPOINT_ID) {
+            readCheckpointRecord(a.checkpoint, new HashMap<>(), a.losers, a.dirtyPages);
+            // the commits of the changes to redo come after them
+            a.start = a.checkpoint;
+            for (long recLsn : a.dirtyPages.values()) {
+                a.start = Math.min(a.start, recLsn);
+            }
+        }
 
-                switch (cpType) {
+        a.end = a.start;
+        try (LogReader in = new LogReader(segments, a.start)) {
+            while (true) {
+                long start = in.lsn();
+                int type = in.readInt();
+                long tid = in.readLong();
+                in.readLong();
+                switch (type) {
                 case BEGIN_RECORD:
-                    System.out.println(" (BEGIN)");
-                    System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
+                    a.losers.merge(tid, start, Math::max);
+                    break;
+                case COMMIT_RECORD:
+                    a.committed.add(tid);
+                    a.losers.remove(tid);
                     break;
                 case ABORT_RECORD:
-                    System.out.println(" (ABORT)");
-                    System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
+                    // rollback restored the pages
+                    a.losers.remove(tid);
                     break;
-                case COMMIT_RECORD:
-                    System.out.println(" (COMMIT)");
-                    System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
+                case UPDATE_RECORD:
+                case DELTA_RECORD:
+                    PageDelta delta = readUpdate(type, in);
+                    a.losers.merge(tid, start, Math::max);
+                    // pages clean at the checkpoint were on disk
+                    if (start > a.checkpoint) {
+                        a.dirtyPages.putIfAbsent(delta.pid, start);
+                    }
                     break;
-
                 case CHECKPOINT_RECORD:
-                    System.out.println(" (CHECKPOINT)");
-                    int numTransactions = raf.readInt();
-                    System.out.println((raf.getFilePointer() - INT_SIZE) + ": NUMBER OF OUTSTANDING RECORDS: " + numTransactions);
-
-                    while (numTransactions-- > 0) {
-                        long tid = raf.readLong();
-                        long firstRecord = raf.readLong();
-                        System.out.println((raf.getFilePointer() - (LONG_SIZE + LONG_SIZE)) + ": TID: " + tid);
-                        System.out.println((raf.getFilePointer() - LONG_SIZE) + ": FIRST LOG RECORD: " + firstRecord);
+                    skipCheckpoint(in);
+                    break;
+                default:
+                    // the torn end of the log
+                    return a;
+                }
+                in.readLong();
+                a.end = in.lsn();
+            }
+        } catch (EOFException e) {
+            return a;
+        }
+    }
+
+    // reapplies the committed changes to the dirty pages that may be missing
+    private void redo(Analysis a, RedoPartitions pages) throws IOException {
+        if (a.dirtyPages.isEmpty()) {
+            return;
+        }
+        try (LogReader in = new LogReader(segments, Collections.min(a.dirtyPages.values()))) {
+            while (in.lsn() < a.end) {
+                long start = in.lsn();
+                int type = in.readInt();
+                long tid = in.readLong();
+                in.readLong();
+                if (type == UPDATE_RECORD || type == DELTA_RECORD) {
+                    PageDelta delta = readUpdate(type, in);
+                    Long recLsn = a.dirtyPages.get(delta.pid);
+                    if (a.committed.contains(tid) && recLsn != null && start >= recLsn) {
+                        pages.redo(delta);
                     }
-                    System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
+                } else if (type == CHECKPOINT_RECORD) {
+                    skipCheckpoint(in);
+                }
+                in.readLong();
+            }
+        }
+    }
 
-                    break;
-                case UPDATE_RECORD:
-                    System.out.println(" (UPDATE)");
+    // undoes the changes of the losers, in reverse log order: the last
+    // record not undone yet of all losers comes next
+    private void undo(Analysis a, RedoPartitions pages) throws IOException {
+        if (a.losers.isEmpty()) {
+            return;
+        }
+        PriorityQueue<Long> next = new PriorityQueue<>(Collections.reverseOrder());
+        next.addAll(a.losers.values());
+        try (LogReader in = new LogReader(segments, next.peek())) {
+            while (!next.isEmpty()) {
+                in.seek(next.poll());
+                int type = in.readInt();
+                in.readLong();
+                long prev = in.readLong();
+                if (type == UPDATE_RECORD || type == DELTA_RECORD) {
+                    PageDelta delta = readUpdate(type, in);
+                    delta.undo(pages.images(delta.pid).get(delta));
+                }
+                if (prev != 0) {
+                    next.add(prev);
+                }
+            }
+        }
+    }
+
+    /** Print out a human readable represenation of the log */
+    public synchronized void print() throws IOException {
+        buffer.write();
+
+        System.out.println("checkpoint record at LSN " + checkpointLsn());
+
+        try (LogReader in = new LogReader(segments, segments.start())) {
+            while (true) {
+                try {
+                    int cpType = in.readInt();
+                    long cpTid = in.readLong();
+                    long prev = in.readLong();
+
+                    System.out.println((in.lsn() - (INT_SIZE + 2 * LONG_SIZE)) + ": RECORD TYPE " + cpType);
+                    System.out.println((in.lsn() - 2 * LONG_SIZE) + ": TID " + cpTid);
+                    System.out.println((in.lsn() - LONG_SIZE) + ": PREVIOUS RECORD OF TID: " + prev);
+
+                    switch (cpType) {
+                    case BEGIN_RECORD:
+                        System.out.println(" (BEGIN)");
+                        System.out.println(in.lsn() + ": RECORD START OFFSET: " + in.readLong());
+                        break;
+                    case ABORT_RECORD:
+                        System.out.println(" (ABORT)");
+                        System.out.println(in.lsn() + ": RECORD START OFFSET: " + in.readLong());
+                        break;
+                    case COMMIT_RECORD:
+                        System.out.println(" (COMMIT)");
+                        System.out.println(in.lsn() + ": RECORD START OFFSET: " + in.readLong());
+                        break;
+
+                    case CHECKPOINT_RECORD:
+                        System.out.println(" (CHECKPOINT)");
+                        int numTransactions = in.readInt();
+                        System.out.println((in.lsn() - INT_SIZE) + ": NUMBER OF OUTSTANDING RECORDS: " + numTransactions);
+
+                        while (numTransactions-- > 0) {
+                            long tid = in.readLong();
+                            long firstRecord = in.readLong();
+                            long lastRecord = in.readLong();
+                            System.out.println((in.lsn() - 3 * LONG_SIZE) + ": TID: " + tid);
+                            System.out.println((in.lsn() - 2 * LONG_SIZE) + ": FIRST LOG RECORD: " + firstRecord);
+                            System.out.println((in.lsn() - LONG_SIZE) + ": LAST LOG RECORD: " + lastRecord);
+                        }
+                        int numDirty = in.readInt();
+                        System.out.println((in.lsn() - INT_SIZE) + ": NUMBER OF DIRTY PAGES: " + numDirty);
+
+                        while (numDirty-- > 0) {
+                            long entryStart = in.lsn();
+                            PageId pid = PageCodecs.codec(in.readUnsignedByte()).readId(in);
+                            long recOffset = in.readLong();
+                            System.out.println(entryStart + ": DIRTY PAGE: table id " + pid.getTableId() + ", page number " + pid.getPageNumber());
+                            System.out.println((in.lsn() - LONG_SIZE) + ": FIRST RECORD TO REDO: " + recOffset);
+                        }
+                        System.out.println(in.lsn() + ": RECORD START OFFSET: " + in.readLong());
+
+                        break;
+                    case UPDATE_RECORD:
+                        System.out.println(" (UPDATE)");
+
+                        long start = in.lsn();
+                        Page before = readPageData(in);
+
+                        long middle = in.lsn();
+                        Page after = readPageData(in);
 
-                    long start = raf.getFilePointer();
-                    Page before = readPageData(raf);
+                        System.out.println(start + ": before image table id " + before.getId().getTableId());
+                        System.out.println((start + INT_SIZE) + ": before image page number " + before.getId().getPageNumber());
+                        System.out.println((start + INT_SIZE) + " TO " + (middle - INT_SIZE) + ": page data");
 
-                    long middle = raf.getFilePointer();
-                    Page after = readPageData(raf);
+                        System.out.println(middle + ": after image table id " + after.getId().getTableId());
+                        System.out.println((middle + INT_SIZE) + ": after image page number " + after.getId().getPageNumber());
+                        System.out.println((middle + INT_SIZE) + " TO " + (in.lsn()) + ": page data");
 
-                    System.out.println(start + ": before image table id " + before.getId().getTableId());
-                    System.out.println((start + INT_SIZE) + ": before image page number " + before.getId().getPageNumber());
-                    System.out.println((start + INT_SIZE) + " TO " + (middle - INT_SIZE) + ": page data");
+                        System.out.println(in.lsn() + ": RECORD START OFFSET: " + in.readLong());
 
-                    System.out.println(middle + ": after image table id " + after.getId().getTableId());
-                    System.out.println((middle + INT_SIZE) + ": after image page number " + after.getId().getPageNumber());
-                    System.out.println((middle + INT_SIZE) + " TO " + (raf.getFilePointer()) + ": page data");
+                        break;
+                    case DELTA_RECORD:
+                        System.out.println(" (DELTA)");
+
+                        long deltaStart = in.lsn();
+                        PageDelta delta = PageDelta.read(in);
+
+                        System.out.println(deltaStart + ": table id " + delta.pid.getTableId() + ", page number " + delta.pid.getPageNumber());
+                        System.out.println(deltaStart + " TO " + in.lsn() + ": changed bytes");
+
+                        System.out.println(in.lsn() + ": RECORD START OFFSET: " + in.readLong());
 
-                    System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
+                        break;
+                    }
 
+                } catch (EOFException e) {
+                    //e.printStackTrace();
                     break;
                 }
-
-            } catch (EOFException e) {
-                //e.printStackTrace();
-                break;
             }
         }
-
-        // Return the file pointer to its original position
-        raf.seek(curOffset);
     }
 
     public  synchronized void force() throws IOException {
-        raf.getChannel().force(true);
+        buffer.write();
+        segments.force();
+        forces++;
+        flushedLsn = buffer.lsn();
+        groupCommit.forced(flushedLsn);
+    }
+
+    /** Forces the log to disk up to the record with the given LSN, e.g. the
+        LSN of a page that is about to be written. Does nothing if that
+        record is on disk already, or for LSN 0, which no record has.
+    */
+    public synchronized void force(long lsn) throws IOException {
+        if (lsn > 0 && lsn >= flushedLsn) {
+            force();
+        }
+    }
+
+    /** Returns the LSN below which the log is on disk. */
+    public synchronized long getFlushedLsn() {
+        return flushedLsn;
+    }
+
+    /** Forces the log to disk without holding its monitor during the
+        force, so that records can be appended meanwhile, and returns the
+        LSN below which the log is now on disk. Used by the group commit
+        flusher.
+    */
+    long forceAppended() throws IOException {
+        FileChannel channel;
+        long lsn;
+        synchronized (this) {
+            buffer.write();
+            channel = segments.channel();
+            lsn = buffer.lsn();
+        }
+        try {
+            channel.force(true);
+        } catch (ClosedChannelException e) {
+            // the segment filled up, and was forced before it was closed
+            synchronized (this) {
+                if (!segments.isOpen()) {
+                    throw e;
+                }
+            }
+        }
+        synchronized (this) {
+            forces++;
+            flushedLsn = Math.max(flushedLsn, lsn);
+        }
+        return lsn;
     }
 
 }
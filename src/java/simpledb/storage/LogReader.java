@@ -0,0 +1,133 @@
+package simpledb.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * LogReader reads the records of a log sequentially from an LSN on, through
+ * a buffer, instead of the read calls per field of a RandomAccessFile, and
+ * goes on from one {@link LogSegments segment} to the next. Values are
+ * decoded as {@link DataInput} decodes them, the counterpart of
+ * {@link LogBuffer}.
+ * <p>
+ * Only sees what reached the segment files; write the log buffer out first.
+ */
+class LogReader extends DataInputStream {
+
+    LogReader(LogSegments segments, long lsn) throws IOException {
+        super(new SegmentInput(segments, lsn));
+    }
+
+    /**
+     * Returns the LSN of the next byte to read.
+     */
+    long lsn() {
+        return ((SegmentInput) in).lsn();
+    }
+
+    /**
+     * Goes to the given LSN, to read the record there. Reads nothing from
+     * the file if the LSN is among the bytes read last.
+     */
+    void seek(long lsn) throws IOException {
+        ((SegmentInput) in).seek(lsn);
+    }
+
+    // the bytes of the segments from an LSN on, skipping the headers
+    private static class SegmentInput extends InputStream {
+        private final LogSegments segments;
+        private final ByteBuffer buffer = ByteBuffer.allocate(LogFile.LOG_BUFFER_SIZE);
+        private FileChannel channel;
+        private long base; // first LSN of the segment read
+        private long position; // file offset of the end of the buffer
+
+        SegmentInput(LogSegments segments, long lsn) throws IOException {
+            this.segments = segments;
+            open(segments.base(lsn));
+            position = lsn - base;
+            buffer.flip();
+        }
+
+        private void open(long base) throws IOException {
+            if (!segments.contains(base)) {
+                throw new FileNotFoundException("no log segment " + segments.file(base));
+            }
+            channel = FileChannel.open(segments.file(base).toPath(), StandardOpenOption.READ);
+            this.base = base;
+        }
+
+        long lsn() {
+            long offset = position - buffer.remaining();
+            // the end of a full segment is the start of the next one's data
+            if (offset == segments.segmentSize()) {
+                return base + offset + LogSegments.HEADER_SIZE;
+            }
+            return base + offset;
+        }
+
+        void seek(long lsn) throws IOException {
+            long target = segments.base(lsn);
+            if (target != base) {
+                channel.close();
+                open(target);
+                position = lsn - base;
+                buffer.clear().flip();
+                return;
+            }
+            long offset = lsn - base;
+            long bufferStart = position - buffer.limit();
+            if (offset >= bufferStart && offset < position) {
+                buffer.position((int) (offset - bufferStart));
+            } else {
+                position = offset;
+                buffer.clear().flip();
+            }
+        }
+
+        private boolean fill() throws IOException {
+            while (!buffer.hasRemaining()) {
+                if (position == segments.segmentSize()) {
+                    if (!segments.contains(base + position)) {
+                        return false;
+                    }
+                    channel.close();
+                    open(base + position);
+                    position = LogSegments.HEADER_SIZE;
+                }
+                buffer.clear();
+                int n = channel.read(buffer, position);
+                buffer.flip();
+                if (n <= 0) {
+                    return false;
+                }
+                position += n;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package simpledb.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * LogSegments stores the records of a LogFile in segment files of a fixed
+ * size, next to the log file and named after it and the LSN of their first
+ * byte, e.g. <tt>log.0000000001000000</tt>. The LSN of a byte is its offset
+ * in the log as if the segments were one file, headers included, so the
+ * segment holding an LSN follows from the LSN. Each segment begins with a
+ * header: a magic number, the segment size and its first LSN.
+ * <p>
+ * Records are appended to the last segment and span segments. A segment
+ * that fills up is forced and closed, and the next one is created right
+ * away, so the end of the log is always in the last segment. Truncating
+ * the log deletes the segments before the oldest record still needed
+ * instead of copying the records after it.
+ * <p>
+ * Not thread safe; the LogFile monitor guards it.
+ */
+class LogSegments implements Closeable {
+
+    static final int MAGIC = 0x53444c47;
+    static final int HEADER_SIZE = 2 * LogFile.INT_SIZE + LogFile.LONG_SIZE;
+
+    private final File log;
+    private final int newSegmentSize; // of the segments of a new log
+    private int segmentSize; // of the segments on disk
+    private long first; // first LSN of the oldest segment
+    private long last; // first LSN of the segment appended to
+    private FileChannel channel; // of the last segment
+    private long end; // the LSN the next appended byte goes to
+
+    /**
+     * Opens the segments of the given log file, or creates the first one.
+     * A log that was written with another segment size keeps it until it
+     * is {@link #reset}.
+     */
+    LogSegments(File log, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("log segments must be larger than " + HEADER_SIZE + " bytes: " + segmentSize);
+        }
+        this.log = log.getAbsoluteFile();
+        this.newSegmentSize = segmentSize;
+        this.segmentSize = segmentSize;
+        SortedSet<Long> bases = list();
+        if (bases.isEmpty()) {
+            first = last = 0;
+            channel = create(0);
+            end = HEADER_SIZE;
+            return;
+        }
+        first = bases.first();
+        last = bases.last();
+        this.segmentSize = readHeader(first);
+        for (long base = first; base < last; base += this.segmentSize) {
+            if (!bases.contains(base) || readHeader(base) != this.segmentSize) {
+                throw new IOException("log segment " + file(base) + " missing or of another size");
+            }
+        }
+        long length = file(last).length();
+        if (length < HEADER_SIZE) {
+            // torn while it was created
+            channel = create(last);
+            length = HEADER_SIZE;
+        } else {
+            readHeader(last);
+            channel = FileChannel.open(file(last).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        end = last + length;
+        if (length == this.segmentSize) {
+            roll();
+        }
+    }
+
+    // the first LSNs of the segments on disk
+    private SortedSet<Long> list() {
+        String prefix = log.getName() + ".";
+        SortedSet<Long> bases = new TreeSet<>();
+        File[] files = log.getParentFile().listFiles((dir, name) ->
+                name.length() == prefix.length() + 16 && name.startsWith(prefix));
+        if (files != null) {
+            for (File f : files) {
+                try {
+                    bases.add(Long.parseUnsignedLong(f.getName().substring(prefix.length()), 16));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        return bases;
+    }
+
+    // checks the header of a segment, and returns its segment size
+    private int readHeader(long base) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file(base)))) {
+            int magic = in.readInt();
+            int size = in.readInt();
+            long lsn = in.readLong();
+            if (magic != MAGIC || lsn != base) {
+                throw new IOException("bad header in log segment " + file(base));
+            }
+            return size;
+        }
+    }
+
+    private FileChannel create(long base) throws IOException {
+        FileChannel c = FileChannel.open(file(base).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(segmentSize).putLong(base).flip();
+        while (header.hasRemaining()) {
+            c.write(header, header.position());
+        }
+        return c;
+    }
+
+    // forces and closes the full last segment, and starts the next one
+    private void roll() throws IOException {
+        channel.force(true);
+        channel.close();
+        last += segmentSize;
+        channel = create(last);
+        end = last + HEADER_SIZE;
+    }
+
+    File file(long base) {
+        return new File(log.getPath() + String.format(".%016x", base));
+    }
+
+    int segmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Returns the first LSN of the segment that holds the given LSN.
+     */
+    long base(long lsn) {
+        return lsn - lsn % segmentSize;
+    }
+
+    /**
+     * Returns the LSN the given number of bytes of records after the given
+     * LSN, past the headers of the segments in between. The end of a full
+     * segment is the first LSN of records in the next one.
+     */
+    long advance(long lsn, long bytes) {
+        long base = base(lsn);
+        long offset = lsn - base + bytes;
+        if (offset < segmentSize) {
+            return base + offset;
+        }
+        long beyond = offset - segmentSize;
+        long data = segmentSize - HEADER_SIZE;
+        return base + segmentSize + beyond / data * segmentSize + HEADER_SIZE + beyond % data;
+    }
+
+    /**
+     * Returns whether the segment with the given first LSN is on disk.
+     */
+    boolean contains(long base) {
+        return base >= first && base <= last;
+    }
+
+    /**
+     * Returns the LSN of the oldest byte of the log.
+     */
+    long start() {
+        return first + HEADER_SIZE;
+    }
+
+    /**
+     * Returns the LSN the next appended byte goes to.
+     */
+    long end() {
+        return end;
+    }
+
+    /**
+     * Returns the channel of the last segment, which the log is appended
+     * to. The segments before it are on disk.
+     */
+    FileChannel channel() {
+        return channel;
+    }
+
+    boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Appends the remaining bytes of the buffer to the log, without
+     * forcing the last segment.
+     *
+     * @return the LSN the next appended byte goes to
+     */
+    long append(ByteBuffer bytes) throws IOException {
+        int limit = bytes.limit();
+        while (bytes.hasRemaining()) {
+            long offset = end - last;
+            bytes.limit((int) Math.min(limit, bytes.position() + (segmentSize - offset)));
+            end += channel.write(bytes, offset);
+            bytes.limit(limit);
+            if (end - last == segmentSize) {
+                roll();
+            }
+        }
+        return end;
+    }
+
+    public void force() throws IOException {
+        channel.force(true);
+    }
+
+    /**
+     * Drops the log from the given LSN on, e.g. a record torn by a crash,
+     * and appends from there.
+     */
+    void truncate(long lsn) throws IOException {
+        long base = base(lsn);
+        if (base > last) {
+            // the last segment filled up before the next one was created
+            roll();
+            return;
+        }
+        for (; last > base; last -= segmentSize) {
+            channel.close();
+            Files.deleteIfExists(file(last).toPath());
+            channel = FileChannel.open(file(last - segmentSize).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        channel.truncate(lsn - base);
+        end = lsn;
+    }
+
+    /**
+     * Deletes the segments that hold only LSNs below the given one.
+     */
+    void deleteBefore(long lsn) throws IOException {
+        long base = Math.min(base(lsn), last);
+        for (; first < base; first += segmentSize) {
+            Files.deleteIfExists(file(first).toPath());
+        }
+    }
+
+    /**
+     * Deletes every segment and starts an empty log, with the segment size
+     * given to the constructor, at an LSN no lower than the given one.
+     */
+    void reset(long lsn) throws IOException {
+        channel.close();
+        for (long base = first; base <= last; base += segmentSize) {
+            Files.deleteIfExists(file(base).toPath());
+        }
+        segmentSize = newSegmentSize;
+        first = last = (lsn + segmentSize - 1) / segmentSize * segmentSize;
+        channel = create(last);
+        end = last + HEADER_SIZE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
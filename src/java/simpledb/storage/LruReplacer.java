@@ -0,0 +1,59 @@
+package simpledb.storage;
+
+/**
+ * LRU replacement: the frames form a list from most to least recently used,
+ * and the least recently used clean page is evicted. Every hit moves its
+ * frame to the head of the list, so unlike CLOCK a hit locks the shard.
+ */
+class LruReplacer extends Replacer {
+
+    private final PageTable.Frame head = new PageTable.Frame(null, 0, null);
+
+    LruReplacer() {
+        head.next = head;
+        head.prev = head;
+    }
+
+    @Override
+    synchronized void hit(PageTable.Frame f) {
+        // f may have been removed before we got the lock
+        if (f.next != null && head.next != f) {
+            unlink(f);
+            addFirst(f);
+        }
+    }
+
+    @Override
+    void added(PageTable.Frame f) {
+        addFirst(f);
+    }
+
+    @Override
+    void removed(PageTable.Frame f, boolean evicted) {
+        unlink(f);
+    }
+
+    @Override
+    PageTable.Frame victim(boolean force) {
+        for (PageTable.Frame f = head.prev; f != head; f = f.prev) {
+            if (f.page.isDirty() == null) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    private void addFirst(PageTable.Frame f) {
+        f.next = head.next;
+        f.prev = head;
+        head.next.prev = f;
+        head.next = f;
+    }
+
+    private void unlink(PageTable.Frame f) {
+        f.prev.next = f.next;
+        f.next.prev = f.prev;
+        f.prev = null;
+        f.next = null;
+    }
+}
@@ -0,0 +1,65 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * MappedHeapFile is a HeapFile that serves page reads from a read-only memory
+ * mapping of the table file instead of a read system call per page. Pages are
+ * decoded directly from the mapped region, so a miss allocates no page sized
+ * buffer and the OS page cache does the caching of the raw bytes. It is meant
+ * for large, read-mostly tables; writes go through the file channel exactly
+ * as for HeapFile.
+ * <p>
+ * Select it for a table by adding the <code>mapped</code> option after the
+ * schema in the catalog file, e.g. <code>reports (id int pk, v int) mapped</code>.
+ *
+ * @see MappedSegments
+ * @see simpledb.common.Catalog#loadSchema
+ */
+public class MappedHeapFile extends HeapFile {
+
+    private final MappedSegments segments;
+
+    /**
+     * Constructs a memory mapped heap file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     */
+    public MappedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+        this.segments = new MappedSegments(getPageChannel(), BufferPool.getPageSize());
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public Page readPage(PageId pid) {
+        try {
+            if (pid instanceof HeapPageId) {
+                HeapPageId hpid = (HeapPageId) pid;
+                long offset = (long) hpid.getPageNumber() * BufferPool.getPageSize();
+                ByteBuffer data = segments.slice(offset, BufferPool.getPageSize());
+                if (data == null) {
+                    throw new IllegalArgumentException("Read past end of table");
+                }
+                HeapPage page = new HeapPage(hpid, data);
+                pageRead(page);
+                return page;
+            } else {
+                throw new Exception("PageId is not the instance of HeapPageId");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    // pages are views over the mapped file already
+    @Override
+    public Page readPage(PageId pid, ByteBuffer frame) {
+        return null;
+    }
+}
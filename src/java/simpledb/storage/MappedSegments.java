@@ -0,0 +1,114 @@
+package simpledb.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * MappedSegments maps a table file read-only into memory in fixed size
+ * segments, so pages can be decoded straight out of the OS page cache without
+ * a read system call or an intermediate copy.
+ * <p>
+ * Segment i maps the file range [i * segmentSize, (i+1) * segmentSize +
+ * overlap), clipped to the file length. The overlap guarantees that any read
+ * of at most overlap bytes that starts inside segment i also ends inside it,
+ * even when pages are not aligned to segment boundaries (BTreeFile's root
+ * pointer page shifts all the other pages). Mappings are extended lazily
+ * when a read falls beyond what is currently mapped, so they follow the file
+ * as it grows.
+ * <p>
+ * Writes still go through the file channel; read-only shared mappings see
+ * them through the page cache.
+ *
+ * @Threadsafe
+ */
+public class MappedSegments {
+
+    /** Default number of bytes covered by a single mapping. */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private final PageChannel channel;
+    private final long segmentSize;
+    private final int overlap;
+
+    // replaced wholesale when a mapping is added or extended
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * @param channel the channel of the file to map
+     * @param overlap the largest read that will be requested, normally the page size
+     */
+    public MappedSegments(PageChannel channel, int overlap) {
+        this(channel, overlap, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param channel the channel of the file to map
+     * @param overlap the largest read that will be requested, normally the page size
+     * @param segmentSize the number of bytes each mapping starts apart
+     */
+    public MappedSegments(PageChannel channel, int overlap, long segmentSize) {
+        if (segmentSize + overlap > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segments must be smaller than 2GB");
+        }
+        this.channel = channel;
+        this.overlap = overlap;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Returns a read-only view of length bytes of the file starting at offset.
+     *
+     * @return the view, or null if the file is shorter than offset + length
+     * @throws IllegalArgumentException if length is larger than the overlap
+     */
+    public ByteBuffer slice(long offset, int length) throws IOException {
+        if (length > overlap) {
+            throw new IllegalArgumentException("read of " + length + " bytes spans mapped segments");
+        }
+        int seg = (int) (offset / segmentSize);
+        int within = (int) (offset - seg * segmentSize);
+
+        MappedByteBuffer[] segs = segments;
+        MappedByteBuffer mapping = seg < segs.length ? segs[seg] : null;
+        if (mapping == null || mapping.capacity() < within + length) {
+            mapping = map(seg, within + length);
+            if (mapping == null) {
+                return null;
+            }
+        }
+
+        ByteBuffer view = mapping.duplicate();
+        view.position(within);
+        view.limit(within + length);
+        return view.slice();
+    }
+
+    /**
+     * (Re)maps segment seg so that at least the first minLength bytes of it
+     * are covered.
+     *
+     * @return the new mapping, or null if the file is not long enough
+     */
+    private synchronized MappedByteBuffer map(int seg, int minLength) throws IOException {
+        MappedByteBuffer[] segs = segments;
+        if (seg < segs.length && segs[seg] != null && segs[seg].capacity() >= minLength) {
+            return segs[seg]; // somebody else got here first
+        }
+
+        FileChannel ch = channel.getChannel();
+        long start = seg * segmentSize;
+        long length = Math.min(segmentSize + overlap, ch.size() - start);
+        if (length < minLength) {
+            return null;
+        }
+
+        MappedByteBuffer mapping = ch.map(FileChannel.MapMode.READ_ONLY, start, length);
+        MappedByteBuffer[] grown = Arrays.copyOf(segs, Math.max(segs.length, seg + 1));
+        grown[seg] = mapping;
+        segments = grown;
+        return mapping;
+    }
+}
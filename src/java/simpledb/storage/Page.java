@@ -9,7 +9,7 @@ import simpledb.transaction.TransactionId;
  * Pages may be "dirty", indicating that they have been modified since they
  * were last written out to disk.
  *
- * For recovery purposes, pages MUST have a single constructor of the form:
+ * For recovery purposes, pages MUST have a constructor of the form:
  *     Page(PageId id, byte[] data)
  */
 public interface Page {
@@ -35,6 +35,20 @@ public interface Page {
    */
   void markDirty(boolean dirty, TransactionId tid);
 
+  /**
+   * Returns the LSN of the log record of the last logged change to this
+   * page, or 0 if none was logged since the page was read. The log must be
+   * on disk up to this record before the page is written.
+   *
+   * @see LogFile#force(long)
+   */
+  long getLsn();
+
+  /**
+   * Sets the LSN of the log record of the last logged change to this page.
+   */
+  void setLsn(long lsn);
+
   /**
    * Generates a byte array representing the contents of this page.
    * Used to serialize this page to disk.
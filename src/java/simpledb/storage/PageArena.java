@@ -0,0 +1,238 @@
+package simpledb.storage;
+
+import simpledb.transaction.TransactionId;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PageArena is the memory the BufferPool reads pages into: direct buffers
+ * allocated once, outside the Java heap, and cut into blocks of one page. A
+ * file that supports it reads a page straight into a block and returns a page
+ * that is a view over the block, see {@link DbFile#readPage(PageId, ByteBuffer)},
+ * so the bytes of cached pages are neither allocated per read nor traced or
+ * copied by the garbage collector.
+ * <p>
+ * Blocks are reference counted. The page table holds a reference while the
+ * page on a block is cached, and every transaction that got the page from
+ * the BufferPool holds one, a pin, until it unpins the page or completes. A
+ * block is only reused once the last reference is gone, so evicting a page
+ * never recycles memory a transaction may still be reading.
+ * <p>
+ * When no block is free, or the page size changed since the arena was
+ * allocated, pages are read onto the heap as before.
+ *
+ * @Threadsafe
+ */
+class PageArena {
+
+    /**
+     * One page of the arena. The generation counts how often the block was
+     * allocated, so that a reference taken without holding one already can
+     * tell whether the block still holds the page it was looked up for.
+     */
+    static final class Block {
+        private final ByteBuffer buffer;
+        private final AtomicInteger refs = new AtomicInteger();
+        private volatile int generation;
+
+        Block(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /** Returns a new buffer over the block, positioned at its start. */
+        ByteBuffer buffer() {
+            return buffer.duplicate();
+        }
+
+        int generation() {
+            return generation;
+        }
+    }
+
+    /**
+     * The pins of a transaction on one page. A transaction may get a page
+     * again after it was evicted and read onto another block, so a pin can
+     * hold several blocks; they are released together once every getPage of
+     * the page is matched by an unpin.
+     */
+    private static final class Pin {
+        int count;
+        final List<Block> blocks = new ArrayList<>(1);
+    }
+
+    private final int pageSize;
+    private final ArrayDeque<Block> free;
+    private final Map<TransactionId, Map<PageId, Pin>> pins = new ConcurrentHashMap<>();
+
+    /**
+     * Allocates an arena of the given number of pages of the current page
+     * size.
+     */
+    PageArena(int pages) {
+        this.pageSize = BufferPool.getPageSize();
+        this.free = new ArrayDeque<>(pages);
+        // a direct buffer holds at most 2GB, larger arenas take several
+        int perChunk = Integer.MAX_VALUE / pageSize;
+        for (int done = 0; done < pages; ) {
+            int n = Math.min(perChunk, pages - done);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(n * pageSize);
+            for (int i = 0; i < n; i++) {
+                chunk.limit((i + 1) * pageSize);
+                chunk.position(i * pageSize);
+                free.push(new Block(chunk.slice()));
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * Takes a free block. The caller holds the only reference to it.
+     *
+     * @return the block, or null if there is no free block of the current
+     *         page size
+     */
+    Block allocate() {
+        if (pageSize != BufferPool.getPageSize()) {
+            return null;
+        }
+        Block b;
+        synchronized (free) {
+            b = free.poll();
+        }
+        if (b != null) {
+            // nobody holds the block, only retain reads these
+            b.generation++;
+            b.refs.set(1);
+        }
+        return b;
+    }
+
+    /**
+     * Drops a reference to a block; the block is free once the last
+     * reference is dropped.
+     */
+    void release(Block b) {
+        if (b.refs.decrementAndGet() == 0) {
+            synchronized (free) {
+                free.push(b);
+            }
+        }
+    }
+
+    /**
+     * Takes a reference to a block that holds a page of the given
+     * generation, unless the block has been freed or reused since.
+     */
+    private boolean retain(Block b, int generation) {
+        while (true) {
+            int n = b.refs.get();
+            if (n == 0) {
+                return false;
+            }
+            if (b.refs.compareAndSet(n, n + 1)) {
+                break;
+            }
+        }
+        if (b.generation != generation) {
+            release(b);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Pins a page for a transaction, and with it the block holding the page,
+     * if any.
+     *
+     * @param b the block of the page, or null if the page is on the heap
+     * @param generation the generation of b when the page was read into it
+     * @return false if b no longer holds the page
+     */
+    boolean pin(TransactionId tid, PageId pid, Block b, int generation) {
+        while (true) {
+            Map<PageId, Pin> held = pins.computeIfAbsent(tid, k -> new HashMap<>());
+            synchronized (held) {
+                if (pins.get(tid) != held) {
+                    // emptied and dropped by unpin meanwhile
+                    continue;
+                }
+                Pin pin = held.get(pid);
+                // a block the transaction holds already cannot have been reused
+                boolean retained = b != null && (pin == null || !pin.blocks.contains(b));
+                if (retained && !retain(b, generation)) {
+                    if (held.isEmpty()) {
+                        pins.remove(tid, held);
+                    }
+                    return false;
+                }
+                if (pin == null) {
+                    pin = new Pin();
+                    held.put(pid, pin);
+                }
+                if (retained) {
+                    pin.blocks.add(b);
+                }
+                pin.count++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drops a pin of a transaction on a page. Does nothing if the
+     * transaction does not have the page pinned. Forgets the page once its
+     * last pin is dropped, and the transaction once it has no pins left, so
+     * transactions that never complete do not pile up entries.
+     */
+    void unpin(TransactionId tid, PageId pid) {
+        Map<PageId, Pin> held = pins.get(tid);
+        if (held == null) {
+            return;
+        }
+        synchronized (held) {
+            Pin pin = held.get(pid);
+            if (pin == null || --pin.count > 0) {
+                return;
+            }
+            for (Block b : pin.blocks) {
+                release(b);
+            }
+            held.remove(pid);
+            if (held.isEmpty()) {
+                pins.remove(tid, held);
+            }
+        }
+    }
+
+    /**
+     * Drops all pins of a transaction.
+     */
+    void unpinAll(TransactionId tid) {
+        Map<PageId, Pin> held = pins.remove(tid);
+        if (held == null) {
+            return;
+        }
+        synchronized (held) {
+            for (Pin pin : held.values()) {
+                for (Block b : pin.blocks) {
+                    release(b);
+                }
+            }
+            held.clear();
+        }
+    }
+
+    /** Returns the number of free blocks. */
+    int free() {
+        synchronized (free) {
+            return free.size();
+        }
+    }
+}
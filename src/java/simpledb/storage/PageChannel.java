@@ -0,0 +1,164 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+
+/**
+ * PageChannel keeps one long-lived FileChannel open for the file backing a
+ * DbFile and performs positional reads and writes against it.
+ * <p>
+ * Positional I/O ({@link FileChannel#read(ByteBuffer, long)} and
+ * {@link FileChannel#write(ByteBuffer, long)}) never touches a shared file
+ * pointer, so many threads may read different pages of the same file at the
+ * same time without serializing on one stream, and a page miss costs a single
+ * read instead of an open/skip/read/close sequence.
+ * <p>
+ * The file is opened read-only until the first write, so reading a page of
+ * a file that does not exist fails instead of creating the file.
+ *
+ * @Threadsafe
+ */
+public class PageChannel {
+
+    private final File f;
+    private volatile FileChannel channel;
+    private volatile boolean writable;
+
+    /**
+     * Creates a channel for the specified file. The underlying file is not
+     * opened until the first read or write.
+     *
+     * @param f the file to read and write pages of
+     */
+    public PageChannel(File f) {
+        this.f = f;
+    }
+
+    /**
+     * Returns the open channel, (re)opening it if necessary. A FileChannel is
+     * closed when a thread blocked in I/O on it is interrupted, so we have to
+     * be able to reopen it for everybody else.
+     *
+     * @param write whether the channel is going to be written to; a
+     *        read-only channel is then replaced by a read-write one
+     */
+    private FileChannel channel(boolean write) throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen() && (writable || !write)) {
+            return ch;
+        }
+        synchronized (this) {
+            ch = channel;
+            if (ch == null || !ch.isOpen() || (write && !writable)) {
+                boolean rw = write || writable;
+                RandomAccessFile raf = new RandomAccessFile(f, rw ? "rw" : "r");
+                if (ch != null) {
+                    // readers still on it retry with the new one
+                    ch.close();
+                }
+                ch = raf.getChannel();
+                writable = rw;
+                channel = ch;
+            }
+            return ch;
+        }
+    }
+
+    /**
+     * Reads bytes starting at the given file offset until the buffer is full
+     * or the end of the file is reached.
+     *
+     * @param dst the buffer to fill
+     * @param offset the file offset to start reading at
+     * @return the number of bytes read, or -1 if offset is at or past the end
+     *         of the file
+     */
+    public int read(ByteBuffer dst, long offset) throws IOException {
+        int start = dst.position();
+        while (true) {
+            try {
+                FileChannel ch = channel(false);
+                while (dst.hasRemaining()) {
+                    int n = ch.read(dst, offset + (dst.position() - start));
+                    if (n == -1) {
+                        break;
+                    }
+                }
+                int total = dst.position() - start;
+                return (total == 0 && dst.hasRemaining()) ? -1 : total;
+            } catch (ClosedByInterruptException e) {
+                throw e;
+            } catch (ClosedChannelException e) {
+                // closed underneath us by another thread's interrupt; retry
+            }
+        }
+    }
+
+    /**
+     * Reads bytes starting at the given file offset into data.
+     *
+     * @return the number of bytes read, or -1 if offset is at or past the end
+     *         of the file
+     */
+    public int read(byte[] data, long offset) throws IOException {
+        return read(ByteBuffer.wrap(data), offset);
+    }
+
+    /**
+     * Writes all remaining bytes of src starting at the given file offset,
+     * extending the file if needed.
+     */
+    public void write(ByteBuffer src, long offset) throws IOException {
+        int start = src.position();
+        while (true) {
+            try {
+                FileChannel ch = channel(true);
+                while (src.hasRemaining()) {
+                    ch.write(src, offset + (src.position() - start));
+                }
+                return;
+            } catch (ClosedByInterruptException e) {
+                throw e;
+            } catch (ClosedChannelException e) {
+                // closed underneath us by another thread's interrupt; retry
+            }
+        }
+    }
+
+    /**
+     * Writes data at the given file offset, extending the file if needed.
+     */
+    public void write(byte[] data, long offset) throws IOException {
+        write(ByteBuffer.wrap(data), offset);
+    }
+
+    /**
+     * Truncates the file to the given size.
+     */
+    public void truncate(long size) throws IOException {
+        channel(true).truncate(size);
+    }
+
+    /**
+     * Returns the underlying channel, opening it for reading if necessary.
+     */
+    public FileChannel getChannel() throws IOException {
+        return channel(false);
+    }
+
+    /**
+     * Closes the underlying channel. A later read or write reopens it.
+     */
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            writable = false;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.transaction.TransactionId;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PageCleaner writes dirty pages of completed transactions of one BufferPool
+ * to disk in the background, so that eviction, which only evicts clean pages,
+ * almost always finds a clean victim instead of having to write a page itself
+ * or failing.
+ * <p>
+ * Every {@link BufferPool#getCleanerInterval()} milliseconds it writes up to
+ * {@link BufferPool#getCleanerBatch()} pages with
+ * {@link BufferPool#cleanPages}. The cleaners of all buffer pools share one
+ * daemon thread. A cleaner does nothing while its pool is not the buffer
+ * pool of the {@link Database}, e.g. after {@link Database#resetBufferPool}:
+ * the pages of a pool that was dropped must not reach the disk, nor the
+ * files of a catalog that replaced its own. It only keeps a weak reference
+ * to the pool, and stops once the pool is collected.
+ */
+class PageCleaner implements Runnable {
+
+    private static final ScheduledExecutorService CLEANER_THREAD = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "simpledb-page-cleaner");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final WeakReference<BufferPool> pool;
+
+    // takes the locks of the cleaner, see BufferPool.cleanPages
+    private final TransactionId tid = new TransactionId();
+
+    // guarded by this
+    private ScheduledFuture<?> future;
+
+    PageCleaner(BufferPool pool) {
+        this.pool = new WeakReference<>(pool);
+    }
+
+    /**
+     * Runs the cleaner every interval milliseconds from now on; 0 stops it.
+     */
+    synchronized void schedule(long interval) {
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+        if (interval > 0) {
+            future = CLEANER_THREAD.scheduleWithFixedDelay(this, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void run() {
+        BufferPool bp = pool.get();
+        if (bp == null) {
+            schedule(0);
+            return;
+        }
+        if (bp != Database.getBufferPool()) {
+            return;
+        }
+        try {
+            bp.cleanPages(tid, bp.getCleanerBatch(), true);
+        } catch (IOException | RuntimeException e) {
+            // the pages stay dirty, eviction writes them if it has to, and a
+            // task that throws would not run again
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package simpledb.storage;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * PageCodec turns the page images of one page class in the log back into
+ * pages, without reflection. The log writes a page as its type code from
+ * {@link PageCodecs}, the ints of {@link PageId#serialize()}, the length of
+ * the data and the data.
+ */
+public interface PageCodec {
+
+    /**
+     * Reads the id of a page, as written from {@link PageId#serialize()}.
+     */
+    PageId readId(DataInput in) throws IOException;
+
+    /**
+     * Returns the page with the given id and data, as getPageData returned
+     * it.
+     */
+    Page decode(PageId pid, byte[] data) throws IOException;
+}
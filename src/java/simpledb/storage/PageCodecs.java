@@ -0,0 +1,137 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeHeaderPage;
+import simpledb.index.BTreeInternalPage;
+import simpledb.index.BTreeLeafPage;
+import simpledb.index.BTreePageId;
+import simpledb.index.BTreeRootPtrPage;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PageCodecs maps the page classes that can appear in the log to one byte
+ * type codes and their {@link PageCodec}s. A log record stores the code of
+ * a page instead of the names of its page and id classes, and recovery
+ * decodes the page with the codec instead of looking up its constructor.
+ * <p>
+ * The page classes of SimpleDb are registered here; other page classes
+ * must be registered with {@link #register} before their pages are logged
+ * or recovered. The codes are part of the log format and must not change.
+ */
+public final class PageCodecs {
+
+    public static final int HEAP_PAGE = 1;
+    public static final int SLOTTED_HEAP_PAGE = 2;
+    public static final int BTREE_LEAF_PAGE = 3;
+    public static final int BTREE_INTERNAL_PAGE = 4;
+    public static final int BTREE_HEADER_PAGE = 5;
+    public static final int BTREE_ROOT_PTR_PAGE = 6;
+
+    private static final Map<Class<? extends Page>, Integer> codes = new ConcurrentHashMap<>();
+    private static final Map<Integer, PageCodec> codecs = new ConcurrentHashMap<>();
+
+    private interface Decoder<I extends PageId> {
+        Page decode(I pid, byte[] data) throws IOException;
+    }
+
+    private static PageCodec heapCodec(Decoder<HeapPageId> decoder) {
+        return new PageCodec() {
+            @Override
+            public PageId readId(DataInput in) throws IOException {
+                int tableId = in.readInt();
+                int pageNo = in.readInt();
+                return new HeapPageId(tableId, pageNo);
+            }
+
+            @Override
+            public Page decode(PageId pid, byte[] data) throws IOException {
+                return decoder.decode((HeapPageId) pid, data);
+            }
+        };
+    }
+
+    private static PageCodec btreeCodec(Decoder<BTreePageId> decoder) {
+        return new PageCodec() {
+            @Override
+            public PageId readId(DataInput in) throws IOException {
+                int tableId = in.readInt();
+                int pageNo = in.readInt();
+                int category = in.readInt();
+                return new BTreePageId(tableId, pageNo, category);
+            }
+
+            @Override
+            public Page decode(PageId pid, byte[] data) throws IOException {
+                return decoder.decode((BTreePageId) pid, data);
+            }
+        };
+    }
+
+    // the key field of the B-tree the page belongs to
+    private static int keyField(BTreePageId pid) {
+        return ((BTreeFile) Database.getCatalog().getDatabaseFile(pid.getTableId())).keyField();
+    }
+
+    static {
+        register(HEAP_PAGE, HeapPage.class, heapCodec(HeapPage::new));
+        register(SLOTTED_HEAP_PAGE, SlottedHeapPage.class, heapCodec(SlottedHeapPage::new));
+        register(BTREE_LEAF_PAGE, BTreeLeafPage.class,
+                btreeCodec((pid, data) -> new BTreeLeafPage(pid, data, keyField(pid))));
+        register(BTREE_INTERNAL_PAGE, BTreeInternalPage.class,
+                btreeCodec((pid, data) -> new BTreeInternalPage(pid, data, keyField(pid))));
+        register(BTREE_HEADER_PAGE, BTreeHeaderPage.class, btreeCodec(BTreeHeaderPage::new));
+        register(BTREE_ROOT_PTR_PAGE, BTreeRootPtrPage.class, btreeCodec(BTreeRootPtrPage::new));
+    }
+
+    private PageCodecs() {
+    }
+
+    /**
+     * Registers the codec of a page class under a type code from 1 to 255.
+     *
+     * @throws IllegalArgumentException if the code is out of range, or
+     *         taken by another codec, or the class has a code already
+     */
+    public static synchronized void register(int code, Class<? extends Page> pageClass, PageCodec codec) {
+        if (code < 1 || code > 255) {
+            throw new IllegalArgumentException("page type code out of range: " + code);
+        }
+        if (codecs.containsKey(code) || codes.containsKey(pageClass)) {
+            throw new IllegalArgumentException("page type code " + code + " or " + pageClass.getName()
+                    + " registered already");
+        }
+        codecs.put(code, codec);
+        codes.put(pageClass, code);
+    }
+
+    /**
+     * Returns the type code of the class of the given page.
+     *
+     * @throws IllegalArgumentException if the class was not registered
+     */
+    public static int code(Page page) {
+        Integer code = codes.get(page.getClass());
+        if (code == null) {
+            throw new IllegalArgumentException("no page codec for " + page.getClass().getName());
+        }
+        return code;
+    }
+
+    /**
+     * Returns the codec registered under the given type code.
+     *
+     * @throws IOException if none is, e.g. because the log is corrupt
+     */
+    public static PageCodec codec(int code) throws IOException {
+        PageCodec codec = codecs.get(code);
+        if (codec == null) {
+            throw new IOException("unknown page type code " + code);
+        }
+        return codec;
+    }
+}
@@ -0,0 +1,156 @@
+package simpledb.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PageDelta is the body of a DELTA log record: the byte ranges of a page
+ * that an update changed, each with its bytes before and after the update.
+ * Inserting a tuple into a HeapPage changes one header byte and the bytes
+ * of its slot, deleting one changes a header byte, and an update of a
+ * B-tree page changes a few entries, so a delta is usually a small fraction
+ * of the two full page images of an UPDATE record.
+ * <p>
+ * {@link #redo} and {@link #undo} apply a delta to the data of the page.
+ * They assume the ranges are in the state before, or after, the update;
+ * the bytes outside them may be in any state, so deltas of the same page
+ * must be redone in log order and undone in reverse log order.
+ * <p>
+ * The format of the body is: the page type code and page id as in an
+ * UPDATE record, the page size, the number of ranges and, for each range,
+ * its offset, its length and its bytes before and after the update.
+ */
+class PageDelta {
+
+    // ranges closer than this are merged, since a range costs 8 bytes
+    private static final int MERGE_GAP = 8;
+
+    final int pageType; // see PageCodecs
+    final PageId pid;
+    final int pageSize;
+    private final int[] offsets;
+    private final byte[][] before;
+    private final byte[][] after;
+
+    private PageDelta(int pageType, PageId pid, int pageSize, int[] offsets, byte[][] before, byte[][] after) {
+        this.pageType = pageType;
+        this.pid = pid;
+        this.pageSize = pageSize;
+        this.offsets = offsets;
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Returns the delta from the given data of a page to the given data of
+     * the same page, or null if they differ in length.
+     */
+    static PageDelta diff(Page page, byte[] beforeData, byte[] afterData) {
+        if (beforeData.length != afterData.length) {
+            return null;
+        }
+        List<int[]> ranges = new ArrayList<>();
+        int i = 0;
+        while (i < afterData.length) {
+            if (beforeData[i] == afterData[i]) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int end = i + 1;
+            // extend the range over differing bytes and short equal gaps
+            for (int j = end; j < afterData.length && j - end < MERGE_GAP; j++) {
+                if (beforeData[j] != afterData[j]) {
+                    end = j + 1;
+                }
+            }
+            ranges.add(new int[] {start, end});
+            i = end;
+        }
+
+        int[] offsets = new int[ranges.size()];
+        byte[][] before = new byte[ranges.size()][];
+        byte[][] after = new byte[ranges.size()][];
+        for (int r = 0; r < ranges.size(); r++) {
+            int[] range = ranges.get(r);
+            offsets[r] = range[0];
+            before[r] = Arrays.copyOfRange(beforeData, range[0], range[1]);
+            after[r] = Arrays.copyOfRange(afterData, range[0], range[1]);
+        }
+        return new PageDelta(PageCodecs.code(page), page.getId(), afterData.length, offsets, before, after);
+    }
+
+    /**
+     * Returns the delta of an UPDATE record: one range over the whole page.
+     */
+    static PageDelta full(Page before, Page after) {
+        byte[] beforeData = before.getPageData();
+        return new PageDelta(PageCodecs.code(after), after.getId(), beforeData.length,
+                new int[] {0}, new byte[][] {beforeData}, new byte[][] {after.getPageData()});
+    }
+
+    /**
+     * Applies the update to the given page data.
+     */
+    void redo(byte[] data) {
+        for (int r = 0; r < offsets.length; r++) {
+            System.arraycopy(after[r], 0, data, offsets[r], after[r].length);
+        }
+    }
+
+    /**
+     * Reverts the update in the given page data.
+     */
+    void undo(byte[] data) {
+        for (int r = offsets.length - 1; r >= 0; r--) {
+            System.arraycopy(before[r], 0, data, offsets[r], before[r].length);
+        }
+    }
+
+    /**
+     * Returns the serialized body of the record.
+     */
+    byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeByte(pageType);
+        LogFile.writePageId(out, pid);
+        out.writeInt(pageSize);
+        out.writeInt(offsets.length);
+        for (int r = 0; r < offsets.length; r++) {
+            out.writeInt(offsets[r]);
+            out.writeInt(after[r].length);
+            out.write(before[r]);
+            out.write(after[r]);
+        }
+    }
+
+    static PageDelta read(DataInput in) throws IOException {
+        int pageType = in.readUnsignedByte();
+        PageId pid = PageCodecs.codec(pageType).readId(in);
+        int pageSize = in.readInt();
+        int n = in.readInt();
+        int[] offsets = new int[n];
+        byte[][] before = new byte[n][];
+        byte[][] after = new byte[n][];
+        for (int r = 0; r < n; r++) {
+            offsets[r] = in.readInt();
+            int length = in.readInt();
+            before[r] = new byte[length];
+            after[r] = new byte[length];
+            in.readFully(before[r]);
+            in.readFully(after[r]);
+        }
+        return new PageDelta(pageType, pid, pageSize, offsets, before, after);
+    }
+}
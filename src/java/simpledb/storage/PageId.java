@@ -32,5 +32,14 @@ public interface PageId {
     boolean equals(Object o);
 
     int getPageNumber();
+
+    /**
+     * @return the kind of page this is, for tables with several kinds of
+     *   pages, e.g. the pgcateg of a BTreePageId; 0 otherwise. Between 0 and
+     *   3, so that the BufferPool can pack it into the key of the page.
+     */
+    default int getCategory() {
+        return 0;
+    }
 }
 
@@ -0,0 +1,386 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PageTable holds the pages of the BufferPool. It is split into shards by
+ * page, each with its own map and its own replacement state, a
+ * {@link Replacer} of the chosen {@link ReplacementPolicy}, so that threads
+ * working on different pages do not all contend on one lock.
+ * <p>
+ * Pages are looked up by a primitive key packing the table id, page number
+ * and category of the PageId, see {@link #key}, in a {@link FrameMap} per
+ * shard. A lookup takes no lock of its own and allocates nothing; what a hit
+ * does to the replacement state is up to the policy. Adding or
+ * removing a page locks the shard of the page; eviction asks the shards for
+ * a victim one at a time, starting with the shard of the page that needs
+ * the room, and only ever evicts clean pages.
+ * <p>
+ * The number of pages is bounded by the capacity across all shards: a new
+ * page first reserves a slot, evicting a page if the table is full.
+ * <p>
+ * A page read into a block of the {@link PageArena} holds a reference to the
+ * block while it is in the table, and a lookup for a transaction pins the
+ * block, so that it is not reused for another page while the transaction
+ * may still read the page.
+ *
+ * @Threadsafe
+ */
+class PageTable {
+
+    /** Maximum number of shards; fewer are used for small tables. */
+    static final int MAX_SHARDS = 16;
+
+    /** Pages per shard below which a table uses fewer shards. */
+    private static final int MIN_SHARD_PAGES = 4;
+
+    /**
+     * A page in the table, along with the state the replacers keep per page.
+     * The replacer fields are guarded by the replacer of the shard, except
+     * where a replacer says otherwise.
+     */
+    static final class Frame {
+        final PageId pid;
+        final long key;
+        volatile Page page;
+        // the block the page was read into, null if it was read onto the heap;
+        // kept until the frame is removed, a page that replaces the page, e.g.
+        // its before image, may be a view over the block as well
+        volatile PageArena.Block block;
+        volatile int generation; // of block when page was read into it
+
+        volatile boolean referenced; // CLOCK reference bit
+        int slot; // index in the CLOCK ring
+        Frame prev, next; // LRU list or 2Q A1in queue
+        volatile boolean hot; // 2Q: in Am rather than A1in
+        int hits; // 2Q: hits while in A1in
+
+        Frame(PageId pid, long key, Page page) {
+            this.pid = pid;
+            this.key = key;
+            this.page = page;
+        }
+    }
+
+    private static final class Shard {
+        final FrameMap frames;
+        final Replacer replacer; // also the lock of the shard
+
+        Shard(int pages, Replacer replacer) {
+            this.frames = new FrameMap(pages);
+            this.replacer = replacer;
+        }
+    }
+
+    private final Shard[] shards;
+    private final int capacity;
+    private final PageArena arena;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param capacity maximum number of pages in the table
+     * @param policy the replacement policy of the shards
+     * @param arena the arena the blocks of pages belong to
+     */
+    PageTable(int capacity, ReplacementPolicy policy, PageArena arena) {
+        this.capacity = capacity;
+        this.arena = arena;
+        int n = Integer.highestOneBit(Math.max(1, Math.min(MAX_SHARDS, capacity / MIN_SHARD_PAGES)));
+        shards = new Shard[n];
+        for (int i = 0; i < n; i++) {
+            int pages = (capacity + n - 1) / n;
+            shards[i] = new Shard(pages, policy.newReplacer(pages));
+        }
+    }
+
+    /**
+     * Returns the key of a page: the table id in the upper 32 bits, then 2
+     * bits of category and 30 bits of page number. Unlike the hashCode of a
+     * PageId, different pages never have the same key.
+     *
+     * @throws IllegalArgumentException if the page number or the category
+     *         do not fit
+     */
+    static long key(PageId pid) {
+        int pageNo = pid.getPageNumber();
+        int category = pid.getCategory();
+        if ((pageNo >>> 30) != 0 || (category >>> 2) != 0) {
+            throw new IllegalArgumentException("page out of range: " + pid);
+        }
+        return ((long) pid.getTableId() << 32) | ((long) category << 30) | pageNo;
+    }
+
+    /**
+     * Spreads the bits of a key; the shard is chosen by the lower bits of the
+     * result, the slot in the FrameMap by the upper bits.
+     */
+    static long mix(long key) {
+        // the finalizer of MurmurHash3
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private Shard shardOf(long key) {
+        return shards[(int) mix(key) & (shards.length - 1)];
+    }
+
+    /**
+     * Returns the page with the given id, or null if it is not in the table.
+     * Counts as a use of the page for replacement.
+     */
+    Page get(PageId pid) {
+        return get(pid, null);
+    }
+
+    /**
+     * Returns the page with the given id pinned for a transaction, or null if
+     * it is not in the table. Counts as a use of the page for replacement.
+     *
+     * @param tid the transaction to pin the page for, or null to not pin it
+     */
+    Page get(PageId pid, TransactionId tid) {
+        long key = key(pid);
+        Shard s = shardOf(key);
+        Frame f = s.frames.get(key);
+        if (f == null) {
+            return null;
+        }
+        s.replacer.hit(f);
+        Page page = f.page;
+        if (tid != null && !arena.pin(tid, pid, f.block, f.generation)) {
+            // evicted just now, and the block already holds another page
+            return null;
+        }
+        return page;
+    }
+
+    /**
+     * Returns the page with the given id, or null if it is not in the table,
+     * without counting it as a use of the page.
+     */
+    Page peek(PageId pid) {
+        long key = key(pid);
+        Frame f = shardOf(key).frames.get(key);
+        return f == null ? null : f.page;
+    }
+
+    boolean contains(PageId pid) {
+        long key = key(pid);
+        return shardOf(key).frames.get(key) != null;
+    }
+
+    /**
+     * Adds a page to the table, unless a page with the same id is in the
+     * table already.
+     *
+     * @return the page in the table with the id of page
+     * @throws DbException if the table is full and all its pages are dirty
+     */
+    Page putIfAbsent(Page page) throws DbException {
+        return putIfAbsent(page, null, null);
+    }
+
+    /**
+     * Adds a page read into a block of the arena to the table, unless a page
+     * with the same id is in the table already, and pins the page in the
+     * table for a transaction. The reference of the caller to the block
+     * passes to the table, or is dropped if the page is not added.
+     *
+     * @param block the block holding page, or null if page is on the heap
+     * @param tid the transaction to pin the page for, or null to not pin it
+     * @return the page in the table with the id of page
+     * @throws DbException if the table is full and all its pages are dirty
+     */
+    Page putIfAbsent(Page page, PageArena.Block block, TransactionId tid) throws DbException {
+        try {
+            return add(page, block, tid, false);
+        } catch (DbException e) {
+            if (block != null) {
+                arena.release(block);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a page to the table, replacing the page with the same id if there
+     * is one.
+     *
+     * @throws DbException if the table is full and all its pages are dirty
+     */
+    void put(Page page) throws DbException {
+        add(page, null, null, true);
+    }
+
+    /**
+     * Replaces the page with the same id as page, if there is one.
+     *
+     * @return true if the page was replaced
+     */
+    boolean replace(Page page) {
+        long key = key(page.getId());
+        Shard s = shardOf(key);
+        synchronized (s.replacer) {
+            Frame f = s.frames.get(key);
+            if (f == null) {
+                return false;
+            }
+            f.page = page;
+            return true;
+        }
+    }
+
+    private Page add(Page page, PageArena.Block block, TransactionId tid, boolean replace) throws DbException {
+        PageId pid = page.getId();
+        long key = key(pid);
+        Shard s = shardOf(key);
+        boolean reserved = false;
+        while (true) {
+            synchronized (s.replacer) {
+                Frame f = s.frames.get(key);
+                if (f != null) {
+                    if (reserved) {
+                        size.decrementAndGet();
+                    }
+                    if (block != null) {
+                        arena.release(block);
+                    }
+                    if (replace) {
+                        f.page = page;
+                    }
+                    s.replacer.hit(f);
+                    // holding the shard, the frame still has its block
+                    if (tid != null) {
+                        arena.pin(tid, pid, f.block, f.generation);
+                    }
+                    return f.page;
+                }
+                if (reserved) {
+                    f = new Frame(pid, key, page);
+                    if (block != null) {
+                        f.block = block;
+                        f.generation = block.generation();
+                    }
+                    if (tid != null) {
+                        arena.pin(tid, pid, f.block, f.generation);
+                    }
+                    // before the frame is published, hits read its state
+                    s.replacer.added(f);
+                    s.frames.put(f);
+                    return page;
+                }
+            }
+            // not holding the shard, eviction locks the shards one by one
+            reserve(s);
+            reserved = true;
+        }
+    }
+
+    /**
+     * Evicts a clean page if the table is full, so that the block of the page
+     * evicted, unless it is pinned, is free for the page to be added next.
+     *
+     * @param pid the page to be added
+     * @return false if the table is full and all its pages are dirty
+     */
+    boolean makeRoom(PageId pid) {
+        return size.get() < capacity || evict(shardOf(key(pid)));
+    }
+
+    private void reserve(Shard home) throws DbException {
+        while (true) {
+            int n = size.get();
+            if (n < capacity) {
+                if (size.compareAndSet(n, n + 1)) {
+                    return;
+                }
+            } else if (!evict(home)) {
+                throw new DbException("have no clean page");
+            }
+        }
+    }
+
+    /**
+     * Evicts a clean page, trying the shards in turn from the given one,
+     * first without and then with force, see {@link Replacer#victim}.
+     *
+     * @return false if there is no clean page to evict
+     */
+    private boolean evict(Shard home) {
+        for (boolean force : new boolean[] {false, true}) {
+            if (evictFrom(home, force)) {
+                return true;
+            }
+            for (Shard s : shards) {
+                if (s != home && evictFrom(s, force)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean evictFrom(Shard s, boolean force) {
+        synchronized (s.replacer) {
+            Frame f = s.replacer.victim(force);
+            if (f == null) {
+                return false;
+            }
+            unlink(s, f, true);
+            return true;
+        }
+    }
+
+    // must hold the lock of s
+    private void unlink(Shard s, Frame f, boolean evicted) {
+        s.frames.remove(f.key);
+        s.replacer.removed(f, evicted);
+        size.decrementAndGet();
+        if (f.block != null) {
+            arena.release(f.block);
+        }
+    }
+
+    /**
+     * Removes the page with the given id from the table.
+     *
+     * @return the page removed, or null if it was not in the table
+     */
+    Page remove(PageId pid) {
+        long key = key(pid);
+        Shard s = shardOf(key);
+        synchronized (s.replacer) {
+            Frame f = s.frames.get(key);
+            if (f == null) {
+                return null;
+            }
+            unlink(s, f, false);
+            return f.page;
+        }
+    }
+
+    /**
+     * Returns the pages in the table. Pages added or removed while this runs
+     * may or may not be included.
+     */
+    List<Page> pages() {
+        List<Page> pages = new ArrayList<>(size.get());
+        for (Shard s : shards) {
+            s.frames.collect(pages);
+        }
+        return pages;
+    }
+
+    int size() {
+        return size.get();
+    }
+}
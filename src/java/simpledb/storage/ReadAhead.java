@@ -0,0 +1,110 @@
+package simpledb.storage;
+
+import simpledb.transaction.TransactionId;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ReadAhead prefetches the pages following the current position of one
+ * sequential scan over a HeapFile, so that CPU work on page N overlaps with
+ * the I/O for pages N+1 ... N+K.
+ * <p>
+ * The scan reports every page it is about to fetch through {@link #access}.
+ * Once two consecutive page numbers have been accessed the scan is considered
+ * sequential and reads for the next {@link BufferPool#getReadAheadWindow()}
+ * pages are handed to a small pool of background threads, which load them
+ * with {@link BufferPool#prefetchPage}. Whether each prefetched page was
+ * still in the buffer pool when the scan reached it is counted as a read-ahead
+ * hit or miss in the BufferPool.
+ * <p>
+ * A prefetch takes a read lock on behalf of the scanning transaction, so a
+ * ReadAhead must be cancelled before that transaction's locks are released;
+ * BufferPool.transactionComplete does this for every ReadAhead still
+ * registered for the transaction.
+ *
+ * @see BufferPool#startReadAhead
+ */
+class ReadAhead {
+
+    private static final ExecutorService IO_THREADS = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "simpledb-read-ahead");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final BufferPool pool;
+    private final TransactionId tid;
+    private final int tableId;
+    private final int window;
+
+    private int lastPage = -2;   // last page accessed by the scan
+    private int nextToIssue = 0; // next page number not handed to the I/O threads yet
+    private final Set<Integer> issued = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> loaded = ConcurrentHashMap.newKeySet();
+
+    // guarded by this; a prefetch holds the monitor while it runs
+    private boolean cancelled = false;
+
+    ReadAhead(BufferPool pool, TransactionId tid, int tableId, int window) {
+        this.pool = pool;
+        this.tid = tid;
+        this.tableId = tableId;
+        this.window = window;
+    }
+
+    TransactionId getTransactionId() {
+        return tid;
+    }
+
+    /**
+     * Called by the scan right before it fetches page pageNo from the buffer
+     * pool. Accounts for a hit or miss if the page was prefetched and issues
+     * reads for the pages after it if the scan is sequential.
+     *
+     * @param pageNo the page the scan is about to fetch
+     * @param numPages the number of pages in the file
+     */
+    void access(int pageNo, int numPages) {
+        if (issued.remove(pageNo)) {
+            if (loaded.remove(pageNo) && pool.isCached(new HeapPageId(tableId, pageNo))) {
+                pool.recordReadAhead(true);
+            } else {
+                pool.recordReadAhead(false);
+            }
+        }
+
+        boolean sequential = pageNo == lastPage + 1;
+        lastPage = pageNo;
+        if (!sequential) {
+            return;
+        }
+
+        int end = Math.min(pageNo + window, numPages - 1);
+        for (int p = Math.max(nextToIssue, pageNo + 1); p <= end; p++) {
+            final int toLoad = p;
+            issued.add(toLoad);
+            IO_THREADS.execute(() -> load(toLoad));
+        }
+        nextToIssue = Math.max(nextToIssue, end + 1);
+    }
+
+    private synchronized void load(int pageNo) {
+        if (cancelled) {
+            return;
+        }
+        if (pool.prefetchPage(tid, new HeapPageId(tableId, pageNo))) {
+            loaded.add(pageNo);
+        }
+    }
+
+    /**
+     * Stops issuing reads. Waits for a prefetch that is running right now, so
+     * no lock is taken for the transaction once this returns.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+    }
+}
@@ -0,0 +1,48 @@
+package simpledb.storage;
+
+/**
+ * The page replacement policies a {@link BufferPool} can use to pick the
+ * page to evict. Whatever the policy, only clean pages are evicted.
+ */
+public enum ReplacementPolicy {
+
+    /**
+     * Evicts the least recently used page. A hit locks the shard of the page
+     * table it is in; a large scan flushes the pool.
+     */
+    LRU {
+        @Override
+        Replacer newReplacer(int pages) {
+            return new LruReplacer();
+        }
+    },
+
+    /**
+     * Approximates LRU with a reference bit per page; hits do not lock. Like
+     * LRU, a large scan flushes the pool.
+     */
+    CLOCK {
+        @Override
+        Replacer newReplacer(int pages) {
+            return new ClockReplacer();
+        }
+    },
+
+    /**
+     * 2Q: pages read once are evicted before pages read again, so scans do
+     * not flush the pages that are used over and over.
+     */
+    TWO_Q {
+        @Override
+        Replacer newReplacer(int pages) {
+            return new TwoQueueReplacer(pages);
+        }
+    };
+
+    /**
+     * Returns the replacement state for a shard of a page table.
+     *
+     * @param pages the number of pages the shard is expected to hold
+     */
+    abstract Replacer newReplacer(int pages);
+}
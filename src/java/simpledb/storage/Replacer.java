@@ -0,0 +1,41 @@
+package simpledb.storage;
+
+/**
+ * The replacement state of one shard of a {@link PageTable}: it tracks the
+ * frames of the shard and picks the page to evict when the table is full.
+ * <p>
+ * The Replacer is also the lock of its shard. All methods but {@link #hit}
+ * are called holding its monitor; hit is called without it, on the lookup
+ * path, so a policy that needs the lock on a hit takes it itself.
+ */
+abstract class Replacer {
+
+    /**
+     * Called when a lookup finds the page of frame f.
+     */
+    abstract void hit(PageTable.Frame f);
+
+    /**
+     * Called when frame f is added to the shard.
+     */
+    abstract void added(PageTable.Frame f);
+
+    /**
+     * Called when frame f is removed from the shard.
+     *
+     * @param evicted true if f was returned by {@link #victim}, false if its
+     *                page was discarded
+     */
+    abstract void removed(PageTable.Frame f, boolean evicted);
+
+    /**
+     * Returns the frame to evict, which must hold a clean page, or null.
+     * Does not remove the frame.
+     * <p>
+     * The PageTable first asks every shard without force, then, if no shard
+     * offered a page, with force. Without force a replacer may keep pages
+     * it rates above what other shards are likely to offer, e.g. pages used
+     * over and over; with force it returns null only if it has no clean page.
+     */
+    abstract PageTable.Frame victim(boolean force);
+}
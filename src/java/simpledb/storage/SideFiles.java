@@ -0,0 +1,50 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * SideFiles ties the side files a HeapFile keeps next to its table file,
+ * those of its {@link FreeSpaceMap} and {@link ZoneMap}, to the lifetime of
+ * the table file. A side file only holds what can be rebuilt from the table
+ * file, so it is deleted whenever the table file may go away:
+ * <ul>
+ * <li>on exit, if the table file is temporary, i.e. in the directory
+ * {@link File#createTempFile} puts files in;</li>
+ * <li>when it is closed after the table file was deleted.</li>
+ * </ul>
+ */
+final class SideFiles {
+
+    private static final Path TEMP_DIR = Paths.get(System.getProperty("java.io.tmpdir")).toAbsolutePath().normalize();
+
+    private SideFiles() {
+    }
+
+    /**
+     * Returns the side file of a table file with the given suffix, and has
+     * it deleted on exit if the table file is temporary.
+     */
+    static File of(File tableFile, String suffix) {
+        File file = new File(tableFile.getPath() + suffix);
+        if (isTemporary(tableFile)) {
+            file.deleteOnExit();
+        }
+        return file;
+    }
+
+    private static boolean isTemporary(File tableFile) {
+        return tableFile.toPath().toAbsolutePath().normalize().startsWith(TEMP_DIR);
+    }
+
+    /**
+     * Called when a side file is closed; deletes it if its table file is
+     * gone.
+     */
+    static void closed(File tableFile, File file) {
+        if (!tableFile.exists()) {
+            file.delete();
+        }
+    }
+}
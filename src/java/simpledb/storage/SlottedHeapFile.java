@@ -0,0 +1,115 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * SlottedHeapFile is a HeapFile whose pages are {@link SlottedHeapPage}s,
+ * which store variable length records. Tables with short strings fit many
+ * more tuples on a page than with the fixed size slots of HeapPage, so
+ * scans read fewer pages. Pages are addressed by HeapPageIds and read and
+ * written through the file channel exactly as for HeapFile.
+ * <p>
+ * Select it for a table by adding the <code>slotted</code> option after the
+ * schema in the catalog file, e.g. <code>names (id int pk, name string) slotted</code>.
+ *
+ * @see SlottedHeapPage
+ * @see simpledb.common.Catalog#loadSchema
+ */
+public class SlottedHeapFile extends HeapFile {
+
+    private static final int UNIT = 16;
+
+    /**
+     * Constructs a slotted heap file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     */
+    public SlottedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public Page readPage(PageId pid) {
+        try {
+            if (pid instanceof HeapPageId) {
+                HeapPageId hpid = (HeapPageId) pid;
+                byte[] data = new byte[BufferPool.getPageSize()];
+                int ret = getPageChannel().read(data, (long) hpid.getPageNumber() * BufferPool.getPageSize());
+                if (ret == -1) {
+                    throw new IllegalArgumentException("Read past end of table");
+                }
+                if (ret < BufferPool.getPageSize()) {
+                    throw new IllegalArgumentException("Unable to read "
+                            + BufferPool.getPageSize() + " bytes from SlottedHeapFile");
+                }
+                SlottedHeapPage page = new SlottedHeapPage(hpid, data);
+                pageRead(page);
+                return page;
+            } else {
+                throw new Exception("PageId is not the instance of HeapPageId");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    @Override
+    Iterator<Tuple> pageIterator(Page page) {
+        return ((SlottedHeapPage) page).iterator();
+    }
+
+    /**
+     * Free space is counted in blocks of {@value #UNIT} bytes.
+     */
+    @Override
+    int freeSpace(Page page) {
+        return ((SlottedHeapPage) page).getFreeSpace() / UNIT;
+    }
+
+    @Override
+    int spaceNeeded(Tuple t) {
+        int size = SlottedHeapPage.SLOT_SIZE + SlottedHeapPage.getRecordSize(t);
+        return (size + UNIT - 1) / UNIT;
+    }
+
+    @Override
+    boolean insertIntoPage(Page page, Tuple t) throws DbException {
+        SlottedHeapPage sp = (SlottedHeapPage) page;
+        if (!sp.hasRoomFor(t)) {
+            return false;
+        }
+        sp.insertTuple(t);
+        return true;
+    }
+
+    @Override
+    void deleteFromPage(Page page, Tuple t) throws DbException {
+        ((SlottedHeapPage) page).deleteTuple(t);
+    }
+
+    @Override
+    Page createEmptyPage(HeapPageId pid) throws IOException {
+        return new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+    }
+
+    @Override
+    Page createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new SlottedHeapPage(pid, data);
+    }
+
+    // SlottedHeapPages work on arrays of their own
+    @Override
+    public Page readPage(PageId pid, ByteBuffer frame) {
+        return null;
+    }
+}
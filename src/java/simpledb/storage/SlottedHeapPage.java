@@ -0,0 +1,478 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.transaction.TransactionId;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * SlottedHeapPage is a page of a {@link SlottedHeapFile}. Unlike HeapPage,
+ * whose slots all have the fixed size of a tuple, it stores variable length
+ * records, so a string only takes as many bytes as it has characters.
+ * <p>
+ * The page starts with a header of two unsigned shorts: the number of entries
+ * in the slot directory, and the offset of the first record byte (0 while
+ * the page holds no records). The slot directory follows the header, one
+ * entry of two unsigned shorts (record offset, record length) per slot, and
+ * grows towards the end of the page. Records are packed at the end of the
+ * page and grow towards the directory. A slot with offset 0 is empty and is
+ * reused by the next insert, so slot numbers, and with them RecordIds, stay
+ * put when records are deleted or the page is compacted.
+ * <p>
+ * A record holds the fields of a tuple one after another: an INT is 4 bytes,
+ * a STRING is an unsigned short length followed by that many bytes. Page
+ * sizes of up to 64KB are supported.
+ * <p>
+ * Like HeapPage, the page decodes tuples only when they are accessed, never
+ * writes to the array it was built from, and copies it on the first write
+ * after setBeforeImage.
+ *
+ * @see SlottedHeapFile
+ * @see HeapPage
+ */
+public class SlottedHeapPage implements Page {
+
+    static final int HEADER_SIZE = 4;
+    static final int SLOT_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    private Tuple[] tuples; // decoded tuples, null until a slot is read
+
+    // the bytes of the page; header, slot directory, free space, records
+    private byte[] data;
+    // true if data is a private array of this page that may be written in place
+    private boolean owned;
+
+    private byte[] oldData;  // never written to once it is the before image
+    private final Object oldDataLock = new Object();
+
+    private TransactionId lastTid;
+    private volatile long lsn; // LSN of the last logged change
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk.
+     * The array is used without copying it and must not change while the
+     * page is in use.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        if (BufferPool.getPageSize() > 1 << 16) {
+            throw new IOException("slotted pages must not be larger than 64KB");
+        }
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        if (data.length < BufferPool.getPageSize()) {
+            throw new IOException("page data is shorter than a page");
+        }
+        this.data = data;
+        this.tuples = new Tuple[getNumSlots()];
+        setBeforeImage();
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * SlottedHeapPage.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()]; //all 0
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public SlottedHeapPage getBeforeImage() {
+        try {
+            byte[] oldDataRef = null;
+            synchronized (oldDataLock) {
+                oldDataRef = oldData;
+            }
+            return new SlottedHeapPage(pid, oldDataRef);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            // no copy, the next write copies data instead of changing it
+            owned = false;
+            oldData = data;
+        }
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    private int getShort(int offset) {
+        return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+    }
+
+    private void putShort(int offset, int value) {
+        data[offset] = (byte) (value >>> 8);
+        data[offset + 1] = (byte) value;
+    }
+
+    /**
+     * @return the number of entries in the slot directory, used or not
+     */
+    public int getNumSlots() {
+        return getShort(0);
+    }
+
+    private int recordStart() {
+        int start = getShort(2);
+        return start == 0 ? BufferPool.getPageSize() : start;
+    }
+
+    private int slotOffset(int i) {
+        return getShort(HEADER_SIZE + i * SLOT_SIZE);
+    }
+
+    private int slotLength(int i) {
+        return getShort(HEADER_SIZE + i * SLOT_SIZE + 2);
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < getNumSlots() && slotOffset(i) != 0;
+    }
+
+    /**
+     * Returns the number of tuples on this page.
+     */
+    public int getNumTuples() {
+        int n = 0;
+        for (int i = 0; i < getNumSlots(); i++) {
+            if (isSlotUsed(i)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of bytes t takes up as a record on this page
+     */
+    public static int getRecordSize(Tuple t) {
+        TupleDesc td = t.getTupleDesc();
+        int size = 0;
+        for (int j = 0; j < td.numFields(); j++) {
+            if (td.getFieldType(j) == Type.STRING_TYPE) {
+                size += 2 + Math.min(((StringField) t.getField(j)).getValue().length(), Type.STRING_LEN);
+            } else {
+                size += td.getFieldType(j).getLen();
+            }
+        }
+        return size;
+    }
+
+    private int freeSlot() {
+        int n = getNumSlots();
+        for (int i = 0; i < n; i++) {
+            if (slotOffset(i) == 0) {
+                return i;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of bytes left for records and their slot directory
+     * entries, counting the space of deleted records that a compaction of
+     * the page would reclaim.
+     */
+    public int getFreeSpace() {
+        int n = getNumSlots();
+        int used = HEADER_SIZE + n * SLOT_SIZE;
+        for (int i = 0; i < n; i++) {
+            used += slotLength(i);
+        }
+        return BufferPool.getPageSize() - used;
+    }
+
+    /**
+     * Returns true if t can be inserted into this page.
+     */
+    public boolean hasRoomFor(Tuple t) {
+        int need = getRecordSize(t);
+        if (freeSlot() == getNumSlots()) {
+            need += SLOT_SIZE;
+        }
+        return need <= getFreeSpace();
+    }
+
+    /**
+     * Decode the tuple in slot i, or return the already decoded one.
+     * @return the tuple, or null if the slot is empty
+     */
+    private Tuple readTuple(int i) {
+        Tuple[] cache = tuples;
+        Tuple t = i < cache.length ? cache[i] : null;
+        if (t != null || !isSlotUsed(i)) {
+            return t;
+        }
+
+        byte[] buf = data;
+        int offset = slotOffset(i);
+        t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, i));
+        for (int j = 0; j < td.numFields(); j++) {
+            t.setField(j, readField(buf, offset, j));
+            offset += fieldLength(buf, offset, j);
+        }
+        if (i < cache.length) {
+            cache[i] = t;
+        }
+        return t;
+    }
+
+    private int fieldLength(byte[] buf, int offset, int j) {
+        if (td.getFieldType(j) == Type.STRING_TYPE) {
+            return 2 + (((buf[offset] & 0xff) << 8) | (buf[offset + 1] & 0xff));
+        }
+        return td.getFieldType(j).getLen();
+    }
+
+    private Field readField(byte[] buf, int offset, int j) {
+        if (td.getFieldType(j) == Type.STRING_TYPE) {
+            int len = ((buf[offset] & 0xff) << 8) | (buf[offset + 1] & 0xff);
+            return new StringField(new String(buf, offset + 2, len), Type.STRING_LEN);
+        }
+        return new IntField(((buf[offset] & 0xff) << 24) | ((buf[offset + 1] & 0xff) << 16)
+                | ((buf[offset + 2] & 0xff) << 8) | (buf[offset + 3] & 0xff));
+    }
+
+    /**
+     * Returns field j of the tuple in slot i, decoding only that field unless
+     * the whole tuple has been decoded already.
+     *
+     * @return the field, or null if the slot is empty
+     * @throws NoSuchElementException if j is out of range
+     */
+    public Field getField(int i, int j) {
+        if (j < 0 || j >= td.numFields()) {
+            throw new NoSuchElementException("no field " + j + " in slot " + i);
+        }
+        Tuple[] cache = tuples;
+        if (i >= 0 && i < cache.length && cache[i] != null) {
+            return cache[i].getField(j);
+        }
+        if (!isSlotUsed(i)) {
+            return null;
+        }
+        byte[] buf = data;
+        int offset = slotOffset(i);
+        for (int k = 0; k < j; k++) {
+            offset += fieldLength(buf, offset, k);
+        }
+        return readField(buf, offset, j);
+    }
+
+    /**
+     * Make data a private array that may be written in place. Callers hold
+     * oldDataLock.
+     */
+    private void ensureOwned() {
+        if (!owned) {
+            data = data.clone();
+            owned = true;
+        }
+    }
+
+    /**
+     * Rewrite the page with all records packed at its end, reclaiming the
+     * space of deleted records. Slot numbers do not change. Callers hold
+     * oldDataLock.
+     */
+    private void compact() {
+        byte[] packed = new byte[BufferPool.getPageSize()];
+        int n = getNumSlots();
+        System.arraycopy(data, 0, packed, 0, HEADER_SIZE + n * SLOT_SIZE);
+        int end = packed.length;
+        for (int i = 0; i < n; i++) {
+            int offset = slotOffset(i);
+            if (offset == 0) {
+                continue;
+            }
+            int len = slotLength(i);
+            end -= len;
+            System.arraycopy(data, offset, packed, end, len);
+            packed[HEADER_SIZE + i * SLOT_SIZE] = (byte) (end >>> 8);
+            packed[HEADER_SIZE + i * SLOT_SIZE + 1] = (byte) end;
+        }
+        data = packed;
+        owned = true;
+        putShort(2, end == packed.length ? 0 : end);
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     * Used to serialize this page to disk.
+     * <p>
+     * This returns the array backing the page without copying it; it must
+     * not be modified. Later changes to the page do not show through it.
+     */
+    public byte[] getPageData() {
+        synchronized (oldDataLock) {
+            // the array escapes, the next change to the page has to copy it
+            owned = false;
+            return data;
+        }
+    }
+
+    /**
+     * Delete the specified tuple from the page. Its slot becomes empty and
+     * its bytes are reclaimed by the next compaction.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     * @param t The tuple to delete
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !rid.getPageId().equals(pid)) {
+            throw new DbException("The tuple not exist in this page");
+        }
+        int i = rid.getTupleNumber();
+        synchronized (oldDataLock) {
+            if (!isSlotUsed(i)) {
+                throw new DbException("The tuple not exist");
+            }
+            ensureOwned();
+            int offset = slotOffset(i);
+            Arrays.fill(data, offset, offset + slotLength(i), (byte) 0);
+            putShort(HEADER_SIZE + i * SLOT_SIZE, 0);
+            putShort(HEADER_SIZE + i * SLOT_SIZE + 2, 0);
+            if (i < tuples.length) {
+                tuples[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Adds the specified tuple to the page; the tuple should be updated to
+     * reflect that it is now stored on this page.
+     * @throws DbException if the page has no room for the tuple or tupledesc
+     *         is mismatch.
+     * @param t The tuple to add.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("UnCorrect TupleDesc,expected " + td);
+        }
+        synchronized (oldDataLock) {
+            if (!hasRoomFor(t)) {
+                throw new DbException("Page have no room for the tuple");
+            }
+            ensureOwned();
+
+            int i = freeSlot();
+            int n = getNumSlots();
+            int len = getRecordSize(t);
+            int dirEnd = HEADER_SIZE + Math.max(n, i + 1) * SLOT_SIZE;
+            if (recordStart() - len < dirEnd) {
+                compact();
+            }
+            int offset = recordStart() - len;
+            writeRecord(offset, t);
+
+            if (i == n) {
+                putShort(0, n + 1);
+                if (tuples.length <= i) {
+                    tuples = Arrays.copyOf(tuples, Math.max(8, i * 2));
+                }
+            }
+            putShort(2, offset);
+            putShort(HEADER_SIZE + i * SLOT_SIZE, offset);
+            putShort(HEADER_SIZE + i * SLOT_SIZE + 2, len);
+
+            t.setRecordId(new RecordId(pid, i));
+            tuples[i] = t;
+        }
+    }
+
+    /**
+     * Serialize the fields of t at offset. Strings are cut to STRING_LEN
+     * characters and written one byte per character, as StringField does.
+     */
+    private void writeRecord(int offset, Tuple t) {
+        for (int j = 0; j < td.numFields(); j++) {
+            Field f = t.getField(j);
+            if (td.getFieldType(j) == Type.STRING_TYPE) {
+                String s = ((StringField) f).getValue();
+                int len = Math.min(s.length(), Type.STRING_LEN);
+                putShort(offset, len);
+                offset += 2;
+                for (int k = 0; k < len; k++) {
+                    data[offset++] = (byte) s.charAt(k);
+                }
+            } else {
+                int v = ((IntField) f).getValue();
+                data[offset++] = (byte) (v >>> 24);
+                data[offset++] = (byte) (v >>> 16);
+                data[offset++] = (byte) (v >>> 8);
+                data[offset++] = (byte) v;
+            }
+        }
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.lastTid = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return lastTid;
+    }
+
+    public long getLsn() {
+        return lsn;
+    }
+
+    public void setLsn(long lsn) {
+        this.lsn = lsn;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on
+     * this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                int n = getNumSlots();
+                while (index < n && !isSlotUsed(index)) {
+                    index++;
+                }
+                return index < n;
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return readTuple(index++);
+            }
+        };
+    }
+}
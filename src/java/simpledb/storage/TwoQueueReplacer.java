@@ -0,0 +1,123 @@
+package simpledb.storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * 2Q replacement (Johnson and Shasha, VLDB 1994). A page read for the first
+ * time goes to a small FIFO queue, A1in; the ids of pages evicted from A1in
+ * are remembered in A1out. A page that is read again while its id is in
+ * A1out goes to the main queue, Am, managed by CLOCK here so that its hits
+ * do not lock. A scan reads every page once, so its pages cycle through
+ * A1in without pushing the pages of Am out.
+ * <p>
+ * A scan much larger than the pool also pushes the ids of the pages used in
+ * between scans out of A1out, so those would never reach Am. Unlike the
+ * paper, a page in A1in also goes to Am on its second hit there; the first
+ * is not enough, it may be the getPage of a page loaded by read-ahead.
+ */
+class TwoQueueReplacer extends Replacer {
+
+    private final PageTable.Frame in = new PageTable.Frame(null, 0, null);
+    private int inSize = 0;
+    private final int maxIn;
+    private final int maxMain;
+
+    private final ClockReplacer main = new ClockReplacer();
+
+    private final LinkedHashSet<PageId> out = new LinkedHashSet<>();
+    private final int maxOut;
+
+    /**
+     * @param pages the number of pages the shard is expected to hold
+     */
+    TwoQueueReplacer(int pages) {
+        in.next = in;
+        in.prev = in;
+        // the sizes the paper recommends
+        maxIn = Math.max(1, pages / 4);
+        maxMain = Math.max(1, pages - maxIn);
+        maxOut = Math.max(1, pages / 2);
+    }
+
+    @Override
+    void hit(PageTable.Frame f) {
+        if (f.hot) {
+            main.hit(f);
+            return;
+        }
+        synchronized (this) {
+            // f may have been removed, or moved, before we got the lock
+            if (!f.hot && f.next != null && ++f.hits >= 2) {
+                unlinkIn(f);
+                f.hot = true;
+                main.added(f);
+            }
+        }
+    }
+
+    @Override
+    void added(PageTable.Frame f) {
+        f.hot = out.remove(f.pid);
+        if (f.hot) {
+            main.added(f);
+        } else {
+            f.hits = 0;
+            f.next = in.next;
+            f.prev = in;
+            in.next.prev = f;
+            in.next = f;
+            inSize++;
+        }
+    }
+
+    @Override
+    void removed(PageTable.Frame f, boolean evicted) {
+        if (f.hot) {
+            main.removed(f, evicted);
+            return;
+        }
+        unlinkIn(f);
+        if (evicted) {
+            out.add(f.pid);
+            if (out.size() > maxOut) {
+                Iterator<PageId> oldest = out.iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        }
+    }
+
+    @Override
+    PageTable.Frame victim(boolean force) {
+        PageTable.Frame f = null;
+        if (inSize > maxIn) {
+            f = oldestClean();
+        }
+        // shards fill unevenly, unforced Am only gives up pages beyond its share
+        if (f == null && (force || main.size() > maxMain)) {
+            f = main.victim(force);
+        }
+        if (f == null && force) {
+            f = oldestClean();
+        }
+        return f;
+    }
+
+    private void unlinkIn(PageTable.Frame f) {
+        f.prev.next = f.next;
+        f.next.prev = f.prev;
+        f.prev = null;
+        f.next = null;
+        inSize--;
+    }
+
+    private PageTable.Frame oldestClean() {
+        for (PageTable.Frame f = in.prev; f != in; f = f.prev) {
+            if (f.page.isDirty() == null) {
+                return f;
+            }
+        }
+        return null;
+    }
+}
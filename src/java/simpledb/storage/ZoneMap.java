@@ -0,0 +1,335 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * ZoneMap keeps, for every page of a HeapFile, the smallest and largest
+ * value of each INT column of the tuples on the page, so that a scan with a
+ * predicate on such a column can skip pages that cannot contain a match
+ * without fetching them.
+ * <p>
+ * Unlike the {@link FreeSpaceMap}, whose entries are hints, a zone map entry
+ * must never be narrower than the tuples on its page, or a scan would miss
+ * tuples. The entries are kept conservative:
+ * <ul>
+ * <li>an insert widens the entry of its page right away; a delete leaves it
+ * alone, since an abort brings the tuple back from disk. Entries shrink when
+ * the page is written to the table file;</li>
+ * <li>before a page is written, the union of its old entry and the entry of
+ * the new page contents is saved, and the exact entry only after the write.
+ * A crash in between leaves an entry that covers both versions of the
+ * page.</li>
+ * </ul>
+ * An entry is unknown (never used to skip a page) until the page has been
+ * read or written once. Entries are saved to the side file <code>&lt;table
+ * file&gt;.zmap</code>: a magic number and the number of INT columns,
+ * followed by one fixed size record per page. Tools that create table files
+ * remove it with {@link #discard}. The side file goes away with the table
+ * file, see {@link SideFiles}.
+ *
+ * @Threadsafe
+ */
+public class ZoneMap {
+
+    private static final int MAGIC = 0x5a4d4150; // "ZMAP"
+    private static final int HEADER_SIZE = 8;
+    private static final String SUFFIX = ".zmap";
+
+    private static final byte UNKNOWN = 0;
+    private static final byte EMPTY = 1;
+    private static final byte RANGE = 2;
+
+    /**
+     * The summary of the tuples on one page.
+     */
+    static class Entry {
+        byte state = EMPTY;
+        final int[] min;
+        final int[] max;
+
+        Entry(int columns) {
+            min = new int[columns];
+            max = new int[columns];
+        }
+    }
+
+    private final File tableFile;
+    private final File file;
+    private final PageChannel channel;
+    private final int[] columns; // the INT fields of the table
+    private final int recordSize;
+
+    private boolean headerValid = false;
+    private byte[] states; // null until loaded
+    private int[] mins;
+    private int[] maxs;
+
+    /**
+     * @param tableFile the table file the map describes
+     * @param td the schema of the table
+     */
+    ZoneMap(File tableFile, TupleDesc td) {
+        this.tableFile = tableFile;
+        this.file = SideFiles.of(tableFile, SUFFIX);
+        this.channel = new PageChannel(file);
+        int n = 0;
+        int[] cols = new int[td.numFields()];
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                cols[n++] = i;
+            }
+        }
+        this.columns = Arrays.copyOf(cols, n);
+        this.recordSize = 1 + 8 * n;
+    }
+
+    private static File sideFile(File tableFile) {
+        return new File(tableFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Removes the zone map of a table file, e.g. because the table file is
+     * being rewritten from scratch.
+     */
+    public static void discard(File tableFile) {
+        sideFile(tableFile).delete();
+    }
+
+    private void load() {
+        if (states != null) {
+            return;
+        }
+        allocate(16);
+        // checked on the file, opening the channel would create it
+        if (file.length() < HEADER_SIZE) {
+            return;
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != columns.length) {
+                return;
+            }
+            headerValid = true;
+            int pages = (int) ((file.length() - HEADER_SIZE) / recordSize);
+            ByteBuffer buf = ByteBuffer.allocate(pages * recordSize);
+            channel.read(buf, HEADER_SIZE);
+            buf.flip();
+            allocate(Math.max(16, pages));
+            for (int p = 0; p < pages; p++) {
+                states[p] = buf.get();
+                for (int c = 0; c < columns.length; c++) {
+                    mins[p * columns.length + c] = buf.getInt();
+                    maxs[p * columns.length + c] = buf.getInt();
+                }
+            }
+        } catch (IOException e) {
+            // no usable map, every page is unknown
+            headerValid = false;
+            allocate(16);
+        }
+    }
+
+    private void allocate(int pages) {
+        states = new byte[pages];
+        mins = new int[pages * columns.length];
+        maxs = new int[pages * columns.length];
+    }
+
+    private void ensureCapacity(int pageNo) {
+        if (pageNo >= states.length) {
+            int pages = Math.max(pageNo + 1, states.length * 2);
+            states = Arrays.copyOf(states, pages);
+            mins = Arrays.copyOf(mins, pages * columns.length);
+            maxs = Arrays.copyOf(maxs, pages * columns.length);
+        }
+    }
+
+    /**
+     * Returns the entry for a page with the given tuples.
+     */
+    Entry summarize(Iterator<Tuple> tuples) {
+        Entry e = new Entry(columns.length);
+        while (tuples.hasNext()) {
+            include(e, tuples.next());
+        }
+        return e;
+    }
+
+    private void include(Entry e, Tuple t) {
+        for (int c = 0; c < columns.length; c++) {
+            int v = ((IntField) t.getField(columns[c])).getValue();
+            if (e.state != RANGE || v < e.min[c]) {
+                e.min[c] = v;
+            }
+            if (e.state != RANGE || v > e.max[c]) {
+                e.max[c] = v;
+            }
+        }
+        e.state = RANGE;
+    }
+
+    private Entry get(int pageNo) {
+        Entry e = new Entry(columns.length);
+        e.state = pageNo < states.length ? states[pageNo] : UNKNOWN;
+        for (int c = 0; c < columns.length && e.state == RANGE; c++) {
+            e.min[c] = mins[pageNo * columns.length + c];
+            e.max[c] = maxs[pageNo * columns.length + c];
+        }
+        return e;
+    }
+
+    private void set(int pageNo, Entry e) {
+        ensureCapacity(pageNo);
+        states[pageNo] = e.state;
+        for (int c = 0; c < columns.length; c++) {
+            mins[pageNo * columns.length + c] = e.min[c];
+            maxs[pageNo * columns.length + c] = e.max[c];
+        }
+    }
+
+    private void save(int pageNo, Entry e) throws IOException {
+        if (!headerValid) {
+            // start over, records of an unusable file must not be picked up
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(columns.length).flip();
+            channel.write(header, 0);
+            headerValid = true;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(recordSize);
+        buf.put(e.state);
+        for (int c = 0; c < columns.length; c++) {
+            buf.putInt(e.min[c]).putInt(e.max[c]);
+        }
+        buf.flip();
+        channel.write(buf, HEADER_SIZE + (long) pageNo * recordSize);
+    }
+
+    /**
+     * Records that t was inserted into page pageNo.
+     */
+    synchronized void inserted(int pageNo, Tuple t) {
+        load();
+        Entry e = get(pageNo);
+        if (e.state != UNKNOWN) {
+            include(e, t);
+            set(pageNo, e);
+        }
+    }
+
+    /**
+     * Called with every page read from the table file, to fill in unknown
+     * entries.
+     */
+    synchronized void pageRead(int pageNo, Iterator<Tuple> tuples) throws IOException {
+        load();
+        if (get(pageNo).state == UNKNOWN) {
+            Entry e = summarize(tuples);
+            set(pageNo, e);
+            save(pageNo, e);
+        }
+    }
+
+    /**
+     * Called before page pageNo is written to the table file with tuples
+     * summarized by e.
+     */
+    synchronized void beforeWrite(int pageNo, Entry e) throws IOException {
+        load();
+        Entry old = get(pageNo);
+        if (old.state == UNKNOWN) {
+            // the page may still be on disk with other contents
+            return;
+        }
+        if (e.state == EMPTY || (old.state == RANGE && covers(old, e))) {
+            return;
+        }
+        Entry union = get(pageNo);
+        if (e.state == RANGE) {
+            for (int c = 0; c < columns.length; c++) {
+                if (union.state != RANGE || e.min[c] < union.min[c]) {
+                    union.min[c] = e.min[c];
+                }
+                if (union.state != RANGE || e.max[c] > union.max[c]) {
+                    union.max[c] = e.max[c];
+                }
+            }
+            union.state = RANGE;
+        }
+        set(pageNo, union);
+        save(pageNo, union);
+    }
+
+    private boolean covers(Entry outer, Entry inner) {
+        for (int c = 0; c < columns.length; c++) {
+            if (inner.min[c] < outer.min[c] || inner.max[c] > outer.max[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called after page pageNo was written to the table file with tuples
+     * summarized by e.
+     */
+    synchronized void afterWrite(int pageNo, Entry e) throws IOException {
+        load();
+        set(pageNo, e);
+        save(pageNo, e);
+    }
+
+    /**
+     * Closes the side file, and deletes it if the table file was deleted. A
+     * later read or write opens it again.
+     */
+    synchronized void close() throws IOException {
+        channel.close();
+        SideFiles.closed(tableFile, file);
+    }
+
+    /**
+     * Returns true if no tuple on page pageNo can satisfy p.
+     */
+    synchronized boolean canSkip(int pageNo, Predicate p) {
+        load();
+        Entry e = get(pageNo);
+        if (e.state == EMPTY) {
+            return true;
+        }
+        if (e.state != RANGE || !(p.getOperand() instanceof IntField)) {
+            return false;
+        }
+        int c = Arrays.binarySearch(columns, p.getField());
+        if (c < 0) {
+            return false;
+        }
+        int v = ((IntField) p.getOperand()).getValue();
+        int min = e.min[c];
+        int max = e.max[c];
+        switch (p.getOp()) {
+            case EQUALS:
+                return v < min || v > max;
+            case GREATER_THAN:
+                return max <= v;
+            case GREATER_THAN_OR_EQ:
+                return max < v;
+            case LESS_THAN:
+                return min >= v;
+            case LESS_THAN_OR_EQ:
+                return min > v;
+            case NOT_EQUALS:
+                return min == v && max == v;
+            default:
+                return false;
+        }
+    }
+}
@@ -50,11 +50,14 @@ public class Transaction {
                 Database.getLogFile().logAbort(tid); //does rollback too
             } 
 
+            // a NO-FORCE commit logs its commit record before the locks go
+            boolean logCommit = !abort && Database.getBufferPool().getForceOnCommit();
+
             // Release locks and flush pages if needed
             Database.getBufferPool().transactionComplete(tid, !abort); // release locks
 
             // write commit log record
-            if (!abort) {
+            if (logCommit) {
             	Database.getLogFile().logCommit(tid);
             }
 
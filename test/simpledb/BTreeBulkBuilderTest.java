@@ -0,0 +1,166 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.execution.IndexPredicate;
+import simpledb.execution.Predicate.Op;
+import simpledb.index.*;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BTreeBulkBuilderTest extends SimpleDbTestBase {
+	private TransactionId tid;
+	private File file;
+
+	/**
+	 * Set up initial resources for each unit test.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		tid = new TransactionId();
+		file = File.createTempFile("btreebulk", ".dat");
+		file.deleteOnExit();
+	}
+
+	@After
+	public void tearDown() {
+		Database.getBufferPool().transactionComplete(tid);
+	}
+
+	private BTreeFile build(List<List<Integer>> tuples, int rows, double fillFactor, int runSize)
+			throws Exception {
+		HeapFile source = SystemTestUtil.createRandomHeapFile(2, rows, 1000, null, tuples);
+		BTreeBulkBuilder builder = new BTreeBulkBuilder(file, source.getTupleDesc(), 0);
+		builder.setFillFactor(fillFactor);
+		builder.setRunSize(runSize);
+		BTreeFile bf = builder.build(tid, source);
+		Database.getCatalog().addTable(bf, SystemTestUtil.getUUID());
+		return bf;
+	}
+
+	/**
+	 * Scans the tree, checking that the keys come out in order.
+	 */
+	private List<List<Integer>> scan(BTreeFile bf) throws Exception {
+		List<List<Integer>> found = new ArrayList<>();
+		DbFileIterator it = bf.iterator(tid);
+		it.open();
+		int prev = Integer.MIN_VALUE;
+		while (it.hasNext()) {
+			List<Integer> t = SystemTestUtil.tupleToList(it.next());
+			assertTrue(t.get(0) >= prev);
+			prev = t.get(0);
+			found.add(t);
+		}
+		it.close();
+		return found;
+	}
+
+	private static List<List<Integer>> sorted(List<List<Integer>> tuples) {
+		List<List<Integer>> copy = new ArrayList<>(tuples);
+		copy.sort(Comparator.comparing((List<Integer> t) -> t.get(0)).thenComparing(t -> t.get(1)));
+		return copy;
+	}
+
+	/**
+	 * A build that spills sorted runs yields a valid tree with all tuples.
+	 */
+	@Test
+	public void buildWithRuns() throws Exception {
+		List<List<Integer>> tuples = new ArrayList<>();
+		BTreeFile bf = build(tuples, 20000, 1.0, 3000);
+		BTreeChecker.checkRep(bf, tid, new HashMap<>(), true);
+		assertEquals(sorted(tuples), sorted(scan(bf)));
+
+		// full leaves, plus the internal pages
+		int leaves = (20000 + BTreeUtility.getNumTuplesPerPage(2) - 1) / BTreeUtility.getNumTuplesPerPage(2);
+		assertTrue(bf.numPages() >= leaves);
+		assertTrue(bf.numPages() <= leaves + 2);
+	}
+
+	/**
+	 * A lower fill factor leaves room on the pages, and inserts into the
+	 * built tree keep it valid.
+	 */
+	@Test
+	public void fillFactor() throws Exception {
+		List<List<Integer>> tuples = new ArrayList<>();
+		// small enough for the whole tree to stay in the buffer pool
+		BTreeFile bf = build(tuples, 5000, 0.5, BTreeBulkBuilder.DEFAULT_RUN_SIZE);
+		BTreeChecker.checkRep(bf, tid, new HashMap<>(), true);
+		int leaves = 5000 / (BTreeUtility.getNumTuplesPerPage(2) / 2);
+		assertTrue(bf.numPages() >= leaves);
+
+		for (int i = 0; i < 200; i++) {
+			Database.getBufferPool().insertTuple(tid, bf.getId(), BTreeUtility.getBTreeTuple(new int[] {i * 5, i}));
+			tuples.add(Arrays.asList(i * 5, i));
+		}
+		BTreeChecker.checkRep(bf, tid, new HashMap<>(), true);
+		assertEquals(sorted(tuples), sorted(scan(bf)));
+	}
+
+	/**
+	 * Index lookups find every tuple with the key.
+	 */
+	@Test
+	public void indexLookup() throws Exception {
+		List<List<Integer>> tuples = new ArrayList<>();
+		BTreeFile bf = build(tuples, 5000, 0.8, 1000);
+		for (int key : new int[] {tuples.get(0).get(0), tuples.get(4999).get(0), 500}) {
+			int expected = 0;
+			for (List<Integer> t : tuples) {
+				if (t.get(0) == key) {
+					expected++;
+				}
+			}
+			DbFileIterator it = bf.indexIterator(tid, new IndexPredicate(Op.EQUALS, new IntField(key)));
+			it.open();
+			int found = 0;
+			while (it.hasNext()) {
+				assertEquals(key, ((IntField) it.next().getField(0)).getValue());
+				found++;
+			}
+			it.close();
+			assertEquals(expected, found);
+		}
+	}
+
+	/**
+	 * A small input gives a single leaf as root, an empty input an empty tree.
+	 */
+	@Test
+	public void smallInputs() throws Exception {
+		List<List<Integer>> tuples = new ArrayList<>();
+		BTreeFile bf = build(tuples, 10, 1.0, 4);
+		assertEquals(1, bf.numPages());
+		assertEquals(sorted(tuples), sorted(scan(bf)));
+
+		// a new file, pages of the first tree are in the buffer pool
+		file = File.createTempFile("btreebulk", ".dat");
+		file.deleteOnExit();
+		tuples.clear();
+		bf = build(tuples, 0, 1.0, 4);
+		assertTrue(scan(bf).isEmpty());
+		Database.getBufferPool().insertTuple(tid, bf.getId(), BTreeUtility.getBTreeTuple(new int[] {1, 2}));
+		assertEquals(Collections.singletonList(Arrays.asList(1, 2)), scan(bf));
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(BTreeBulkBuilderTest.class);
+	}
+}
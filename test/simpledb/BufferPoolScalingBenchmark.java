@@ -0,0 +1,82 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.Random;
+
+/**
+ * Measures the throughput of BufferPool.getPage hits, i.e. pages that are in
+ * the buffer pool already, as the number of threads calling it grows. Each
+ * thread runs its own transaction and takes read locks only, so the threads
+ * never wait for each other's locks; what limits the scaling is contention
+ * inside the buffer pool.
+ * <p>
+ * Not a unit test; run with
+ * <pre>
+ *   java -cp bin/src:bin/test:lib/* simpledb.BufferPoolScalingBenchmark [pages] [gets] [maxThreads]
+ * </pre>
+ */
+public class BufferPoolScalingBenchmark {
+
+    static double run(int threads, int gets, HeapFile hf) throws InterruptedException {
+        int numPages = hf.numPages();
+        TransactionId[] tids = new TransactionId[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final TransactionId tid = new TransactionId();
+            final long seed = t;
+            tids[t] = tid;
+            workers[t] = new Thread(() -> {
+                Random r = new Random(seed);
+                try {
+                    for (int i = 0; i < gets; i++) {
+                        HeapPageId pid = new HeapPageId(hf.getId(), r.nextInt(numPages));
+                        Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread w : workers) {
+            w.start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (TransactionId tid : tids) {
+            Database.getBufferPool().transactionComplete(tid);
+        }
+
+        double perSecond = (double) threads * gets / seconds;
+        System.out.printf("%3d threads: %10.0f gets/s%n", threads, perSecond);
+        return perSecond;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int gets = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors() * 2;
+
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, pages * rowsPerPage, null, null);
+        // room for every page, so that every get after the first round hits
+        Database.resetBufferPool(hf.numPages());
+        System.out.println(hf.numPages() + " pages, " + Runtime.getRuntime().availableProcessors() + " processors");
+
+        run(1, gets, hf); // warm up, loads the pages
+        double single = run(1, gets, hf);
+        for (int threads = 2; threads <= maxThreads; threads *= 2) {
+            double perSecond = run(threads, gets, hf);
+            System.out.printf("     scaling x%.2f%n", perSecond / single);
+        }
+    }
+}
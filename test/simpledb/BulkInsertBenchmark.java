@@ -0,0 +1,65 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.BulkInsert;
+import simpledb.execution.Insert;
+import simpledb.execution.OpIterator;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+
+import java.io.File;
+
+/**
+ * Compares the throughput of INSERT ... SELECT through the Insert operator,
+ * which inserts tuple by tuple through the BufferPool, against the BulkInsert
+ * operator, which appends packed pages to the file, including the commit.
+ * <p>
+ * Not a unit test; run with
+ * <pre>
+ *   java -cp bin/src:bin/test:lib/* simpledb.BulkInsertBenchmark [rows] [rounds]
+ * </pre>
+ */
+public class BulkInsertBenchmark {
+
+    interface InsertFactory {
+        OpIterator create(Transaction t, OpIterator child, int tableId) throws Exception;
+    }
+
+    static double run(String name, HeapFile source, InsertFactory factory) throws Exception {
+        File f = File.createTempFile("bulkbench", ".dat");
+        f.deleteOnExit();
+        HeapFile target = Utility.createEmptyHeapFile(f.getAbsolutePath(), source.getTupleDesc().numFields());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        long start = System.nanoTime();
+        Transaction t = new Transaction();
+        t.start();
+        OpIterator insert = factory.create(t, new SeqScan(t.getId(), source.getId()), target.getId());
+        insert.open();
+        int count = ((IntField) insert.next().getField(0)).getValue();
+        insert.close();
+        t.commit();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-8s %8d tuples, %6d pages in %8.3f s, %10.0f tuples/s%n",
+                name, count, target.numPages(), seconds, count / seconds);
+        return seconds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        HeapFile source = SystemTestUtil.createRandomHeapFile(2, rows, null, null);
+        System.out.println("source table with " + rows + " tuples, " + source.numPages() + " pages");
+
+        for (int i = 0; i < rounds; i++) {
+            double before = run("insert", source, (t, child, tableId) -> new Insert(t.getId(), child, tableId));
+            double after = run("bulk", source, (t, child, tableId) -> new BulkInsert(t.getId(), child, tableId));
+            System.out.printf("speedup x%.2f%n", before / after);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.BulkInsert;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BulkLoadTest extends SimpleDbTestBase {
+    private static final int PAGES = 10;
+
+    private File file;
+    private HeapFile hf;
+    private int rowsPerPage;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        file = File.createTempFile("bulk", ".dat");
+        file.deleteOnExit();
+        hf = Utility.createEmptyHeapFile(file.getAbsolutePath(), 2);
+    }
+
+    private List<List<Integer>> load(Transaction t, int rows) throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        BulkLoader loader = hf.bulkLoader(t.getId(), 4);
+        for (int i = 0; i < rows; i++) {
+            loader.add(Utility.getHeapTuple(i, 2));
+            tuples.add(Arrays.asList(i, i));
+        }
+        assertEquals(rows, loader.finish());
+        return tuples;
+    }
+
+    private List<List<Integer>> commitRows(int first, int rows) throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        Transaction t = new Transaction();
+        t.start();
+        for (int i = first; i < first + rows; i++) {
+            Database.getBufferPool().insertTuple(t.getId(), hf.getId(), Utility.getHeapTuple(i, 2));
+            tuples.add(Arrays.asList(i, i));
+        }
+        t.commit();
+        return tuples;
+    }
+
+    /**
+     * Loaded tuples are packed into full pages, locked by the loading
+     * transaction and visible to others once it commits.
+     */
+    @Test public void loadAndCommit() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        List<List<Integer>> tuples = load(t, PAGES * rowsPerPage);
+        // appended after the empty first page
+        assertEquals(PAGES + 1, hf.numPages());
+        for (int i = 1; i <= PAGES; i++) {
+            assertTrue(Database.getBufferPool().holdsLock(t.getId(), new HeapPageId(hf.getId(), i)));
+        }
+        t.commit();
+
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * Record ids of loaded tuples point at the page they were written to.
+     */
+    @Test public void recordIds() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        BulkLoader loader = hf.bulkLoader(t.getId(), 2);
+        List<Tuple> added = new ArrayList<>();
+        for (int i = 0; i < 3 * rowsPerPage; i++) {
+            Tuple tup = Utility.getHeapTuple(i, 2);
+            loader.add(tup);
+            added.add(tup);
+        }
+        loader.finish();
+        t.commit();
+
+        for (int i = 0; i < added.size(); i++) {
+            RecordId rid = added.get(i).getRecordId();
+            assertEquals(1 + i / rowsPerPage, rid.getPageId().getPageNumber());
+            assertEquals(i % rowsPerPage, rid.getTupleNumber());
+        }
+    }
+
+    /**
+     * Aborting the loading transaction leaves the existing tuples only.
+     */
+    @Test public void abort() throws Exception {
+        List<List<Integer>> committed = commitRows(-10, 10);
+
+        Transaction t = new Transaction();
+        t.start();
+        load(t, PAGES * rowsPerPage);
+        t.transactionComplete(true);
+
+        SystemTestUtil.matchTuples(hf, committed);
+    }
+
+    /**
+     * Recovery undoes the load of a transaction that did not commit.
+     */
+    @Test public void recover() throws Exception {
+        List<List<Integer>> committed = commitRows(-10, 10);
+
+        Transaction t = new Transaction();
+        t.start();
+        load(t, PAGES * rowsPerPage);
+
+        Database.reset();
+        hf = Utility.openHeapFile(2, file);
+        Database.getLogFile().recover();
+
+        SystemTestUtil.matchTuples(hf, committed);
+    }
+
+    /**
+     * The BulkInsert operator loads all tuples of its child.
+     */
+    @Test public void bulkInsert() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(2, 3 * rowsPerPage + 1, null, tuples);
+
+        Transaction t = new Transaction();
+        t.start();
+        BulkInsert insert = new BulkInsert(t.getId(), new SeqScan(t.getId(), source.getId()), hf.getId());
+        insert.open();
+        assertEquals(tuples.size(), ((IntField) insert.next().getField(0)).getValue());
+        assertFalse(insert.hasNext());
+        insert.close();
+        t.commit();
+
+        SystemTestUtil.matchTuples(hf, tuples);
+        assertEquals(5, hf.numPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BulkLoadTest.class);
+    }
+}
@@ -0,0 +1,89 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Measures the latency of transactions while checkpoints run. Each
+ * transaction deletes a tuple from each of a few random pages of a table
+ * that fits in the buffer pool and commits without writing the pages
+ * (NO-FORCE), so the pages are written by checkpoints only, which another
+ * thread takes at a fixed interval. In "sharp" mode a checkpoint first
+ * writes every dirty page holding the buffer pool monitor, as checkpoints
+ * did before they were fuzzy.
+ * <p>
+ * Not a unit test; run with
+ * <pre>
+ *   java -cp bin/src:bin/test:lib/* simpledb.CheckpointBenchmark [fuzzy|sharp] [tablePages] [transactions] [intervalMillis]
+ * </pre>
+ */
+public class CheckpointBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        boolean sharp = args.length > 0 && args[0].equals("sharp");
+        int tablePages = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int transactions = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        long interval = args.length > 3 ? Long.parseLong(args[3]) : 50;
+
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, tablePages * rowsPerPage, null, null);
+        Database.resetBufferPool(tablePages + 100);
+        BufferPool bp = Database.getBufferPool();
+        bp.setForceOnCommit(false);
+        bp.setCleanerInterval(0);
+
+        int[] checkpoints = new int[1];
+        Thread checkpointer = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(interval);
+                    if (sharp) {
+                        bp.flushAllPages();
+                    }
+                    Database.getLogFile().logCheckpoint();
+                    checkpoints[0]++;
+                }
+            } catch (InterruptedException e) {
+                // done
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        checkpointer.start();
+
+        Random r = new Random(0);
+        long[] latencies = new long[transactions];
+        long start = System.nanoTime();
+        for (int i = 0; i < transactions; i++) {
+            long begin = System.nanoTime();
+            Transaction t = new Transaction();
+            t.start();
+            for (int j = 0; j < 4; j++) {
+                HeapPageId pid = new HeapPageId(hf.getId(), r.nextInt(hf.numPages()));
+                Page page = bp.getPage(t.getId(), pid, Permissions.READ_WRITE);
+                Iterator<Tuple> it = ((HeapPage) page).iterator();
+                if (it.hasNext()) {
+                    bp.deleteTuple(t.getId(), it.next());
+                }
+            }
+            t.commit();
+            latencies[i] = System.nanoTime() - begin;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        checkpointer.interrupt();
+        checkpointer.join();
+
+        Arrays.sort(latencies);
+        System.out.printf("%-5s %d checkpoints, %6.0f transactions/s, latency p50 %6.0f us, p99 %7.0f us, max %7.0f us%n",
+                sharp ? "sharp" : "fuzzy", checkpoints[0], transactions / seconds,
+                latencies[transactions / 2] / 1e3, latencies[transactions * 99 / 100] / 1e3,
+                latencies[transactions - 1] / 1e3);
+    }
+}
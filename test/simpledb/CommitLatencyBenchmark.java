@@ -0,0 +1,76 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Measures the latency of commits that write the pages of the transaction
+ * (FORCE) against commits that only force the log (NO-FORCE). Each
+ * transaction deletes a tuple from each of a few random pages of a table
+ * much larger than the buffer pool, so a FORCE commit writes as many random
+ * pages; a NO-FORCE commit leaves them to the page cleaner. Also reports
+ * the bytes of log each commit writes.
+ * <p>
+ * Not a unit test; run with
+ * <pre>
+ *   java -cp bin/src:bin/test:lib/* simpledb.CommitLatencyBenchmark [tablePages] [poolPages] [transactions] [pagesPerTransaction]
+ * </pre>
+ */
+public class CommitLatencyBenchmark {
+
+    static void run(HeapFile hf, boolean force, int transactions, int pagesPerTransaction) throws Exception {
+        BufferPool bp = Database.getBufferPool();
+        bp.setForceOnCommit(force);
+        bp.resetWriteStats();
+        Random r = new Random(0);
+        long commitNanos = 0;
+        long logStart = Database.getLogFile().getFlushedLsn();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < transactions; i++) {
+            Transaction t = new Transaction();
+            t.start();
+            for (int j = 0; j < pagesPerTransaction; j++) {
+                HeapPageId pid = new HeapPageId(hf.getId(), r.nextInt(hf.numPages()));
+                Page page = bp.getPage(t.getId(), pid, Permissions.READ_WRITE);
+                Iterator<Tuple> it = ((HeapPage) page).iterator();
+                if (it.hasNext()) {
+                    bp.deleteTuple(t.getId(), it.next());
+                }
+            }
+            long commit = System.nanoTime();
+            t.commit();
+            commitNanos += System.nanoTime() - commit;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long logBytes = Database.getLogFile().getFlushedLsn() - logStart;
+
+        System.out.printf("%-8s %8.1f us/commit, %6.0f transactions/s, %6d log bytes/commit, %d foreground + %d cleaner page writes%n",
+                force ? "FORCE" : "NO-FORCE", commitNanos / 1e3 / transactions, transactions / seconds,
+                logBytes / transactions, bp.getForegroundWrites(), bp.getCleanerWrites());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int poolPages = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int transactions = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int pagesPerTransaction = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, tablePages * rowsPerPage, null, null);
+        Database.resetBufferPool(poolPages);
+        System.out.printf("%d page table, %d page pool, %d pages per transaction%n",
+                hf.numPages(), poolPages, pagesPerTransaction);
+
+        for (int round = 0; round < 2; round++) {
+            run(hf, true, transactions, pagesPerTransaction);
+            run(hf, false, transactions, pagesPerTransaction);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+    private static final int FULL_PAGES = 5;
+
+    /**
+     * A HeapFile that counts the pages it reads from disk.
+     */
+    private static class CountingHeapFile extends HeapFile {
+        int reads = 0;
+
+        CountingHeapFile(File f) {
+            super(f, Utility.getTupleDesc(2));
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+
+        @Override
+        public Page readPage(PageId pid, ByteBuffer frame) {
+            reads++;
+            return super.readPage(pid, frame);
+        }
+    }
+
+    private File file;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        file = SystemTestUtil.createRandomHeapFileUnopened(2, FULL_PAGES * rowsPerPage, 1000, null, null);
+    }
+
+    private CountingHeapFile open() {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        CountingHeapFile hf = new CountingHeapFile(file);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private RecordId insert(HeapFile hf, int v) throws Exception {
+        TransactionId tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(v, 2);
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        return t.getRecordId();
+    }
+
+    /**
+     * Once the map knows that the pages are full, inserts do not read them,
+     * also after the table is opened again.
+     */
+    @Test public void skipsFullPages() throws Exception {
+        CountingHeapFile hf = open();
+        assertEquals(FULL_PAGES, insert(hf, 1).getPageId().getPageNumber());
+        assertEquals(FULL_PAGES + 1, hf.numPages());
+
+        hf = open();
+        RecordId rid = insert(hf, 2);
+        assertEquals(FULL_PAGES, rid.getPageId().getPageNumber());
+        assertTrue(hf.reads <= 1);
+    }
+
+    /**
+     * A delete makes room on a full page, and the next insert goes there.
+     */
+    @Test public void deleteMakesRoom() throws Exception {
+        CountingHeapFile hf = open();
+        insert(hf, 1);
+
+        TransactionId tid = new TransactionId();
+        Tuple victim = null;
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (t.getRecordId().getPageId().getPageNumber() == 2) {
+                victim = t;
+                break;
+            }
+        }
+        it.close();
+        Database.getBufferPool().deleteTuple(tid, victim);
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(victim.getRecordId(), insert(hf, 2));
+    }
+
+    /**
+     * A side file that does not match the table is ignored.
+     */
+    @Test public void staleMapIgnored() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(file.getPath() + ".fsm")) {
+            out.write(new byte[] { 0x46, 0x53, 0x4d, 0x31, 0, 0, 0, 1, 1 });
+        }
+        CountingHeapFile hf = open();
+        assertEquals(FULL_PAGES, insert(hf, 1).getPageId().getPageNumber());
+
+        TransactionId tid = new TransactionId();
+        int count = 0;
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        assertEquals(FULL_PAGES * rowsPerPage + 1, count);
+    }
+
+    /**
+     * The side file is deleted when the table file was deleted and the table
+     * leaves the catalog.
+     */
+    @Test public void sideFileDeletedWithTable() throws Exception {
+        insert(open(), 1);
+        File fsm = new File(file.getPath() + ".fsm");
+        assertTrue(fsm.exists());
+
+        Database.getCatalog().clear();
+        assertTrue(fsm.exists());
+        insert(open(), 2);
+        assertTrue(file.delete());
+        Database.getCatalog().clear();
+        assertFalse(fsm.exists());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -0,0 +1,105 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.index.*;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the bytes allocated per BufferPool.getPage hit, for heap pages and
+ * B+ tree pages, with the allocation counter of the calling thread. The page
+ * ids are created up front, so only what getPage itself allocates counts:
+ * anything it allocates on a hit is garbage made on the hottest path.
+ * <p>
+ * Also measures heap page misses, in a buffer pool much smaller than the
+ * table, where the page is read into the off-heap arena of the pool rather
+ * than into a new array. Each page is unpinned right after the get, as a
+ * scan does.
+ * <p>
+ * Not a unit test; run with
+ * <pre>
+ *   java -cp bin/src:bin/test:lib/* simpledb.GetPageAllocationBenchmark [gets]
+ * </pre>
+ */
+public class GetPageAllocationBenchmark {
+
+    static void run(String name, PageId[] pids, int gets) throws Exception {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        // warm up: loads the pages, takes the locks, compiles getPage
+        for (int i = 0; i < gets; i++) {
+            bp.getPage(tid, pids[i % pids.length], Permissions.READ_ONLY);
+            bp.unpinPage(tid, pids[i % pids.length]);
+        }
+
+        long bytes = bean.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < gets; i++) {
+            bp.getPage(tid, pids[i % pids.length], Permissions.READ_ONLY);
+            bp.unpinPage(tid, pids[i % pids.length]);
+        }
+        long nanos = System.nanoTime() - start;
+        bytes = bean.getThreadAllocatedBytes(thread) - bytes;
+        bp.transactionComplete(tid);
+
+        System.out.printf("%-6s %8.1f bytes/getPage, %6.1f ns/getPage%n",
+                name, (double) bytes / gets, (double) nanos / gets);
+    }
+
+    /**
+     * Returns the ids of the root pointer, the leftmost path down from the
+     * root and all leaves of a tree.
+     */
+    static List<PageId> btreePages(BTreeFile bf) throws Exception {
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        List<PageId> pids = new ArrayList<>();
+        BTreePageId pid = BTreeRootPtrPage.getId(bf.getId());
+        pids.add(pid);
+        pid = ((BTreeRootPtrPage) bp.getPage(tid, pid, Permissions.READ_ONLY)).getRootId();
+        while (pid.pgcateg() == BTreePageId.INTERNAL) {
+            pids.add(pid);
+            BTreeInternalPage internal = (BTreeInternalPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+            pid = internal.iterator().next().getLeftChild();
+        }
+        while (pid != null) {
+            pids.add(pid);
+            pid = ((BTreeLeafPage) bp.getPage(tid, pid, Permissions.READ_ONLY)).getRightSiblingId();
+        }
+        bp.transactionComplete(tid);
+        return pids;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int gets = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 5000, null, null);
+        PageId[] heapPids = new PageId[hf.numPages()];
+        for (int i = 0; i < heapPids.length; i++) {
+            heapPids[i] = new HeapPageId(hf.getId(), i);
+        }
+
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 5000, null, null, 0);
+        PageId[] btreePids = btreePages(bf).toArray(new PageId[0]);
+
+        for (int round = 0; round < 3; round++) {
+            run("heap", heapPids, gets);
+            run("btree", btreePids, gets);
+        }
+
+        // every get misses: CLOCK cycling over more pages than fit
+        Database.resetBufferPool(heapPids.length / 4);
+        for (int round = 0; round < 3; round++) {
+            run("miss", heapPids, gets / 100);
+        }
+    }
+}
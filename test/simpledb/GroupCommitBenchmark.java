@@ -0,0 +1,69 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.storage.LogFile;
+import simpledb.transaction.Transaction;
+
+/**
+ * Measures commit throughput as the number of committing threads grows,
+ * with every commit forcing the log itself and with group commit. Each
+ * transaction only writes its begin and commit records, so the force of
+ * the log is all a commit waits for.
+ * <p>
+ * Not a unit test; run with
+ * <pre>
+ *   java -cp bin/src:bin/test:lib/* simpledb.GroupCommitBenchmark [commitsPerThread] [maxThreads] [delayMicros]
+ * </pre>
+ */
+public class GroupCommitBenchmark {
+
+    static void run(String mode, int threads, int commits) throws InterruptedException {
+        LogFile log = Database.getLogFile();
+        long forces = log.getForceCount();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < commits; i++) {
+                        Transaction tx = new Transaction();
+                        tx.start();
+                        tx.commit();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread w : workers) {
+            w.start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long total = (long) threads * commits;
+        forces = log.getForceCount() - forces;
+        System.out.printf("%-14s %3d threads: %8.0f commits/s, %5.1f commits per force%n",
+                mode, threads, total / seconds, (double) total / Math.max(1, forces));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int commits = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        long delay = args.length > 2 ? Long.parseLong(args[2]) : 200;
+
+        LogFile log = Database.getLogFile();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            log.setGroupCommitBatch(1);
+            run("force", threads, commits);
+            log.setGroupCommitBatch(LogFile.DEFAULT_GROUP_COMMIT_BATCH);
+            log.setGroupCommitDelay(0);
+            run("group", threads, commits);
+            log.setGroupCommitDelay(delay);
+            run("group " + delay + "us", threads, commits);
+        }
+    }
+}
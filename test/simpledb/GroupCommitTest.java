@@ -0,0 +1,129 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.storage.LogFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.Transaction;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class GroupCommitTest extends SimpleDbTestBase {
+
+    @After public void restore() {
+        Database.getLogFile().setGroupCommitDelay(LogFile.DEFAULT_GROUP_COMMIT_DELAY);
+        Database.getLogFile().setGroupCommitBatch(LogFile.DEFAULT_GROUP_COMMIT_BATCH);
+    }
+
+    private static void commit() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        t.commit();
+    }
+
+    /**
+     * Commits the given number of transactions at once, one per thread.
+     */
+    private static void commitConcurrently(int threads) throws Exception {
+        CountDownLatch ready = new CountDownLatch(threads);
+        Thread[] workers = new Thread[threads];
+        Exception[] failure = new Exception[1];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    Transaction t = new Transaction();
+                    t.start();
+                    ready.countDown();
+                    ready.await();
+                    t.commit();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * With group commit off, every commit forces the log.
+     */
+    @Test public void forcePerCommit() throws Exception {
+        LogFile log = Database.getLogFile();
+        log.setGroupCommitBatch(1);
+        long forces = log.getForceCount();
+        for (int i = 0; i < 3; i++) {
+            commit();
+        }
+        assertEquals(3, log.getForceCount() - forces);
+    }
+
+    /**
+     * A commit does not return before the log is forced past its record.
+     */
+    @Test public void commitWaitsForForce() throws Exception {
+        LogFile log = Database.getLogFile();
+        log.setGroupCommitDelay(200000);
+        long forces = log.getForceCount();
+        long start = System.nanoTime();
+        commit();
+
+        assertTrue(System.nanoTime() - start >= 150000000L);
+        assertEquals(1, log.getForceCount() - forces);
+    }
+
+    /**
+     * Commits that wait together share one force, which does not wait for
+     * the delay once the batch is full.
+     */
+    @Test public void batchSharesForce() throws Exception {
+        LogFile log = Database.getLogFile();
+        log.setGroupCommitDelay(60000000L);
+        log.setGroupCommitBatch(4);
+        long forces = log.getForceCount();
+        long start = System.nanoTime();
+        commitConcurrently(4);
+
+        assertTrue(System.nanoTime() - start < 30000000000L);
+        assertEquals(1, log.getForceCount() - forces);
+    }
+
+    /**
+     * A force for another reason releases the commits waiting for it.
+     */
+    @Test public void forceReleasesWaiters() throws Exception {
+        LogFile log = Database.getLogFile();
+        log.setGroupCommitDelay(60000000L);
+        Thread committer = new Thread(() -> {
+            try {
+                commit();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        committer.start();
+        while (committer.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        log.force();
+        committer.join(10000);
+        assertFalse(committer.isAlive());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(GroupCommitTest.class);
+    }
+}
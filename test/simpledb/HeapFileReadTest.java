@@ -6,6 +6,7 @@ import simpledb.storage.*;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
 
+import java.io.File;
 import java.util.*;
 import org.junit.After;
 import org.junit.Before;
@@ -81,6 +82,22 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * Reading a page of a table file that does not exist does not create
+     * the file, and a closed file is opened again by the next read.
+     */
+    @Test
+    public void readPageOpensReadOnly() throws Exception {
+        File missing = File.createTempFile("missing", ".dat");
+        missing.delete();
+        HeapFile other = new HeapFile(missing, td);
+        assertNull(other.readPage(new HeapPageId(other.getId(), 0)));
+        assertFalse(missing.exists());
+
+        hf.close();
+        assertEquals(484, ((HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0))).getNumEmptySlots());
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
@@ -131,6 +131,25 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Modifying a page neither changes the array it was built from nor
+     * arrays previously returned by getPageData().
+     */
+    @Test public void copyOnWrite() throws Exception {
+        byte[] source = HeapPageReadTest.EXAMPLE_DATA.clone();
+        HeapPage page = new HeapPage(pid, source);
+        byte[] before = page.getPageData();
+
+        page.insertTuple(Utility.getHeapTuple(7, 2));
+        page.deleteTuple(page.iterator().next());
+
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, source);
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, before);
+        HeapPage reread = new HeapPage(pid, page.getPageData());
+        assertEquals(page.getNumEmptySlots(), reread.getNumEmptySlots());
+        assertFalse(reread.isSlotUsed(0));
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,148 @@
+package simpledb;
+
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class LogSegmentsTest extends SimpleDbTestBase {
+    // smaller than a page, so that an update spans segments
+    private static final int SEGMENT_SIZE = 1024;
+
+    private File dir;
+    private File logFile;
+    private HeapFile hf;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        dir = Files.createTempDirectory("logsegments").toFile();
+        logFile = new File(dir, "log");
+        File file = new File(dir, "table.dat");
+        hf = Utility.createEmptyHeapFile(file.getPath(), 2);
+    }
+
+    @After public void deleteFiles() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private File[] segments() {
+        File[] segments = dir.listFiles((d, name) -> name.startsWith("log."));
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    // a page of the table full of rows
+    private HeapPage fullPage(int pageNo) throws Exception {
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), pageNo), HeapPage.createEmptyPageData());
+        for (int i = 0; page.getNumEmptySlots() > 0; i++) {
+            page.insertTuple(Utility.getHeapTuple(new int[] {i, pageNo}));
+        }
+        return page;
+    }
+
+    // logs a committed transaction that fills the given page
+    private HeapPage commitFullPage(LogFile log, int pageNo) throws Exception {
+        HeapPage before = new HeapPage(new HeapPageId(hf.getId(), pageNo), HeapPage.createEmptyPageData());
+        HeapPage after = fullPage(pageNo);
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        log.logWrite(tid, before, after);
+        log.logCommit(tid);
+        return after;
+    }
+
+    private void assertOnDisk(HeapPage page) {
+        assertArrayEquals(page.getPageData(), hf.readPage(page.getId()).getPageData());
+    }
+
+    /**
+     * A record larger than a segment spans segments, and recovery reads it
+     * back across them.
+     */
+    @Test public void recordsSpanSegments() throws Exception {
+        LogFile log = new LogFile(logFile, SEGMENT_SIZE);
+        HeapPage page = commitFullPage(log, 0);
+        assertTrue(segments().length > 2);
+
+        new LogFile(logFile, SEGMENT_SIZE).recover();
+        assertOnDisk(page);
+    }
+
+    /**
+     * A checkpoint deletes the segments before it, and a later recovery
+     * reads the log from the segments left.
+     */
+    @Test public void truncationDeletesSegments() throws Exception {
+        LogFile log = new LogFile(logFile, SEGMENT_SIZE);
+        commitFullPage(log, 0);
+        commitFullPage(log, 1);
+        File[] before = segments();
+        log.logCheckpoint();
+        File[] after = segments();
+        assertTrue(after.length < before.length);
+        assertFalse(before[0].exists());
+
+        HeapPage page = commitFullPage(log, 2);
+        new LogFile(logFile, SEGMENT_SIZE).recover();
+        assertOnDisk(page);
+    }
+
+    /**
+     * A log reopened after recovery appends to the last segment, and the
+     * next recovery reads both.
+     */
+    @Test public void appendAfterRecovery() throws Exception {
+        HeapPage first = commitFullPage(new LogFile(logFile, SEGMENT_SIZE), 0);
+        LogFile log = new LogFile(logFile, SEGMENT_SIZE);
+        log.recover();
+        HeapPage second = commitFullPage(log, 1);
+
+        new LogFile(logFile, SEGMENT_SIZE).recover();
+        assertOnDisk(first);
+        assertOnDisk(second);
+    }
+
+    /**
+     * Rollback walks the records of the transaction back across segments,
+     * past the records of another transaction in between.
+     */
+    @Test public void rollbackAcrossSegments() throws Exception {
+        LogFile log = new LogFile(logFile, SEGMENT_SIZE);
+        HeapPage empty = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        log.logWrite(tid, empty, fullPage(0));
+        HeapPage other = commitFullPage(log, 1);
+        assertTrue(segments().length > 3);
+
+        log.logAbort(tid);
+        assertOnDisk(empty);
+        new LogFile(logFile, SEGMENT_SIZE).recover();
+        assertOnDisk(empty);
+        assertOnDisk(other);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LogSegmentsTest.class);
+    }
+}
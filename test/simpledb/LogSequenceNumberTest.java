@@ -0,0 +1,108 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class LogSequenceNumberTest extends SimpleDbTestBase {
+    private HeapFile hf;
+    private LogFile log;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        File file = File.createTempFile("lsn", ".dat");
+        file.deleteOnExit();
+        hf = Utility.createEmptyHeapFile(file.getPath(), 2);
+        log = Database.getLogFile();
+    }
+
+    private long logUpdate(TransactionId tid, Page page) throws Exception {
+        return log.logWrite(tid, page, page);
+    }
+
+    private Page page(int pageNo) throws Exception {
+        return new HeapPage(new HeapPageId(hf.getId(), pageNo), HeapPage.createEmptyPageData());
+    }
+
+    /**
+     * An update record stamps the page with its LSN, and LSNs grow.
+     */
+    @Test public void updateSetsPageLsn() throws Exception {
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        Page first = page(0);
+        Page second = page(1);
+        assertEquals(0, first.getLsn());
+
+        long lsn = logUpdate(tid, first);
+        assertEquals(lsn, first.getLsn());
+        assertTrue(logUpdate(tid, second) > lsn);
+        assertTrue(second.getLsn() > first.getLsn());
+    }
+
+    /**
+     * Forcing up to a record that is on disk already does not force again,
+     * and a record appended since does.
+     */
+    @Test public void forceOnlyWhenNeeded() throws Exception {
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        Page first = page(0);
+        logUpdate(tid, first);
+        log.force(first.getLsn());
+        assertTrue(log.getFlushedLsn() > first.getLsn());
+
+        long forces = log.getForceCount();
+        log.force(first.getLsn());
+        log.force(0);
+        assertEquals(forces, log.getForceCount());
+
+        Page second = page(1);
+        logUpdate(tid, second);
+        log.force(second.getLsn());
+        assertEquals(forces + 1, log.getForceCount());
+        assertTrue(log.getFlushedLsn() > second.getLsn());
+    }
+
+    /**
+     * Truncating the log on a checkpoint neither reuses nor reorders LSNs.
+     */
+    @Test public void lsnsSurviveTruncation() throws Exception {
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        Page first = page(0);
+        logUpdate(tid, first);
+        log.logCommit(tid);
+        log.logCheckpoint();
+
+        TransactionId next = new TransactionId();
+        log.logXactionBegin(next);
+        Page second = page(1);
+        logUpdate(next, second);
+        assertTrue(second.getLsn() > first.getLsn());
+        log.force(first.getLsn());
+        long forces = log.getForceCount();
+        log.force(second.getLsn());
+        assertEquals(forces + 1, log.getForceCount());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LogSequenceNumberTest.class);
+    }
+}
@@ -0,0 +1,106 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+    private HeapFile hf;
+    private MappedHeapFile mhf;
+    private TransactionId tid;
+    private List<List<Integer>> tuples;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        tuples = new ArrayList<>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 1000, 1 << 16, null, tuples);
+        hf = Utility.openHeapFile(2, f);
+        mhf = new MappedHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(mhf, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Pages read through the mapping are identical to pages read through the channel.
+     */
+    @Test
+    public void readPage() {
+        assertEquals(hf.numPages(), mhf.numPages());
+        for (int i = 0; i < mhf.numPages(); i++) {
+            HeapPage expected = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), i));
+            HeapPage actual = (HeapPage) mhf.readPage(new HeapPageId(mhf.getId(), i));
+            assertArrayEquals(expected.getPageData(), actual.getPageData());
+        }
+    }
+
+    @Test
+    public void readPastEnd() {
+        assertNull(mhf.readPage(new HeapPageId(mhf.getId(), mhf.numPages())));
+    }
+
+    @Test
+    public void iterator() throws Exception {
+        SystemTestUtil.matchTuples(mhf, tid, tuples);
+    }
+
+    /**
+     * The mapping follows the file as pages are appended to it.
+     */
+    @Test
+    public void growingFile() throws Exception {
+        int pages = mhf.numPages();
+        mhf.readPage(new HeapPageId(mhf.getId(), pages - 1));
+
+        HeapPage page = new HeapPage(new HeapPageId(mhf.getId(), pages), HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(42, 2));
+        mhf.writePage(page);
+
+        assertEquals(pages + 1, mhf.numPages());
+        HeapPage read = (HeapPage) mhf.readPage(new HeapPageId(mhf.getId(), pages));
+        assertEquals(page.getNumEmptySlots(), read.getNumEmptySlots());
+        assertArrayEquals(page.getPageData(), read.getPageData());
+    }
+
+    /**
+     * Writes through the channel are visible through an existing mapping.
+     */
+    @Test
+    public void writeThrough() throws Exception {
+        HeapPageId pid = new HeapPageId(mhf.getId(), 0);
+        HeapPage page = (HeapPage) mhf.readPage(pid);
+        Tuple t = page.iterator().next();
+        page.deleteTuple(t);
+        mhf.writePage(page);
+
+        HeapPage read = (HeapPage) mhf.readPage(pid);
+        assertFalse(read.isSlotUsed(t.getRecordId().getTupleNumber()));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,101 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageArenaTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 4;
+
+    private HeapFile hf;
+    private List<List<Integer>> tuples;
+
+    /**
+     * Set up initial resources for each unit test: a table ten times the
+     * size of the buffer pool.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        tuples = new ArrayList<>();
+        hf = SystemTestUtil.createRandomHeapFile(2, POOL_PAGES * 10 * rowsPerPage, null, tuples);
+        Database.resetBufferPool(POOL_PAGES);
+    }
+
+    /**
+     * Reads every page but the first in another transaction, unpinning each
+     * page right away, so that the first page is evicted and the memory of
+     * the pool is reused over and over.
+     */
+    private void readOtherPages() throws Exception {
+        TransactionId scanner = new TransactionId();
+        for (int p = 1; p < hf.numPages(); p++) {
+            HeapPageId pid = new HeapPageId(hf.getId(), p);
+            Database.getBufferPool().getPage(scanner, pid, Permissions.READ_ONLY);
+            Database.getBufferPool().unpinPage(scanner, pid);
+        }
+        Database.getBufferPool().transactionComplete(scanner);
+    }
+
+    /**
+     * A page a transaction holds keeps its bytes after it is evicted.
+     */
+    @Test public void pinnedPageSurvivesEviction() throws Exception {
+        TransactionId reader = new TransactionId();
+        HeapPageId first = new HeapPageId(hf.getId(), 0);
+        Page page = Database.getBufferPool().getPage(reader, first, Permissions.READ_ONLY);
+
+        readOtherPages();
+
+        assertArrayEquals(hf.readPage(first).getPageData(), page.getPageData());
+        Database.getBufferPool().transactionComplete(reader);
+    }
+
+    /**
+     * A page got twice stays pinned until it is unpinned twice.
+     */
+    @Test public void everyGetNeedsAnUnpin() throws Exception {
+        TransactionId reader = new TransactionId();
+        HeapPageId first = new HeapPageId(hf.getId(), 0);
+        Page page = Database.getBufferPool().getPage(reader, first, Permissions.READ_ONLY);
+        Database.getBufferPool().getPage(reader, first, Permissions.READ_ONLY);
+        Database.getBufferPool().unpinPage(reader, first);
+
+        readOtherPages();
+
+        assertArrayEquals(hf.readPage(first).getPageData(), page.getPageData());
+        Database.getBufferPool().unpinPage(reader, first);
+        Database.getBufferPool().transactionComplete(reader);
+    }
+
+    /**
+     * Scans of a table much larger than the buffer pool, which unpin each
+     * page when they move on, read every tuple correctly, also when the same
+     * transaction scans again.
+     */
+    @Test public void scanLargerThanPool() throws Exception {
+        TransactionId tid = new TransactionId();
+        SystemTestUtil.matchTuples(hf, tid, tuples);
+        SystemTestUtil.matchTuples(hf, tid, tuples);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageArenaTest.class);
+    }
+}
@@ -0,0 +1,113 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageCleanerTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 16;
+
+    private HeapFile hf;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        hf = SystemTestUtil.createRandomHeapFile(2, POOL_PAGES * 2 * rowsPerPage, null, null);
+    }
+
+    private HeapPageId pid(int pageNo) {
+        return new HeapPageId(hf.getId(), pageNo);
+    }
+
+    /**
+     * Loads a page and leaves it dirty by a transaction that holds no locks,
+     * as a transaction that committed without writing the page would.
+     */
+    private Page dirty(BufferPool bp, int pageNo) throws Exception {
+        TransactionId tid = new TransactionId();
+        Page page = bp.getPage(tid, pid(pageNo), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        page.markDirty(true, new TransactionId());
+        return page;
+    }
+
+    private static boolean waitClean(Page page) throws InterruptedException {
+        for (int i = 0; i < 500 && page.isDirty() != null; i++) {
+            Thread.sleep(10);
+        }
+        return page.isDirty() == null;
+    }
+
+    /**
+     * The cleaner writes the dirty pages of completed transactions.
+     */
+    @Test public void cleansCompletedPages() throws Exception {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        bp.setCleanerInterval(10);
+        Page[] pages = new Page[4];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = dirty(bp, i);
+        }
+        for (Page page : pages) {
+            assertTrue(waitClean(page));
+        }
+        assertEquals(pages.length, bp.getCleanerWrites());
+        assertEquals(0, bp.getForegroundWrites());
+    }
+
+    /**
+     * The cleaner leaves the pages of running transactions alone.
+     */
+    @Test public void skipsRunningTransactions() throws Exception {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        bp.setCleanerInterval(10);
+        TransactionId tid = new TransactionId();
+        Page page = bp.getPage(tid, pid(0), Permissions.READ_WRITE);
+        page.markDirty(true, tid);
+        Page other = dirty(bp, 1);
+
+        assertTrue(waitClean(other));
+        assertEquals(tid, page.isDirty());
+        assertEquals(1, bp.getCleanerWrites());
+        bp.transactionComplete(tid, false);
+    }
+
+    /**
+     * With the cleaner stopped and every page dirty, a thread that needs a
+     * page writes one back itself instead of failing.
+     */
+    @Test public void foregroundWriteBack() throws Exception {
+        BufferPool bp = Database.resetBufferPool(2);
+        bp.setCleanerInterval(0);
+        Page first = dirty(bp, 0);
+        Page second = dirty(bp, 1);
+
+        TransactionId tid = new TransactionId();
+        bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+
+        assertEquals(1, bp.getForegroundWrites());
+        assertEquals(0, bp.getCleanerWrites());
+        // one of them was written and evicted to make room
+        assertTrue(first.isDirty() == null ^ second.isDirty() == null);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageCleanerTest.class);
+    }
+}
@@ -0,0 +1,105 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeLeafPage;
+import simpledb.index.BTreePageId;
+import simpledb.index.BTreeRootPtrPage;
+import simpledb.index.BTreeUtility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageCodecsTest extends SimpleDbTestBase {
+
+    /**
+     * Writes the id of a page as the log does, and decodes the page from it
+     * and the data of the page with the codec of its class.
+     */
+    private static Page roundTrip(Page page) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int j : page.getId().serialize()) {
+            out.writeInt(j);
+        }
+        PageCodec codec = PageCodecs.codec(PageCodecs.code(page));
+        PageId pid = codec.readId(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        return codec.decode(pid, page.getPageData());
+    }
+
+    private static void assertRoundTrip(Page page) throws IOException {
+        Page decoded = roundTrip(page);
+        assertEquals(page.getClass(), decoded.getClass());
+        assertEquals(page.getId(), decoded.getId());
+        assertArrayEquals(page.getPageData(), decoded.getPageData());
+    }
+
+    private static BTreeFile btree() throws Exception {
+        // few enough rows for one leaf page under the root pointer page
+        return BTreeUtility.createRandomBTreeFile(2, 10, null, null, 0);
+    }
+
+    private static BTreePageId rootId(BTreeFile bf) {
+        return ((BTreeRootPtrPage) bf.readPage(BTreeRootPtrPage.getId(bf.getId()))).getRootId();
+    }
+
+    /**
+     * Heap pages decode to equal pages.
+     */
+    @Test public void heapPage() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        assertRoundTrip(hf.readPage(new HeapPageId(hf.getId(), 0)));
+    }
+
+    /**
+     * B-tree pages decode to equal pages, also the leaf and internal pages,
+     * which need the key field of their file.
+     */
+    @Test public void btreePages() throws Exception {
+        BTreeFile bf = btree();
+        assertRoundTrip(bf.readPage(BTreeRootPtrPage.getId(bf.getId())));
+        assertRoundTrip(bf.readPage(rootId(bf)));
+    }
+
+    /**
+     * Recovery redoes a committed update of a B-tree leaf page.
+     */
+    @Test public void btreeUpdateRecovers() throws Exception {
+        BTreeFile bf = btree();
+        BTreePageId leaf = rootId(bf);
+        BTreeLeafPage before = (BTreeLeafPage) bf.readPage(leaf);
+        BTreeLeafPage after = new BTreeLeafPage(leaf, before.getPageData(), bf.keyField());
+        after.deleteTuple(after.iterator().next());
+
+        LogFile log = Database.getLogFile();
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        log.logWrite(tid, before, after);
+        log.logCommit(tid);
+        log.recover();
+
+        assertArrayEquals(after.getPageData(), bf.readPage(leaf).getPageData());
+    }
+
+    /**
+     * A page type code without a codec is an error in the log.
+     */
+    @Test(expected = IOException.class) public void unknownCode() throws Exception {
+        PageCodecs.codec(255);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageCodecsTest.class);
+    }
+}
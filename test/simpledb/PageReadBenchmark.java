@@ -0,0 +1,112 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the latency of a buffer pool miss, i.e. HeapFile.readPage, using a
+ * stream opened, skipped and closed per page (how HeapFile used to read
+ * pages) against the positional reads on the long-lived channel HeapFile
+ * now keeps open.
+ * <p>
+ * Not a unit test; run with
+ * <pre>
+ *   java -cp bin/src:bin/test:lib/* simpledb.PageReadBenchmark [pages] [reads] [threads]
+ * </pre>
+ */
+public class PageReadBenchmark {
+
+    /** The per-page stream based read HeapFile.readPage used to do. */
+    static byte[] streamRead(File f, HeapPageId pid) throws IOException {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(f))) {
+            long offset = (long) pid.getPageNumber() * BufferPool.getPageSize();
+            if (bis.skip(offset) != offset) {
+                throw new IllegalArgumentException("Unable to seek to correct place in HeapFile");
+            }
+            if (bis.read(data, 0, data.length) < data.length) {
+                throw new IllegalArgumentException("Unable to read page");
+            }
+        }
+        return data;
+    }
+
+    static byte[] channelRead(PageChannel channel, HeapPageId pid) throws IOException {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        if (channel.read(data, (long) pid.getPageNumber() * BufferPool.getPageSize()) < data.length) {
+            throw new IllegalArgumentException("Unable to read page");
+        }
+        return data;
+    }
+
+    interface PageReader {
+        void read(HeapPageId pid) throws IOException;
+    }
+
+    static double run(String name, int threads, int reads, int numPages, int tableId, PageReader reader)
+            throws InterruptedException {
+        AtomicLong totalNanos = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            workers[t] = new Thread(() -> {
+                Random r = new Random(seed);
+                long start = System.nanoTime();
+                try {
+                    for (int i = 0; i < reads; i++) {
+                        reader.read(new HeapPageId(tableId, r.nextInt(numPages)));
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                totalNanos.addAndGet(System.nanoTime() - start);
+            });
+        }
+        long wallStart = System.nanoTime();
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) w.join();
+        double wallMs = (System.nanoTime() - wallStart) / 1e6;
+        double perRead = totalNanos.get() / (double) (threads * reads) / 1000.0;
+        System.out.printf("%-10s threads=%-3d avg miss latency %8.2f us, %10.0f pages/s%n",
+                name, threads, perRead, threads * reads / (wallMs / 1000.0));
+        return perRead;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int numPages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int reads = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * Integer.BYTES * 8 + 1);
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, numPages * rowsPerPage, null, null);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        File f = hf.getFile();
+        System.out.println("table " + f + " with " + hf.numPages() + " pages");
+
+        PageChannel channel = new PageChannel(f);
+
+        // warm up both paths and the OS page cache
+        run("warmup", 1, reads, numPages, hf.getId(), pid -> streamRead(f, pid));
+        run("warmup", 1, reads, numPages, hf.getId(), pid -> channelRead(channel, pid));
+
+        System.out.println("-- raw page I/O");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double before = run("stream", threads, reads, numPages, hf.getId(), pid -> streamRead(f, pid));
+            double after = run("channel", threads, reads, numPages, hf.getId(), pid -> channelRead(channel, pid));
+            System.out.printf("speedup x%.2f%n", before / after);
+        }
+
+        System.out.println("-- full miss: I/O plus HeapPage construction");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double before = run("stream", threads, reads, numPages, hf.getId(),
+                    pid -> new HeapPage(pid, streamRead(f, pid)));
+            double after = run("readPage", threads, reads, numPages, hf.getId(), hf::readPage);
+            System.out.printf("speedup x%.2f%n", before / after);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageTableTest extends SimpleDbTestBase {
+    private static final int PAGES = 300;
+
+    /**
+     * A HeapFile that counts the pages it reads from disk.
+     */
+    private static class CountingHeapFile extends HeapFile {
+        int reads = 0;
+
+        CountingHeapFile(HeapFile f) {
+            super(f.getFile(), f.getTupleDesc());
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+
+        @Override
+        public Page readPage(PageId pid, ByteBuffer frame) {
+            reads++;
+            return super.readPage(pid, frame);
+        }
+    }
+
+    private CountingHeapFile hf;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        hf = new CountingHeapFile(SystemTestUtil.createRandomHeapFile(2, PAGES * rowsPerPage, null, null));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Random gets and discards in a pool that holds every page: a page is
+     * read from disk exactly when it is not cached, and getPage always
+     * returns the page asked for. Exercises growing the page table and
+     * removing entries from the middle of probe sequences.
+     */
+    @Test public void getAndDiscard() throws Exception {
+        BufferPool bp = Database.resetBufferPool(PAGES);
+        TransactionId tid = new TransactionId();
+        Set<Integer> cached = new HashSet<>();
+        Random r = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            int pageNo = r.nextInt(PAGES);
+            HeapPageId pid = new HeapPageId(hf.getId(), pageNo);
+            if (r.nextInt(3) == 0) {
+                bp.discardPage(pid);
+                cached.remove(pageNo);
+            } else {
+                int reads = hf.reads;
+                Page p = bp.getPage(tid, pid, Permissions.READ_ONLY);
+                assertEquals(pid, p.getId());
+                assertEquals(cached.add(pageNo) ? reads + 1 : reads, hf.reads);
+            }
+        }
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Page numbers that do not fit in the page key are rejected rather than
+     * mixed up with other pages.
+     */
+    @Test(expected = IllegalArgumentException.class) public void pageNumberOutOfRange() throws Exception {
+        Database.getBufferPool().getPage(new TransactionId(), new HeapPageId(hf.getId(), 1 << 30),
+                Permissions.READ_ONLY);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageTableTest.class);
+    }
+}
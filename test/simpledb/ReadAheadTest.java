@@ -0,0 +1,112 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+    private static final int PAGES = 12;
+
+    private HeapFile hf;
+    private List<List<Integer>> tuples;
+    private int rowsPerPage;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        tuples = new ArrayList<>();
+        hf = SystemTestUtil.createRandomHeapFile(2, PAGES * rowsPerPage, null, tuples);
+        assertEquals(PAGES, hf.numPages());
+    }
+
+    private int scan(TransactionId tid) throws Exception {
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            assertNotNull(it.next());
+            count++;
+        }
+        it.close();
+        return count;
+    }
+
+    /**
+     * A sequential scan with read-ahead returns every tuple once and every
+     * prefetched page is accounted for as a hit or a miss.
+     */
+    @Test
+    public void scanWithReadAhead() throws Exception {
+        BufferPool bp = Database.resetBufferPool(PAGES * 2);
+        bp.setReadAheadWindow(4);
+        TransactionId tid = new TransactionId();
+
+        SystemTestUtil.matchTuples(hf, tid, tuples);
+        assertEquals(PAGES * rowsPerPage, scan(tid));
+
+        // pages 0 and 1 are read by the scan itself before it turns sequential
+        assertTrue(bp.getReadAheadHits() + bp.getReadAheadMisses() > 0);
+        assertTrue(bp.getReadAheadHits() + bp.getReadAheadMisses() <= 2 * (PAGES - 2));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Locks taken by prefetches belong to the scanning transaction and are
+     * released with its other locks.
+     */
+    @Test
+    public void locksReleasedOnCompletion() throws Exception {
+        BufferPool bp = Database.resetBufferPool(PAGES * 2);
+        bp.setReadAheadWindow(PAGES);
+        TransactionId tid = new TransactionId();
+
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        for (int i = 0; i < 2 * rowsPerPage + 1; i++) {
+            it.next();
+            it.hasNext();
+        }
+        bp.transactionComplete(tid);
+        for (int i = 0; i < PAGES; i++) {
+            assertFalse(bp.holdsLock(tid, new HeapPageId(hf.getId(), i)));
+        }
+        it.close();
+    }
+
+    /**
+     * Read-ahead is off unless a window is set, and a window of 0 turns it
+     * off again.
+     */
+    @Test
+    public void disabled() throws Exception {
+        BufferPool bp = Database.resetBufferPool(PAGES * 2);
+        assertEquals(0, bp.getReadAheadWindow());
+        bp.setReadAheadWindow(4);
+        bp.setReadAheadWindow(0);
+        TransactionId tid = new TransactionId();
+        assertEquals(PAGES * rowsPerPage, scan(tid));
+        assertEquals(0, bp.getReadAheadHits());
+        assertEquals(0, bp.getReadAheadMisses());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
@@ -0,0 +1,74 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Measures how fast LogFile.recover() reads a large log. Each transaction
+ * logs updates of a few random pages of a table, each deleting one tuple,
+ * and commits. In "delta" mode the records hold the changed bytes; in
+ * "full" mode the before image is an empty page, so the records hold both
+ * full images, as when pages are appended. Recovery writes each page once,
+ * so with many records per page the time goes into decoding the log.
+ * The redo pass runs on the given number of threads.
+ * <p>
+ * Not a unit test; run with
+ * <pre>
+ *   java -cp bin/src:bin/test:lib/* simpledb.RecoveryBenchmark [delta|full] [tablePages] [transactions] [updatesPerTransaction] [redoThreads]
+ * </pre>
+ */
+public class RecoveryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        boolean full = args.length > 0 && args[0].equals("full");
+        int tablePages = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int transactions = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        int updates = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int redoThreads = args.length > 4 ? Integer.parseInt(args[4]) : LogFile.DEFAULT_REDO_THREADS;
+
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, tablePages * rowsPerPage, null, null);
+        LogFile log = Database.getLogFile();
+        log.setRedoThreads(redoThreads);
+        Random r = new Random(0);
+        long logStart = 0;
+
+        for (int i = 0; i < transactions; i++) {
+            TransactionId tid = new TransactionId();
+            log.logXactionBegin(tid);
+            if (i == 0) {
+                // the first record starts a new log
+                log.force();
+                logStart = log.getFlushedLsn();
+            }
+            for (int j = 0; j < updates; j++) {
+                HeapPageId pid = new HeapPageId(hf.getId(), r.nextInt(hf.numPages()));
+                HeapPage before = (HeapPage) hf.readPage(pid);
+                HeapPage after = new HeapPage(pid, before.getPageData());
+                Iterator<Tuple> it = after.iterator();
+                if (it.hasNext()) {
+                    after.deleteTuple(it.next());
+                }
+                log.logWrite(tid, full ? new HeapPage(pid, HeapPage.createEmptyPageData()) : before, after);
+            }
+            log.logCommit(tid);
+        }
+        log.force();
+        System.out.printf("%s records: %d transactions, %d updates, %d log bytes, %d redo threads%n",
+                full ? "full" : "delta", transactions, transactions * updates, log.getFlushedLsn() - logStart,
+                redoThreads);
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            log.recover();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("recover: %7.1f ms, %8.0f updates/s%n",
+                    seconds * 1e3, transactions * updates / seconds);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Reports the buffer pool hit ratio of each replacement policy for a mixed
+ * workload: point lookups on a small table that fits in the buffer pool,
+ * interrupted now and then by a full scan of a table that is much larger
+ * than the buffer pool, as when a report runs next to OLTP traffic.
+ * <p>
+ * Not a unit test; run with
+ * <pre>
+ *   java -cp bin/src:bin/test:lib/* simpledb.ReplacementPolicyBenchmark [poolPages] [hotPages] [scanPages] [lookupsPerScan] [scans]
+ * </pre>
+ */
+public class ReplacementPolicyBenchmark {
+
+    /**
+     * A HeapFile that counts the pages it reads from disk.
+     */
+    static class CountingHeapFile extends HeapFile {
+        long reads = 0;
+
+        CountingHeapFile(HeapFile f) {
+            super(f.getFile(), f.getTupleDesc());
+        }
+
+        @Override
+        public synchronized Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+
+        @Override
+        public synchronized Page readPage(PageId pid, ByteBuffer frame) {
+            reads++;
+            return super.readPage(pid, frame);
+        }
+    }
+
+    static CountingHeapFile createTable(int pages) throws Exception {
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, pages * rowsPerPage, null, null);
+        CountingHeapFile counting = new CountingHeapFile(hf);
+        Database.getCatalog().addTable(counting, SystemTestUtil.getUUID());
+        return counting;
+    }
+
+    static void run(ReplacementPolicy policy, int poolPages, CountingHeapFile hot, CountingHeapFile big,
+                    int lookupsPerScan, int scans) throws Exception {
+        Database.resetBufferPool(poolPages, policy);
+        hot.reads = 0;
+        big.reads = 0;
+        Random r = new Random(0);
+        long lookups = 0;
+        long scanned = 0;
+
+        for (int s = 0; s < scans; s++) {
+            TransactionId tid = new TransactionId();
+            for (int i = 0; i < lookupsPerScan; i++) {
+                HeapPageId pid = new HeapPageId(hot.getId(), r.nextInt(hot.numPages()));
+                Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                lookups++;
+            }
+            Database.getBufferPool().transactionComplete(tid);
+
+            tid = new TransactionId();
+            SeqScan scan = new SeqScan(tid, big.getId());
+            scan.open();
+            while (scan.hasNext()) {
+                scan.next();
+            }
+            scan.close();
+            scanned += big.numPages();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+
+        System.out.printf("%-6s lookups %6.2f%% hits, overall %6.2f%% hits (%d + %d pages read)%n",
+                policy, 100.0 * (lookups - hot.reads) / lookups,
+                100.0 * (lookups + scanned - hot.reads - big.reads) / (lookups + scanned),
+                hot.reads, big.reads);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int hotPages = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        int scanPages = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+        int lookupsPerScan = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+        int scans = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+
+        CountingHeapFile hot = createTable(hotPages);
+        CountingHeapFile big = createTable(scanPages);
+        System.out.printf("%d page pool, %d hot pages, %d lookups between scans of %d pages%n",
+                poolPages, hotPages, lookupsPerScan, scanPages);
+
+        for (ReplacementPolicy policy : ReplacementPolicy.values()) {
+            run(policy, poolPages, hot, big, lookupsPerScan, scans);
+        }
+    }
+}
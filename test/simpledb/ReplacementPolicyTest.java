@@ -0,0 +1,144 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ReplacementPolicyTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 16;
+
+    /**
+     * A HeapFile that counts the pages it reads from disk.
+     */
+    private static class CountingHeapFile extends HeapFile {
+        int reads = 0;
+
+        CountingHeapFile(HeapFile f) {
+            super(f.getFile(), f.getTupleDesc());
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+
+        @Override
+        public Page readPage(PageId pid, ByteBuffer frame) {
+            reads++;
+            return super.readPage(pid, frame);
+        }
+    }
+
+    private CountingHeapFile hot;
+    private CountingHeapFile big;
+
+    private static CountingHeapFile createTable(int pages) throws Exception {
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, pages * rowsPerPage, null, null);
+        CountingHeapFile counting = new CountingHeapFile(hf);
+        Database.getCatalog().addTable(counting, SystemTestUtil.getUUID());
+        return counting;
+    }
+
+    /**
+     * Set up initial resources for each unit test: a table of a few pages
+     * used over and over and a table much larger than the buffer pool.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hot = createTable(4);
+        big = createTable(POOL_PAGES * 4);
+    }
+
+    private void read(TransactionId tid, HeapFile hf, int pageNo) throws Exception {
+        Database.getBufferPool().getPage(tid, new HeapPageId(hf.getId(), pageNo), Permissions.READ_ONLY);
+    }
+
+    /**
+     * Reads the hot pages a few times, then scans the big table, and returns
+     * the number of hot pages that had to be read again afterwards.
+     */
+    private int hotMissesAfterScan(ReplacementPolicy policy) throws Exception {
+        Database.resetBufferPool(POOL_PAGES, policy);
+        TransactionId tid = new TransactionId();
+        for (int round = 0; round < 3; round++) {
+            for (int p = 0; p < hot.numPages(); p++) {
+                read(tid, hot, p);
+            }
+        }
+        for (int p = 0; p < big.numPages(); p++) {
+            read(tid, big, p);
+        }
+        hot.reads = 0;
+        for (int p = 0; p < hot.numPages(); p++) {
+            read(tid, hot, p);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        return hot.reads;
+    }
+
+    /**
+     * Recency based policies lose the hot pages to a scan, 2Q keeps them.
+     */
+    @Test public void scanResistance() throws Exception {
+        assertEquals(hot.numPages(), hotMissesAfterScan(ReplacementPolicy.LRU));
+        assertEquals(hot.numPages(), hotMissesAfterScan(ReplacementPolicy.CLOCK));
+        assertEquals(0, hotMissesAfterScan(ReplacementPolicy.TWO_Q));
+    }
+
+    /**
+     * With every policy, reading more pages than fit keeps the pool at its
+     * size and never evicts a dirty page.
+     */
+    @Test public void dirtyPagesStay() throws Exception {
+        for (ReplacementPolicy policy : ReplacementPolicy.values()) {
+            BufferPool bp = Database.resetBufferPool(POOL_PAGES, policy);
+            TransactionId tid = new TransactionId();
+            File f = File.createTempFile("replacement", ".dat");
+            f.deleteOnExit();
+            HeapFile empty = Utility.createEmptyHeapFile(f.getPath(), 2);
+            bp.insertTuple(tid, empty.getId(), Utility.getHeapTuple(new int[] {1, 2}));
+            HeapPageId dirty = new HeapPageId(empty.getId(), 0);
+
+            for (int p = 0; p < big.numPages(); p++) {
+                read(tid, big, p);
+            }
+            assertNotNull(bp.getPage(tid, dirty, Permissions.READ_ONLY).isDirty());
+
+            bp.transactionComplete(tid, false);
+        }
+    }
+
+    /**
+     * A pool full of dirty pages cannot take another page.
+     */
+    @Test(expected = DbException.class) public void allDirty() throws Exception {
+        BufferPool bp = Database.resetBufferPool(1, ReplacementPolicy.TWO_Q);
+        TransactionId tid = new TransactionId();
+        read(tid, big, 0);
+        ((HeapPage) bp.getPage(tid, new HeapPageId(big.getId(), 0), Permissions.READ_WRITE)).markDirty(true, tid);
+        read(tid, big, 1);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
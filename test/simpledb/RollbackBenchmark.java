@@ -0,0 +1,71 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.Iterator;
+
+/**
+ * Measures how long LogFile.logAbort() takes to roll back a transaction
+ * whose few updates are interleaved with many records of other
+ * transactions, as with a long-running transaction among many short ones.
+ * The aborting transaction logs its updates first, then the others log
+ * theirs and commit, then it aborts.
+ * <p>
+ * Not a unit test; run with
+ * <pre>
+ *   java -cp bin/src:bin/test:lib/* simpledb.RollbackBenchmark [loserUpdates] [otherTransactions] [updatesPerTransaction]
+ * </pre>
+ */
+public class RollbackBenchmark {
+
+    // a copy of the page with its first tuple deleted
+    private static HeapPage deleteFirst(HeapPage before) throws Exception {
+        HeapPage after = new HeapPage(before.getId(), before.getPageData());
+        Iterator<Tuple> it = after.iterator();
+        if (it.hasNext()) {
+            after.deleteTuple(it.next());
+        }
+        return after;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int loserUpdates = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int updates = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 2 * rowsPerPage, null, null);
+        LogFile log = Database.getLogFile();
+        HeapPage loserPage = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+        HeapPage otherPage = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 1));
+        HeapPage otherAfter = deleteFirst(otherPage);
+
+        for (int round = 0; round < 5; round++) {
+            TransactionId loser = new TransactionId();
+            log.logXactionBegin(loser);
+            HeapPage before = loserPage;
+            for (int i = 0; i < loserUpdates; i++) {
+                HeapPage after = deleteFirst(before);
+                log.logWrite(loser, before, after);
+                before = after;
+            }
+            for (int i = 0; i < transactions; i++) {
+                TransactionId tid = new TransactionId();
+                log.logXactionBegin(tid);
+                for (int j = 0; j < updates; j++) {
+                    log.logWrite(tid, otherPage, otherAfter);
+                }
+                log.logCommit(tid);
+            }
+            log.force();
+
+            long start = System.nanoTime();
+            log.logAbort(loser);
+            System.out.printf("abort of %d updates after %d other records: %8.2f ms%n",
+                    loserUpdates, transactions * (updates + 2), (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class SlottedHeapFileTest extends SimpleDbTestBase {
+    private File file;
+    private TupleDesc td;
+    private SlottedHeapFile shf;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("slotted", ".dat");
+        file.deleteOnExit();
+        td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        shf = new SlottedHeapFile(file, td);
+        Database.getCatalog().addTable(shf, SystemTestUtil.getUUID());
+    }
+
+    private Tuple tuple(int i) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField("name" + i, Type.STRING_LEN));
+        return t;
+    }
+
+    private Map<Integer, String> scan(SlottedHeapFile f) throws Exception {
+        Map<Integer, String> rows = new HashMap<>();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            rows.put(((IntField) t.getField(0)).getValue(), ((StringField) t.getField(1)).getValue());
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return rows;
+    }
+
+    /**
+     * Inserted tuples are read back after the buffer pool is flushed, and
+     * take up far fewer pages than in a HeapFile.
+     */
+    @Test public void insertAndScan() throws Exception {
+        int rows = 2000;
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < rows; i++) {
+            Database.getBufferPool().insertTuple(tid, shf.getId(), tuple(i));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        Map<Integer, String> read = scan(new SlottedHeapFile(file, td));
+        assertEquals(rows, read.size());
+        for (int i = 0; i < rows; i++) {
+            assertEquals("name" + i, read.get(i));
+        }
+
+        int heapPageTuples = BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1);
+        assertTrue(shf.numPages() * 5 < (rows + heapPageTuples - 1) / heapPageTuples);
+    }
+
+    @Test public void delete() throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 100; i++) {
+            Database.getBufferPool().insertTuple(tid, shf.getId(), tuple(i));
+        }
+        DbFileIterator it = shf.iterator(tid);
+        it.open();
+        List<Tuple> odd = new ArrayList<>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (((IntField) t.getField(0)).getValue() % 2 == 1) {
+                odd.add(t);
+            }
+        }
+        it.close();
+        for (Tuple t : odd) {
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        Map<Integer, String> read = scan(shf);
+        assertEquals(50, read.size());
+        for (int v : read.keySet()) {
+            assertEquals(0, v % 2);
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,139 @@
+package simpledb;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+    private HeapPageId pid;
+    private TupleDesc td;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() {
+        this.pid = new HeapPageId(-1, -1);
+        this.td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        Database.getCatalog().addTable(new SkeletonFile(-1, td), SystemTestUtil.getUUID());
+    }
+
+    private Tuple tuple(int i, String s) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    private SlottedHeapPage fill(String value) throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        for (int i = 0; page.hasRoomFor(tuple(i, value)); i++) {
+            page.insertTuple(tuple(i, value));
+        }
+        return page;
+    }
+
+    /**
+     * Short strings take up only their length, so many more tuples fit on a
+     * page than on a HeapPage with the same schema.
+     */
+    @Test public void shortStrings() throws Exception {
+        SlottedHeapPage page = fill("abc");
+        int heapPageTuples = BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1);
+        assertTrue(page.getNumTuples() > 5 * heapPageTuples);
+        assertEquals(0, page.getFreeSpace() / (4 + SlottedHeapPage.getRecordSize(tuple(0, "abc"))));
+    }
+
+    /**
+     * Tuples survive a round trip through getPageData().
+     */
+    @Test public void roundTrip() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        page.insertTuple(tuple(1, ""));
+        page.insertTuple(tuple(2, "hello"));
+        page.insertTuple(tuple(3, "a string that is a bit longer than the other ones"));
+
+        SlottedHeapPage read = new SlottedHeapPage(pid, page.getPageData());
+        Iterator<Tuple> it = read.iterator();
+        for (Iterator<Tuple> expected = page.iterator(); expected.hasNext(); ) {
+            Tuple e = expected.next();
+            Tuple t = it.next();
+            assertTrue(TestUtil.compareTuples(e, t));
+            assertEquals(e.getRecordId(), t.getRecordId());
+        }
+        assertFalse(it.hasNext());
+        assertEquals(new StringField("hello", Type.STRING_LEN), read.getField(1, 1));
+        assertEquals(new IntField(3), read.getField(2, 0));
+    }
+
+    /**
+     * Deleted records are reclaimed by compaction, and slot numbers of the
+     * other records do not change.
+     */
+    @Test public void deleteAndCompact() throws Exception {
+        SlottedHeapPage page = fill("0123456789");
+        int full = page.getNumTuples();
+
+        List<Tuple> deleted = new ArrayList<>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (t.getRecordId().getTupleNumber() % 2 == 0) {
+                deleted.add(t);
+            }
+        }
+        for (Tuple t : deleted) {
+            page.deleteTuple(t);
+        }
+        assertEquals(full - deleted.size(), page.getNumTuples());
+
+        // longer tuples than the deleted ones only fit after a compaction
+        String longer = "01234567890123456789";
+        int inserted = 0;
+        while (page.hasRoomFor(tuple(-1, longer))) {
+            page.insertTuple(tuple(-1, longer));
+            inserted++;
+        }
+        assertTrue(inserted > deleted.size() / 3);
+
+        it = page.iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int slot = t.getRecordId().getTupleNumber();
+            int v = ((IntField) t.getField(0)).getValue();
+            assertTrue(v == -1 || v == slot);
+        }
+    }
+
+    @Test(expected = DbException.class)
+    public void deleteTwice() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        Tuple t = tuple(1, "x");
+        page.insertTuple(t);
+        page.deleteTuple(t);
+        page.deleteTuple(t);
+    }
+
+    @Test(expected = DbException.class)
+    public void insertIntoFullPage() throws Exception {
+        fill("x").insertTuple(tuple(0, "x"));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
@@ -0,0 +1,194 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Filter;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+    private static final int PAGES = 10;
+
+    /**
+     * A HeapFile that counts the pages it reads from disk.
+     */
+    private static class CountingHeapFile extends HeapFile {
+        int reads = 0;
+
+        CountingHeapFile(File f) {
+            super(f, Utility.getTupleDesc(2));
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+
+        @Override
+        public Page readPage(PageId pid, ByteBuffer frame) {
+            reads++;
+            return super.readPage(pid, frame);
+        }
+    }
+
+    private File file;
+    private int rows;
+
+    /**
+     * Set up initial resources for each unit test: a table whose first
+     * column increases with the position of the tuple, like an append-only
+     * table of events ordered by time.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        int rowsPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        // room left on the last page for inserts
+        rows = PAGES * rowsPerPage - 10;
+        List<List<Integer>> tuples = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            tuples.add(Arrays.asList(i, rows - i));
+        }
+        file = File.createTempFile("zonemap", ".dat");
+        file.deleteOnExit();
+        HeapFileEncoder.convert(tuples, file, BufferPool.getPageSize(), 2);
+    }
+
+    private CountingHeapFile open() {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        CountingHeapFile hf = new CountingHeapFile(file);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    /** Runs Filter over SeqScan and returns the first field of the results. */
+    private List<Integer> select(HeapFile hf, Predicate p) throws Exception {
+        TransactionId tid = new TransactionId();
+        Filter filter = new Filter(p, new SeqScan(tid, hf.getId()));
+        List<Integer> found = new ArrayList<>();
+        filter.open();
+        while (filter.hasNext()) {
+            found.add(((IntField) filter.next().getField(0)).getValue());
+        }
+        filter.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return found;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    /**
+     * Once the pages have been read, range and equality predicates only read
+     * the pages that may have matches, also after the table is opened again.
+     */
+    @Test public void prunesPages() throws Exception {
+        CountingHeapFile hf = open();
+        Predicate last = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(rows - 5));
+        assertEquals(range(rows - 5, rows), select(hf, last));
+        // nothing was known about the pages yet
+        assertEquals(PAGES, hf.reads);
+
+        hf = open();
+        assertEquals(range(rows - 5, rows), select(hf, last));
+        assertEquals(1, hf.reads);
+
+        hf = open();
+        assertEquals(Collections.singletonList(7), select(hf, new Predicate(0, Predicate.Op.EQUALS, new IntField(7))));
+        assertEquals(1, hf.reads);
+
+        hf = open();
+        assertEquals(range(0, rows), select(hf, new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(0))));
+        assertEquals(PAGES, hf.reads);
+    }
+
+    /**
+     * Inserts widen the entry of their page, deletes leave the entry until
+     * the page is written.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        CountingHeapFile hf = open();
+        select(hf, new Predicate(0, Predicate.Op.EQUALS, new IntField(0)));
+
+        Transaction t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), hf.getId(), Utility.getHeapTuple(new int[] {-1, -1}));
+        t.commit();
+        assertEquals(Collections.singletonList(-1), select(hf, new Predicate(0, Predicate.Op.LESS_THAN, new IntField(0))));
+
+        t = new Transaction();
+        t.start();
+        DbFileIterator it = hf.iterator(t.getId());
+        it.open();
+        while (it.hasNext()) {
+            Tuple tup = it.next();
+            if (((IntField) tup.getField(0)).getValue() < 0) {
+                Database.getBufferPool().deleteTuple(t.getId(), tup);
+            }
+        }
+        it.close();
+        t.commit();
+
+        hf = open();
+        assertTrue(select(hf, new Predicate(0, Predicate.Op.LESS_THAN, new IntField(0))).isEmpty());
+        assertEquals(0, hf.reads);
+    }
+
+    /**
+     * A tuple inserted by an aborted transaction is gone, but pages are only
+     * skipped when that is safe.
+     */
+    @Test public void abortedInsert() throws Exception {
+        CountingHeapFile hf = open();
+        select(hf, new Predicate(0, Predicate.Op.EQUALS, new IntField(0)));
+
+        Transaction t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), hf.getId(), Utility.getHeapTuple(new int[] {-1, -1}));
+        t.transactionComplete(true);
+
+        assertTrue(select(hf, new Predicate(0, Predicate.Op.LESS_THAN, new IntField(0))).isEmpty());
+        assertEquals(range(0, 3), select(hf, new Predicate(0, Predicate.Op.LESS_THAN, new IntField(3))));
+    }
+
+    /**
+     * The side file is deleted when the table file was deleted and the table
+     * leaves the catalog.
+     */
+    @Test public void sideFileDeletedWithTable() throws Exception {
+        select(open(), new Predicate(0, Predicate.Op.EQUALS, new IntField(7)));
+        File zmap = new File(file.getPath() + ".zmap");
+        assertTrue(zmap.exists());
+
+        assertTrue(file.delete());
+        Database.getCatalog().clear();
+        assertFalse(zmap.exists());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
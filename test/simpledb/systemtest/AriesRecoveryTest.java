@@ -0,0 +1,189 @@
+package simpledb.systemtest;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Insert;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+/**
+ * Test the analysis, redo and undo passes of recovery.
+ */
+public class AriesRecoveryTest extends SimpleDbTestBase {
+    private File file;
+    private HeapFile hf;
+
+    /**
+     * Starts a database with an empty table, NO-FORCE commits and the page
+     * cleaner stopped, so that committed pages reach the disk only on a
+     * checkpoint.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("aries", ".dat");
+        file.deleteOnExit();
+        hf = Utility.createEmptyHeapFile(file.getPath(), 2);
+        noForce();
+    }
+
+    private static void noForce() {
+        Database.getBufferPool().setForceOnCommit(false);
+        Database.getBufferPool().setCleanerInterval(0);
+    }
+
+    private void insertRow(Transaction t, int v) throws Exception {
+        TupleIterator row = new TupleIterator(Utility.getTupleDesc(2),
+                Collections.singletonList(Utility.getHeapTuple(new int[] {v, 0})));
+        Insert insert = new Insert(t.getId(), row, hf.getId());
+        insert.open();
+        insert.next();
+        insert.close();
+    }
+
+    private void commitRow(int v) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t, v);
+        t.commit();
+    }
+
+    private Set<Integer> rows() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        Set<Integer> rows = new HashSet<>();
+        SeqScan scan = new SeqScan(t.getId(), hf.getId(), "");
+        scan.open();
+        while (scan.hasNext()) {
+            rows.add(((IntField) scan.next().getField(0)).getValue());
+        }
+        scan.close();
+        t.commit();
+        return rows;
+    }
+
+    // restarts the database without writing the buffer pool, and recovers
+    private void crash() throws Exception {
+        crash(LogFile.DEFAULT_REDO_THREADS);
+    }
+
+    private void crash(int redoThreads) throws Exception {
+        Database.reset();
+        hf = Utility.openHeapFile(2, file);
+        Database.getLogFile().setRedoThreads(redoThreads);
+        Database.getLogFile().recover();
+        noForce();
+    }
+
+    /**
+     * Redo starts at the checkpoint, which wrote the pages dirty at the
+     * time, even though the log before it is kept for an open transaction.
+     */
+    @Test public void redoStartsAtCheckpoint() throws Exception {
+        Transaction open = new Transaction();
+        open.start();
+        commitRow(1);
+        Database.getLogFile().logCheckpoint();
+        commitRow(2);
+        // change row 1 on disk: redoing its insert would change it back
+        HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+        page.deleteTuple(page.iterator().next());
+        page.insertTuple(Utility.getHeapTuple(new int[] {7, 0}));
+        hf.writePage(page);
+        crash();
+
+        assertEquals(new HashSet<>(Arrays.asList(7, 2)), rows());
+    }
+
+    /**
+     * A loser is rolled back once: recovery logs an ABORT record for it, so
+     * that a later recovery keeps a committed update that reused its slot.
+     */
+    @Test public void loserAbortedOnce() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t, 1);
+        Database.getBufferPool().flushAllPages(); // steal the page of t
+        crash();
+        assertEquals(Collections.emptySet(), rows());
+
+        commitRow(2);
+        crash();
+        assertEquals(new HashSet<>(Collections.singletonList(2)), rows());
+    }
+
+    /**
+     * A loser whose records all come before the checkpoint is undone from
+     * its last record, which the checkpoint lists, back along its chain.
+     */
+    @Test public void loserBeforeCheckpointUndone() throws Exception {
+        commitRow(1);
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t, 2);
+        Database.getBufferPool().flushAllPages(); // steal the page of t
+        Database.getLogFile().logCheckpoint();
+        crash();
+
+        assertEquals(new HashSet<>(Collections.singletonList(1)), rows());
+    }
+
+    /**
+     * Recovery drops a record torn by the crash, so that the records logged
+     * after recovery can be read by the next one.
+     */
+    @Test public void tornRecordDropped() throws Exception {
+        commitRow(1);
+        // the last segment of the log of Database, cut off in the middle
+        // of a record
+        File[] segments = new File(".").listFiles((dir, name) -> name.startsWith("log."));
+        Arrays.sort(segments);
+        try (RandomAccessFile log = new RandomAccessFile(segments[segments.length - 1], "rw")) {
+            log.seek(log.length());
+            log.writeInt(3);
+            log.writeLong(42);
+            log.writeByte(1);
+        }
+        crash();
+        assertEquals(new HashSet<>(Collections.singletonList(1)), rows());
+
+        commitRow(2);
+        crash();
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), rows());
+    }
+
+    /**
+     * Redo on several threads recovers committed rows on several pages.
+     */
+    @Test public void parallelRedo() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        Set<Integer> committed = new HashSet<>();
+        // three pages of rows
+        for (int i = 0; i < 1500; i++) {
+            insertRow(t, i);
+            committed.add(i);
+        }
+        t.commit();
+        crash(4);
+
+        assertEquals(3, hf.numPages());
+        assertEquals(committed, rows());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(AriesRecoveryTest.class);
+    }
+}
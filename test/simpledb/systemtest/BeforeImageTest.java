@@ -0,0 +1,163 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.index.BTreeLeafPage;
+import simpledb.index.BTreePageId;
+import simpledb.index.BTreeUtility;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+/**
+ * Before images are captured lazily; check that they still show the page as
+ * it was before the first change, both on the pages themselves and through
+ * abort and recovery.
+ */
+public class BeforeImageTest extends SimpleDbTestBase {
+    private File file;
+    private HeapFile hf;
+
+    @Before
+    public void setUp() throws IOException {
+        Database.reset();
+        file = new File("simple1.db");
+        file.delete();
+        hf = Utility.createEmptyHeapFile(file.getAbsolutePath(), 2);
+    }
+
+    private void insertRow(TransactionId tid, int v) throws Exception {
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(v, 2));
+    }
+
+    private Set<Integer> values(HeapFile f) throws Exception {
+        Set<Integer> found = new HashSet<>();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            found.add(((IntField) it.next().getField(0)).getValue());
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return found;
+    }
+
+    private void commitRow(int v) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t.getId(), v);
+        t.commit();
+    }
+
+    @Test
+    public void heapPage() throws Exception {
+        commitRow(1);
+        HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+        byte[] original = page.getPageData().clone();
+
+        page.insertTuple(Utility.getHeapTuple(2, 2));
+        assertArrayEquals(original, page.getBeforeImage().getPageData());
+
+        page.setBeforeImage();
+        byte[] committed = page.getPageData().clone();
+        assertArrayEquals(committed, page.getBeforeImage().getPageData());
+
+        page.deleteTuple(page.iterator().next());
+        assertArrayEquals(committed, page.getBeforeImage().getPageData());
+    }
+
+    /**
+     * A mapped page must not pick up its own changes through the mapping
+     * once they are written to the file.
+     */
+    @Test
+    public void mappedHeapPage() throws Exception {
+        commitRow(1);
+        MappedHeapFile mhf = new MappedHeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(mhf, SystemTestUtil.getUUID());
+        HeapPage page = (HeapPage) mhf.readPage(new HeapPageId(mhf.getId(), 0));
+        byte[] original = page.getPageData().clone();
+
+        page.insertTuple(Utility.getHeapTuple(2, 2));
+        mhf.writePage(page);
+        assertArrayEquals(original, page.getBeforeImage().getPageData());
+    }
+
+    @Test
+    public void btreeLeafPage() throws Exception {
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+        BTreePageId pid = new BTreePageId(-1, 1, BTreePageId.LEAF);
+        BTreeLeafPage page = BTreeUtility.createRandomLeafPage(pid, 2, 0, 10, 0, 100);
+        byte[] original = page.getPageData().clone();
+
+        page.insertTuple(BTreeUtility.getBTreeTuple(new int[] {50, 50}));
+        assertArrayEquals(original, page.getBeforeImage().getPageData());
+
+        page.setBeforeImage();
+        assertArrayEquals(page.getPageData(), page.getBeforeImage().getPageData());
+    }
+
+    /**
+     * An abort after the page was stolen rolls back to the logged before image.
+     */
+    @Test
+    public void rollback() throws Exception {
+        commitRow(1);
+
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t.getId(), 2);
+        Database.getBufferPool().flushAllPages();
+        Database.getLogFile().logAbort(t.getId());
+        Database.getBufferPool().transactionComplete(t.getId(), false);
+
+        assertEquals(Collections.singleton(1), values(hf));
+    }
+
+    /**
+     * An abort without steal restores the page that was read from disk.
+     */
+    @Test
+    public void restorePages() throws Exception {
+        commitRow(1);
+
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t.getId(), 2);
+        t.transactionComplete(true);
+
+        assertEquals(Collections.singleton(1), values(hf));
+    }
+
+    /**
+     * Recovery undoes a loser with the before image logged for its page, which
+     * is the page as committed by the previous transaction.
+     */
+    @Test
+    public void recover() throws Exception {
+        commitRow(1);
+        commitRow(2);
+
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t.getId(), 3);
+        Database.getBufferPool().flushAllPages();
+
+        Database.reset();
+        hf = Utility.openHeapFile(2, file);
+        Database.getLogFile().recover();
+
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), values(hf));
+    }
+}
@@ -0,0 +1,125 @@
+package simpledb.systemtest;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Insert;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+/**
+ * Test checkpoints that write the dirty pages in the background.
+ */
+public class FuzzyCheckpointTest extends SimpleDbTestBase {
+    private File file;
+    private HeapFile hf;
+
+    /**
+     * Starts a database with an empty table, NO-FORCE commits and the page
+     * cleaner stopped, so that only checkpoints write committed pages.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("fuzzy", ".dat");
+        file.deleteOnExit();
+        hf = Utility.createEmptyHeapFile(file.getPath(), 2);
+        noForce();
+    }
+
+    private static void noForce() {
+        Database.getBufferPool().setForceOnCommit(false);
+        Database.getBufferPool().setCleanerInterval(0);
+    }
+
+    private void insertRow(Transaction t, int v) throws Exception {
+        TupleIterator row = new TupleIterator(Utility.getTupleDesc(2),
+                Collections.singletonList(Utility.getHeapTuple(new int[] {v, 0})));
+        Insert insert = new Insert(t.getId(), row, hf.getId());
+        insert.open();
+        insert.next();
+        insert.close();
+    }
+
+    private void commitRow(int v) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t, v);
+        t.commit();
+    }
+
+    private Set<Integer> rows() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        Set<Integer> rows = new HashSet<>();
+        SeqScan scan = new SeqScan(t.getId(), hf.getId(), "");
+        scan.open();
+        while (scan.hasNext()) {
+            rows.add(((IntField) scan.next().getField(0)).getValue());
+        }
+        scan.close();
+        t.commit();
+        return rows;
+    }
+
+    private int rowsOnDisk() {
+        HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+        int n = 0;
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); it.next()) {
+            n++;
+        }
+        return n;
+    }
+
+    // restarts the database without writing the buffer pool, and recovers
+    private void crash() throws Exception {
+        Database.reset();
+        hf = Utility.openHeapFile(2, file);
+        Database.getLogFile().recover();
+        noForce();
+    }
+
+    /**
+     * A checkpoint writes the pages of committed transactions.
+     */
+    @Test public void checkpointWritesCommittedPages() throws Exception {
+        commitRow(1);
+        assertEquals(0, rowsOnDisk());
+        Database.getLogFile().logCheckpoint();
+
+        assertEquals(1, rowsOnDisk());
+        assertEquals(0, Database.getBufferPool().getForegroundWrites());
+    }
+
+    /**
+     * A checkpoint does not wait for a page that a running transaction
+     * holds; the page stays in the dirty page table of the checkpoint, and
+     * recovery redoes its committed update from before the checkpoint.
+     */
+    @Test public void heldPageRedoneFromDirtyPageTable() throws Exception {
+        commitRow(1);
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t, 2);
+        Database.getLogFile().logCheckpoint();
+        assertEquals(0, rowsOnDisk());
+
+        crash();
+        assertEquals(new HashSet<>(Collections.singletonList(1)), rows());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FuzzyCheckpointTest.class);
+    }
+}
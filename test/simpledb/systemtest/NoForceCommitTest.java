@@ -0,0 +1,202 @@
+package simpledb.systemtest;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Insert;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+/**
+ * Test commits that only force the log, and recovery of their updates.
+ */
+public class NoForceCommitTest extends SimpleDbTestBase {
+    private File file;
+    private HeapFile hf;
+
+    /**
+     * Starts a database with an empty table, NO-FORCE commits and the page
+     * cleaner stopped, so that committed pages stay in the buffer pool only.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("noforce", ".dat");
+        file.deleteOnExit();
+        hf = Utility.createEmptyHeapFile(file.getPath(), 2);
+        noForce();
+    }
+
+    private static void noForce() {
+        Database.getBufferPool().setForceOnCommit(false);
+        Database.getBufferPool().setCleanerInterval(0);
+    }
+
+    private void insertRow(Transaction t, int v) throws Exception {
+        TupleIterator row = new TupleIterator(Utility.getTupleDesc(2),
+                Collections.singletonList(Utility.getHeapTuple(new int[] {v, 0})));
+        Insert insert = new Insert(t.getId(), row, hf.getId());
+        insert.open();
+        insert.next();
+        insert.close();
+    }
+
+    private Set<Integer> rows() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        Set<Integer> rows = new HashSet<>();
+        SeqScan scan = new SeqScan(t.getId(), hf.getId(), "");
+        scan.open();
+        while (scan.hasNext()) {
+            rows.add(((IntField) scan.next().getField(0)).getValue());
+        }
+        scan.close();
+        t.commit();
+        return rows;
+    }
+
+    private int rowsOnDisk() {
+        HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+        int n = 0;
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); it.next()) {
+            n++;
+        }
+        return n;
+    }
+
+    private void commitRow(int v) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t, v);
+        t.commit();
+    }
+
+    // restarts the database without writing the buffer pool, and recovers
+    private void crash() throws Exception {
+        Database.reset();
+        hf = Utility.openHeapFile(2, file);
+        Database.getLogFile().recover();
+        noForce();
+    }
+
+    /**
+     * A commit writes no data page; the page is dirty in the buffer pool.
+     */
+    @Test public void commitWritesNoPages() throws Exception {
+        commitRow(1);
+
+        assertEquals(0, Database.getBufferPool().getForegroundWrites());
+        assertEquals(0, rowsOnDisk());
+        assertEquals(new HashSet<>(Collections.singletonList(1)), rows());
+    }
+
+    /**
+     * The update record of a commit that inserts one tuple holds the bytes
+     * that changed, not two images of the page.
+     */
+    @Test public void commitLogsChangedBytes() throws Exception {
+        commitRow(1);
+        LogFile log = Database.getLogFile();
+        long start = log.getFlushedLsn();
+        commitRow(2);
+
+        assertTrue(log.getFlushedLsn() - start < BufferPool.getPageSize() / 8);
+    }
+
+    /**
+     * Recovery redoes committed updates that never reached the disk.
+     */
+    @Test public void commitCrash() throws Exception {
+        commitRow(1);
+        commitRow(2);
+        crash();
+
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), rows());
+    }
+
+    /**
+     * The commit record is in the log by the time the locks are released,
+     * so no other transaction can change the pages of a transaction that
+     * recovery would undo.
+     */
+    @Test public void commitLoggedBeforeLocksReleased() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t, 1);
+        Database.getBufferPool().transactionComplete(t.getId(), true);
+        assertFalse(Database.getBufferPool().holdsLock(t.getId(), new HeapPageId(hf.getId(), 0)));
+        crash();
+
+        assertEquals(new HashSet<>(Collections.singletonList(1)), rows());
+    }
+
+    /**
+     * An abort restores the committed state of the page, not the older one
+     * on disk, and recovery does not redo the aborted update.
+     */
+    @Test public void abortAfterCommit() throws Exception {
+        commitRow(1);
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t, 2);
+        t.abort();
+
+        assertEquals(new HashSet<>(Collections.singletonList(1)), rows());
+        crash();
+        assertEquals(new HashSet<>(Collections.singletonList(1)), rows());
+    }
+
+    /**
+     * Writing the page an abort restored logs nothing more for the aborted
+     * transaction, and recovery keeps the committed rows.
+     */
+    @Test public void flushAfterAbort() throws Exception {
+        commitRow(1);
+        commitRow(2);
+        Transaction t = new Transaction();
+        t.start();
+        insertRow(t, 3);
+        t.abort();
+        int records = Database.getLogFile().getTotalRecords();
+
+        Database.getBufferPool().flushAllPages();
+        assertEquals(records, Database.getLogFile().getTotalRecords());
+        assertEquals(2, rowsOnDisk());
+        Database.getLogFile().force();
+        long end = Database.getLogFile().getFlushedLsn();
+        // recovery finds no loser to append an ABORT record for
+        crash();
+        assertEquals(end, Database.getLogFile().getFlushedLsn());
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), rows());
+    }
+
+    /**
+     * The page cleaner writes committed pages.
+     */
+    @Test public void cleanerWritesCommittedPages() throws Exception {
+        commitRow(1);
+        Database.getBufferPool().setCleanerInterval(10);
+        for (int i = 0; i < 500 && rowsOnDisk() == 0; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, rowsOnDisk());
+        assertTrue(Database.getBufferPool().getCleanerWrites() > 0);
+        assertEquals(0, Database.getBufferPool().getForegroundWrites());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(NoForceCommitTest.class);
+    }
+}
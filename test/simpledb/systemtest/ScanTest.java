@@ -10,6 +10,7 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -90,6 +91,12 @@ public class ScanTest extends SimpleDbTestBase {
                 return super.readPage(pid);
             }
 
+            @Override
+            public Page readPage(PageId pid, ByteBuffer frame) {
+                readCount += 1;
+                return super.readPage(pid, frame);
+            }
+
             public int readCount = 0;
         }
 